@@ -1,7 +1,14 @@
 package it.gov.pagopa.logextractor.config;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.net.ssl.HttpsURLConnection;
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -33,9 +40,30 @@ public class BeanConfiguration {
 
 	@Bean
 	@Profile("!dev2")
-	public RestTemplate openSearchRestTemplate() {
-		RestTemplate ret = new RestTemplate(new SimpleClientHttpRequestWithGetBodyFactory());
-		return ret;
+	public RestTemplate openSearchRestTemplate(
+			@Value("${external.opensearch.http.max-connections:50}") int maxConnections,
+			@Value("${external.opensearch.http.max-connections-per-route:20}") int maxConnectionsPerRoute,
+			@Value("${external.opensearch.http.connect-timeout-millis:5000}") int connectTimeoutMillis,
+			@Value("${external.opensearch.http.read-timeout-millis:120000}") int readTimeoutMillis,
+			@Value("${external.opensearch.http.gzip.enabled:true}") boolean gzipEnabled) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeoutMillis)
+				.setConnectionRequestTimeout(connectTimeoutMillis)
+				.setSocketTimeout(readTimeoutMillis)
+				.build();
+		HttpClientBuilder httpClientBuilder = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(30, TimeUnit.SECONDS);
+		// content compression sends Accept-Encoding: gzip,deflate and decompresses the response while it is read
+		if (!gzipEnabled) {
+			httpClientBuilder.disableContentCompression();
+		}
+		return new RestTemplate(new HttpComponentsClientHttpRequestWithGetBodyFactory(httpClientBuilder.build()));
 	}
 
 	@Bean
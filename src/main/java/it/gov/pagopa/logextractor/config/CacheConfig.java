@@ -2,11 +2,12 @@ package it.gov.pagopa.logextractor.config;
 
 import java.net.URISyntaxException;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,8 +20,14 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.gov.pagopa.logextractor.enums.RedisMode;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.GetBasicDataResponseDto;
+import it.gov.pagopa.logextractor.util.constant.CacheConstants;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPoolConfig;
 
@@ -53,6 +60,18 @@ public class CacheConfig {
     @Value("${redis.cache-region}")
     private String redisCacheRegion;
 
+    @Value("${redis.regions.person-ttl-hours:10}")
+    private long personTtlHours;
+
+    @Value("${redis.regions.public-authority-ttl-hours:24}")
+    private long publicAuthorityTtlHours;
+
+    @Value("${redis.local-cache.max-entries:10000}")
+    private int localCacheMaxEntries;
+
+    @Value("${redis.local-cache.ttl-seconds:60}")
+    private long localCacheTtlSeconds;
+
     @Bean
     public JedisConnectionFactory jedisConnectionFactory() throws URISyntaxException {
         RedisStandaloneConfiguration redisStandaloneConfiguration = new RedisStandaloneConfiguration(redisHostName, redisPort);
@@ -77,12 +96,50 @@ public class CacheConfig {
         return redisTemplate;
     }
 
+    /**
+     * Cache manager keeping the entries on Redis, with a local in-heap level in front of it. The de-anonymization
+     * lookups have a region each, see {@link #regionConfigurations(Duration, Duration)}, the other caches keep
+     * their entries for 10 hours
+     */
     @Primary
-    @Bean(name = "cacheManager10Hour")
-    public CacheManager cacheManager10Hour(RedisConnectionFactory redisConnectionFactory) {
+    @Bean(name = CacheConstants.CACHE_MANAGER)
+    public TwoLevelCacheManager cacheManager10Hour(RedisConnectionFactory redisConnectionFactory,
+            MeterRegistry meterRegistry) {
         Duration expiration = Duration.ofHours(10);
-        return RedisCacheManager.builder(redisConnectionFactory)
-                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(expiration)).build();
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(expiration))
+                .withInitialCacheConfigurations(regionConfigurations(Duration.ofHours(personTtlHours),
+                        Duration.ofHours(publicAuthorityTtlHours)))
+                .build();
+        redisCacheManager.initializeCaches();
+        return new TwoLevelCacheManager(redisCacheManager, localCacheMaxEntries,
+                Duration.ofSeconds(localCacheTtlSeconds), meterRegistry);
     }
-}
 
+    /**
+     * Builds the regions of the de-anonymization lookups. Every region has its own time to live and key prefix
+     * and stores its values as plain strings, or as JSON for the tax id responses, instead of serialized objects
+     * @param personTtl The time to live of the person id mappings
+     * @param publicAuthorityTtl The time to live of the public authority id and name mappings
+     * @return The configuration of every region by name
+     */
+    static Map<String, RedisCacheConfiguration> regionConfigurations(Duration personTtl, Duration publicAuthorityTtl) {
+        Map<String, RedisCacheConfiguration> regions = new HashMap<>();
+        regions.put(CacheConstants.TAX_ID_BY_INTERNAL_ID_CACHE, regionConfiguration(personTtl,
+                new Jackson2JsonRedisSerializer<>(GetBasicDataResponseDto.class)));
+        regions.put(CacheConstants.INTERNAL_ID_BY_TAX_ID_CACHE, regionConfiguration(personTtl, RedisSerializer.string()));
+        regions.put(CacheConstants.PUBLIC_AUTHORITY_ID_BY_NAME_CACHE,
+                regionConfiguration(publicAuthorityTtl, RedisSerializer.string()));
+        regions.put(CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE,
+                regionConfiguration(publicAuthorityTtl, RedisSerializer.string()));
+        return regions;
+    }
+
+    private static RedisCacheConfiguration regionConfiguration(Duration ttl, RedisSerializer<?> valueSerializer) {
+        return RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(ttl)
+                .disableCachingNullValues()
+                .computePrefixWith(cacheName -> CacheConstants.KEY_PREFIX + cacheName + ":")
+                .serializeValuesWith(SerializationPair.fromSerializer(valueSerializer));
+    }
+}
@@ -0,0 +1,107 @@
+package it.gov.pagopa.logextractor.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Configuration of the executors running the asynchronous extractions. Small extractions run on the interactive
+ * executor, extractions estimated above the bulk threshold run on a separate bounded executor, so that they
+ * never delay the interactive ones. The estimates and the uploads of the archives have their own executors, so
+ * that they never wait for a running extraction
+ * */
+@Configuration
+public class ExtractionExecutorConfiguration {
+
+	@Bean(name = "interactiveExtractionExecutor")
+	public ThreadPoolTaskExecutor interactiveExtractionExecutor(
+			@Value("${extraction.interactive.pool-size:8}") int poolSize) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setThreadNamePrefix("extraction-");
+		return executor;
+	}
+
+	@Bean(name = "bulkExtractionExecutor")
+	public ThreadPoolTaskExecutor bulkExtractionExecutor(
+			@Value("${extraction.bulk.pool-size:2}") int poolSize,
+			@Value("${extraction.bulk.queue-capacity:10}") int queueCapacity) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("bulk-extraction-");
+		return executor;
+	}
+
+	/**
+	 * The executor estimating the person extractions before they are submitted to their lane
+	 * */
+	@Bean(name = "estimateExecutor")
+	public ThreadPoolTaskExecutor estimateExecutor(@Value("${extraction.estimate.pool-size:2}") int poolSize) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setThreadNamePrefix("extraction-estimate-");
+		return executor;
+	}
+
+	/**
+	 * The executor uploading the archives to S3. Every running extraction writes to the pipe drained by an upload,
+	 * so it has a thread for every thread of the extraction executors
+	 * */
+	@Bean(name = "uploadExecutor")
+	public ThreadPoolTaskExecutor uploadExecutor(
+			@Value("${extraction.interactive.pool-size:8}") int interactivePoolSize,
+			@Value("${extraction.bulk.pool-size:2}") int bulkPoolSize) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(interactivePoolSize + bulkPoolSize);
+		executor.setMaxPoolSize(interactivePoolSize + bulkPoolSize);
+		executor.setThreadNamePrefix("upload-");
+		return executor;
+	}
+
+	/**
+	 * The executor scrolling the slices of the sliced scroll extractions. It has a thread for every slice of every
+	 * extraction thread and no queue, so a slice never waits behind the slices of another extraction
+	 * */
+	@Bean(name = "openSearchSliceExecutor")
+	public ThreadPoolTaskExecutor openSearchSliceExecutor(
+			@Value("${extraction.interactive.pool-size:8}") int interactivePoolSize,
+			@Value("${extraction.bulk.pool-size:2}") int bulkPoolSize,
+			@Value("${external.opensearch.scroll.slices:1}") int slices) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize((interactivePoolSize + bulkPoolSize) * Math.max(1, slices));
+		executor.setQueueCapacity(0);
+		executor.setThreadNamePrefix("opensearch-slice-");
+		return executor;
+	}
+
+	/**
+	 * The executor resolving the <code>cx_id</code>s of the de-anonymized extractions, shared by all of them so that
+	 * the lookups in flight are bounded whatever the number of running extractions
+	 * */
+	@Bean(name = "deanonimizationExecutor")
+	public ThreadPoolTaskExecutor deanonimizationExecutor(
+			@Value("${deanonimization.prefetch.parallelism:8}") int poolSize) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setThreadNamePrefix("deanonimization-");
+		return executor;
+	}
+
+	/**
+	 * The executor picked by the <code>@Async</code> methods, see {@link ExtractionLaneTaskExecutor}
+	 * */
+	@Bean(name = "taskExecutor")
+	public ExtractionLaneTaskExecutor taskExecutor(
+			@Qualifier("interactiveExtractionExecutor") ThreadPoolTaskExecutor interactiveExecutor,
+			@Qualifier("bulkExtractionExecutor") ThreadPoolTaskExecutor bulkExecutor) {
+		return new ExtractionLaneTaskExecutor(interactiveExecutor, bulkExecutor);
+	}
+}
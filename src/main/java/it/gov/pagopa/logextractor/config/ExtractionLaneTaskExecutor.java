@@ -0,0 +1,74 @@
+package it.gov.pagopa.logextractor.config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import it.gov.pagopa.logextractor.enums.ExtractionLane;
+
+/**
+ * Task executor used by the <code>@Async</code> methods, dispatching every task to the interactive or to the bulk
+ * executor. The lane is selected by the caller with {@link #runIn(ExtractionLane, Callable)}: the asynchronous
+ * proxies submit the task on the calling thread, so the lane in effect at call time is the one being used.
+ * */
+public class ExtractionLaneTaskExecutor implements AsyncTaskExecutor {
+
+	private static final ThreadLocal<ExtractionLane> CURRENT_LANE = new ThreadLocal<>();
+
+	private final ThreadPoolTaskExecutor interactiveExecutor;
+	private final ThreadPoolTaskExecutor bulkExecutor;
+
+	public ExtractionLaneTaskExecutor(ThreadPoolTaskExecutor interactiveExecutor, ThreadPoolTaskExecutor bulkExecutor) {
+		this.interactiveExecutor = interactiveExecutor;
+		this.bulkExecutor = bulkExecutor;
+	}
+
+	/**
+	 * Runs the input dispatch so that the asynchronous tasks it submits go to the input lane
+	 * @param lane the lane of the submitted tasks
+	 * @param dispatch the code invoking the <code>@Async</code> methods
+	 * @return the result of the dispatch
+	 * @throws Exception the exception thrown by the dispatch, a
+	 * {@link org.springframework.core.task.TaskRejectedException} if the lane is full
+	 * */
+	public static <T> T runIn(ExtractionLane lane, Callable<T> dispatch) throws Exception {
+		ExtractionLane previous = CURRENT_LANE.get();
+		CURRENT_LANE.set(lane);
+		try {
+			return dispatch.call();
+		} finally {
+			if (previous == null) {
+				CURRENT_LANE.remove();
+			} else {
+				CURRENT_LANE.set(previous);
+			}
+		}
+	}
+
+	private AsyncTaskExecutor currentExecutor() {
+		return CURRENT_LANE.get() == ExtractionLane.BULK ? bulkExecutor : interactiveExecutor;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		currentExecutor().execute(task);
+	}
+
+	@Override
+	@Deprecated
+	public void execute(Runnable task, long startTimeout) {
+		currentExecutor().execute(task, startTimeout);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return currentExecutor().submit(task);
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return currentExecutor().submit(task);
+	}
+}
@@ -0,0 +1,42 @@
+package it.gov.pagopa.logextractor.config;
+
+import java.net.URI;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * Utility class for overriding the default Apache HttpClient request factory configuration for GET and DELETE
+ * requests, so that they can carry a body as required by the Opensearch search and clear scroll APIs
+ * */
+public class HttpComponentsClientHttpRequestWithGetBodyFactory extends HttpComponentsClientHttpRequestFactory {
+
+	public HttpComponentsClientHttpRequestWithGetBodyFactory(HttpClient httpClient) {
+		super(httpClient);
+	}
+
+	@Override
+	protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+		if (HttpMethod.GET == httpMethod || HttpMethod.DELETE == httpMethod) {
+			return new HttpRequestWithBody(httpMethod.name(), uri);
+		}
+		return super.createHttpUriRequest(httpMethod, uri);
+	}
+
+	private static class HttpRequestWithBody extends HttpEntityEnclosingRequestBase {
+		private final String method;
+
+		HttpRequestWithBody(String method, URI uri) {
+			this.method = method;
+			setURI(uri);
+		}
+
+		@Override
+		public String getMethod() {
+			return method;
+		}
+	}
+}
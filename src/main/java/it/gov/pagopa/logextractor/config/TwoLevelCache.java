@@ -0,0 +1,119 @@
+package it.gov.pagopa.logextractor.config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+/**
+ * Cache reading a local Caffeine cache before the shared cache of the same name. A value found in the shared cache
+ * is copied into the local one, writes and evictions go to both levels.
+ * */
+class TwoLevelCache implements Cache {
+
+	private final com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> local;
+	private final Cache remote;
+	private final LongAdder localHits = new LongAdder();
+	private final LongAdder localMisses = new LongAdder();
+	private final LongAdder remoteHits = new LongAdder();
+	private final LongAdder remoteMisses = new LongAdder();
+
+	/**
+	 * @param local The local level
+	 * @param remote The shared level
+	 * */
+	TwoLevelCache(com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> local, Cache remote) {
+		this.local = local;
+		this.remote = remote;
+	}
+
+	@Override
+	public String getName() {
+		return remote.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return remote.getNativeCache();
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		ValueWrapper value = local.getIfPresent(key);
+		if (value != null) {
+			localHits.increment();
+			return value;
+		}
+		localMisses.increment();
+		value = remote.get(key);
+		if (value == null) {
+			remoteMisses.increment();
+			return null;
+		}
+		remoteHits.increment();
+		local.put(key, new SimpleValueWrapper(value.get()));
+		return value;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Class<T> type) {
+		ValueWrapper value = get(key);
+		Object cached = value != null ? value.get() : null;
+		if (cached != null && type != null && !type.isInstance(cached)) {
+			throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + cached);
+		}
+		return (T) cached;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		ValueWrapper value = get(key);
+		if (value != null) {
+			return (T) value.get();
+		}
+		T loaded = remote.get(key, valueLoader);
+		local.put(key, new SimpleValueWrapper(loaded));
+		return loaded;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		remote.put(key, value);
+		local.put(key, new SimpleValueWrapper(value));
+	}
+
+	@Override
+	public void evict(Object key) {
+		remote.evict(key);
+		local.invalidate(key);
+	}
+
+	@Override
+	public void clear() {
+		remote.clear();
+		local.invalidateAll();
+	}
+
+	long getLocalSize() {
+		return local.estimatedSize();
+	}
+
+	long getLocalHits() {
+		return localHits.sum();
+	}
+
+	long getLocalMisses() {
+		return localMisses.sum();
+	}
+
+	long getRemoteHits() {
+		return remoteHits.sum();
+	}
+
+	long getRemoteMisses() {
+		return remoteMisses.sum();
+	}
+}
@@ -0,0 +1,102 @@
+package it.gov.pagopa.logextractor.config;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache manager putting a bounded in-heap cache with a short time to live in front of every cache of a shared
+ * cache manager, so that the keys read again by the same instance do not cost a network round trip.
+ * <p>
+ * The local level is a Caffeine cache. An eviction is applied to both levels of this instance only, the local
+ * entries of the other instances expire with their time to live. The hits and misses of each level are published
+ * as <code>logextractor.cache.gets</code> counters.
+ * */
+public class TwoLevelCacheManager implements CacheManager {
+
+	private final CacheManager remote;
+	private final int localMaxEntries;
+	private final Duration localTtl;
+	private final Ticker ticker;
+	private final Executor executor;
+	private final MeterRegistry registry;
+	private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+	/**
+	 * @param remote The shared cache manager
+	 * @param localMaxEntries The maximum number of entries of the local level of every cache
+	 * @param localTtl The time an entry is kept in the local level
+	 * @param registry The registry of the hit and miss counters
+	 * */
+	public TwoLevelCacheManager(CacheManager remote, int localMaxEntries, Duration localTtl, MeterRegistry registry) {
+		this(remote, localMaxEntries, localTtl, registry, Ticker.systemTicker(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param ticker The clock measuring the age of the local entries
+	 * @param executor The executor of the local evictions
+	 * */
+	TwoLevelCacheManager(CacheManager remote, int localMaxEntries, Duration localTtl, MeterRegistry registry,
+			Ticker ticker, Executor executor) {
+		this.remote = remote;
+		this.localMaxEntries = localMaxEntries;
+		this.localTtl = localTtl;
+		this.registry = registry;
+		this.ticker = ticker;
+		this.executor = executor;
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		TwoLevelCache cache = caches.get(name);
+		if (cache != null) {
+			return cache;
+		}
+		Cache remoteCache = remote.getCache(name);
+		if (remoteCache == null) {
+			return null;
+		}
+		return caches.computeIfAbsent(name, cacheName -> bind(new TwoLevelCache(Caffeine.newBuilder()
+				.maximumSize(localMaxEntries)
+				.expireAfterWrite(localTtl)
+				.ticker(ticker)
+				.executor(executor)
+				.build(), remoteCache)));
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return Collections.unmodifiableSet(caches.keySet());
+	}
+
+	private TwoLevelCache bind(TwoLevelCache cache) {
+		counter(cache, "local", "hit", TwoLevelCache::getLocalHits);
+		counter(cache, "local", "miss", TwoLevelCache::getLocalMisses);
+		counter(cache, "remote", "hit", TwoLevelCache::getRemoteHits);
+		counter(cache, "remote", "miss", TwoLevelCache::getRemoteMisses);
+		Gauge.builder("logextractor.cache.local.size", cache, TwoLevelCache::getLocalSize)
+				.description("Entries of the local level of a cache").tag("cache", cache.getName()).register(registry);
+		return cache;
+	}
+
+	private void counter(TwoLevelCache cache, String level, String result, ToDoubleFunction<TwoLevelCache> count) {
+		FunctionCounter.builder("logextractor.cache.gets", cache, count)
+				.description("Lookups of a cache level by result")
+				.tags("cache", cache.getName(), "level", level, "result", result).register(registry);
+	}
+}
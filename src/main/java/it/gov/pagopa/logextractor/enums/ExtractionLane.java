@@ -0,0 +1,9 @@
+package it.gov.pagopa.logextractor.enums;
+
+/**
+ * The executor lanes the asynchronous extractions are dispatched to
+ * */
+public enum ExtractionLane {
+    INTERACTIVE,
+    BULK
+}
@@ -12,12 +12,14 @@ import org.springframework.web.bind.annotation.RestController;
 import it.gov.pagopa.logextractor.exception.CustomException;
 import it.gov.pagopa.logextractor.pn_logextractor_be.api.LogsApi;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.BaseResponseDto;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.BulkLogsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.MonthlyNotificationsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.NotificationInfoRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.PersonLogsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.SessionLogsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.TraceIdLogsRequestDto;
 import it.gov.pagopa.logextractor.service.LogService;
+import it.gov.pagopa.logextractor.service.PersonLogsDispatcher;
 import it.gov.pagopa.logextractor.util.PasswordFactory;
 import it.gov.pagopa.logextractor.util.RandomUtils;
 import it.gov.pagopa.logextractor.util.external.IStorageService;
@@ -31,6 +33,9 @@ public class LogController implements LogsApi {
 	
 	@Autowired
 	IStorageService s3ClientService;
+
+	@Autowired
+	PersonLogsDispatcher personLogsDispatcher;
 	
 	private  ResponseEntity<BaseResponseDto> prepareResponse(String key, String zipPassword) throws Exception {
 		HttpHeaders responseHeaders = new HttpHeaders();
@@ -55,11 +60,7 @@ public class LogController implements LogsApi {
 	public ResponseEntity<BaseResponseDto> personActivityLogs(String xPagopaPnUid, String xPagopaPnCxType, PersonLogsRequestDto personLogsRequestDto) throws Exception {
 		String key = generateKey(personLogsRequestDto.getTicketNumber());
 		String zipPassword=PasswordFactory.createPassword();
-		if (Boolean.TRUE.equals(personLogsRequestDto.getDeanonimization())) {
-			logService.getDeanonimizedPersonLogs(key, zipPassword, personLogsRequestDto, xPagopaPnUid, xPagopaPnCxType);
-		}else {
-			logService.getAnonymizedPersonLogs(key, zipPassword, personLogsRequestDto, xPagopaPnUid, xPagopaPnCxType); 
-		}
+		personLogsDispatcher.dispatch(key, zipPassword, personLogsRequestDto, xPagopaPnUid, xPagopaPnCxType);
 		return prepareResponse(key, zipPassword);
 	}
 
@@ -92,6 +93,14 @@ public class LogController implements LogsApi {
 		return prepareResponse(key, zipPassword);
 	}
 	
+	@Override
+	public ResponseEntity<BaseResponseDto> bulkLogs(String xPagopaPnUid, String xPagopaPnCxType, BulkLogsRequestDto bulkLogsRequestDto) throws Exception {
+		String key = generateKey(bulkLogsRequestDto.getTicketNumber());
+		String zipPassword=PasswordFactory.createPassword();
+		logService.getBulkLogs(key, zipPassword, bulkLogsRequestDto, xPagopaPnUid, xPagopaPnCxType);
+		return prepareResponse(key, zipPassword);
+	}
+	
 	@Override
 	public ResponseEntity<BaseResponseDto> sessionLogs(String xPagopaPnUid, String xPagopaPnCxType, SessionLogsRequestDto sessionLogsRequestDto) throws Exception {
 		String key = generateKey(sessionLogsRequestDto.getTicketNumber());
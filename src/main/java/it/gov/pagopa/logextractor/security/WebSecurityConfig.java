@@ -1,6 +1,7 @@
 package it.gov.pagopa.logextractor.security;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -47,6 +48,8 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 		            .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
 				.and()
 				.authorizeRequests()
+				.requestMatchers(EndpointRequest.to("health", "prometheus")).permitAll()
+				.requestMatchers(EndpointRequest.toAnyEndpoint()).denyAll()
 				.antMatchers("/").permitAll();
     }
 
@@ -0,0 +1,55 @@
+package it.gov.pagopa.logextractor.service;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the estimated number of documents of every extraction job, identified by the key of its zip file
+ * */
+@Slf4j
+@Component
+public class ExtractionJobEstimateStore {
+
+	private static final String KEY_PREFIX = "extraction-estimate::";
+
+	@Autowired(required = false)
+	@Qualifier("redisTemplate")
+	RedisTemplate<String, Object> redisTemplate;
+	@Value("${extraction.estimate.ttl-hours:24}")
+	long ttlHours;
+
+	/**
+	 * Saves the estimate of a job
+	 * @param key the key of the job
+	 * @param estimatedDocuments the estimated number of documents
+	 * */
+	public void save(String key, long estimatedDocuments) {
+		if (redisTemplate == null) {
+			return;
+		}
+		try {
+			redisTemplate.opsForValue().set(KEY_PREFIX + key, estimatedDocuments, Duration.ofHours(ttlHours));
+		} catch (RuntimeException e) {
+			log.warn("Unable to save the estimate of job {}", key, e);
+		}
+	}
+
+	/**
+	 * @param key the key of the job
+	 * @return the estimated number of documents of the job, null if unknown
+	 * */
+	public Long load(String key) {
+		if (redisTemplate == null) {
+			return null;
+		}
+		Object estimate = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+		return estimate instanceof Number ? ((Number) estimate).longValue() : null;
+	}
+}
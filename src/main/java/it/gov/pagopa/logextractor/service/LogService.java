@@ -9,6 +9,7 @@ import com.opencsv.exceptions.CsvDataTypeMismatchException;
 import com.opencsv.exceptions.CsvRequiredFieldEmptyException;
 
 import it.gov.pagopa.logextractor.exception.LogExtractorException;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.BulkLogsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.MonthlyNotificationsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.NotificationInfoRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.PersonLogsRequestDto;
@@ -29,6 +30,15 @@ public interface LogService {
 											String xPagopaHelpdUid,
 											String xPagopaCxType) throws IOException;
 	
+	/**
+	 * Service method that estimates, with an Opensearch count, the number of documents of a person's activities
+	 * history extraction and stores the estimate with the job
+	 * @param key the key of the extraction job
+	 * @param requestData the input data of type {@link PersonLogsRequestDto}
+	 * @return the estimated number of documents, -1 if the extraction is not searched by person or the count fails
+	 */
+	long estimatePersonLogs(String key, PersonLogsRequestDto requestData);
+	
 	/**
 	 * Service method that retrieves informations about the notifications sent by a public authority in a specific month
 	 * @param requestData the input data of type {@link MonthlyNotificationsRequestDto}
@@ -54,6 +64,17 @@ public interface LogService {
 								   String xPagopaHelpdUid,
 								   String xPagopaCxType) throws IOException, LogExtractorException;
 	
+	/**
+	 * Service method that retrieves, in a single archive with one entry per identifier, the anonymized logs
+	 * of several trace ids, jtis or iuns within a period
+	 * @param requestData the input data of type {@link BulkLogsRequestDto}
+	 * @throws IOException in case of an IO error
+	 */
+	@Async
+	void getBulkLogs(String key, String zipPassword, BulkLogsRequestDto requestData,
+								String xPagopaHelpdUid,
+								String xPagopaCxType) throws IOException;
+	
 	/**
 	 * Service method that retrieves the de-anonymized logs related to a person's activities history in a period
 	 * or to a notification's activities history within 3 months from its legal start date
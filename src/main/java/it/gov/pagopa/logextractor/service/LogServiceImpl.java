@@ -1,14 +1,15 @@
 package it.gov.pagopa.logextractor.service;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.ToIntFunction;
 
-import org.apache.tomcat.util.http.fileupload.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
@@ -24,6 +25,8 @@ import it.gov.pagopa.logextractor.dto.response.NotificationDetailsResponseDto;
 import it.gov.pagopa.logextractor.exception.CustomException;
 import it.gov.pagopa.logextractor.exception.LogExtractorException;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.BaseResponseDto;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.BulkLogsRequestDto;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.LogsOutputModes;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.MonthlyNotificationsRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.NotificationInfoRequestDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.PersonLogsRequestDto;
@@ -33,9 +36,13 @@ import it.gov.pagopa.logextractor.pn_logextractor_be.model.TraceIdLogsRequestDto
 import it.gov.pagopa.logextractor.util.FileUtilities;
 import it.gov.pagopa.logextractor.util.constant.GenericConstants;
 import it.gov.pagopa.logextractor.util.constant.LoggingConstants;
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
 import it.gov.pagopa.logextractor.util.constant.ResponseConstants;
 import it.gov.pagopa.logextractor.util.external.IStorageService;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchApiHandler;
 import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchApiHandlerFactory;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchIdentifierOutput;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchSourceProfiles;
 import it.gov.pagopa.logextractor.util.external.pnservices.DeanonimizationService;
 import it.gov.pagopa.logextractor.util.external.pnservices.NotificationApiHandler;
 import it.gov.pagopa.logextractor.util.external.s3.S3DocumentDownloader;
@@ -50,6 +57,7 @@ import lombok.extern.slf4j.Slf4j;
 public class LogServiceImpl implements LogService {
 
 	private static final String OS_RESULT = "dati";
+	private static final String OS_SUMMARY_RESULT = "riepilogo";
 
 	@Value("${external.s3.saml.assertion.bucket}")
 	String s3Bucket;
@@ -84,6 +92,36 @@ public class LogServiceImpl implements LogService {
 	@Autowired 
 	ObjectMapper objectMapper;
 
+	@Autowired
+	ExtractionJobEstimateStore estimateStore;
+
+	@Override
+	public long estimatePersonLogs(String key, PersonLogsRequestDto requestData) {
+		if (requestData.getIun() != null || requestData.getDateFrom() == null || requestData.getDateTo() == null) {
+			return -1;
+		}
+		long estimate = -1;
+		try {
+			String internalId = requestData.getPersonId();
+			if (Boolean.TRUE.equals(requestData.getDeanonimization())) {
+				internalId = requestData.getTaxId() != null && requestData.getRecipientType() != null
+						? deanonimizationService.getUniqueIdentifierForPerson(requestData.getRecipientType(), requestData.getTaxId())
+						: null;
+			}
+			if (internalId != null) {
+				estimate = openSearchApiHandlerFactory.getOpenSearchApiHanlder().countAnonymizedLogsByUid(internalId,
+						requestData.getDateFrom(), requestData.getDateTo());
+			}
+		} catch (Exception e) {
+			log.warn("Unable to estimate the documents of job {}", key, e);
+		}
+		if (estimate >= 0) {
+			log.info("Job {} estimated at {} documents", key, estimate);
+			estimateStore.save(key, estimate);
+		}
+		return estimate;
+	}
+
 	@Override
 	@Async
 	public String getAnonymizedPersonLogs(String key, String pass, PersonLogsRequestDto requestData, String xPagopaHelpdUid, String xPagopaCxType)
@@ -96,18 +134,27 @@ public class LogServiceImpl implements LogService {
 		long serviceStartTime = System.currentTimeMillis();
 		long performanceMillis = 0;
 		int docCount = 0;
+		boolean entryOpen = false;
 
 		ZipInfo zipInfo = zipService.createZip(key, pass, s3ClientService.uploadStreamV2(key));
+		boolean logsRequested = isLogsRequested(requestData.getOutputMode());
 		try {
-			zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
 			// use case 7
 			if (requestData.getDateFrom() != null && requestData.getDateTo() != null && requestData.getPersonId() != null
 					&& requestData.getIun() == null) {
 				log.info("Getting activities' anonymized history... ");
 				performanceMillis = System.currentTimeMillis();
 	
-				docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder().getAnonymizedLogsByUid(requestData.getPersonId(), requestData.getDateFrom(),
-						requestData.getDateTo(), zipInfo.getZos());
+				docCount = addSummaryEntry(zipInfo, requestData.getOutputMode(),
+						handler -> handler.getAnonymizedLogsByUid(requestData.getPersonId(), requestData.getDateFrom(),
+								requestData.getDateTo(), zipInfo.getZos()));
+				if (logsRequested) {
+					zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
+					entryOpen = true;
+					docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder(OpenSearchSourceProfiles.PERSON_USE_CASE,
+							requestData.getSourceProfile(), null, key).getAnonymizedLogsByUid(requestData.getPersonId(), requestData.getDateFrom(),
+							requestData.getDateTo(), zipInfo.getZos());
+				}
 			} else {
 				// use case 8
 				if (requestData.getIun() != null) {
@@ -120,19 +167,35 @@ public class LogServiceImpl implements LogService {
 					OffsetDateTime notificationStartDate = OffsetDateTime.parse(notificationDetails.getSentAt());
 					String notificationEndDate = notificationStartDate.plusMonths(3).toString();
 					performanceMillis = System.currentTimeMillis();
-					docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder().getAnonymizedLogsByIun(requestData.getIun(),
-							notificationStartDate.toString(), notificationEndDate, zipInfo.getZos());
+					docCount = addSummaryEntry(zipInfo, requestData.getOutputMode(),
+							handler -> handler.getAnonymizedLogsByIun(requestData.getIun(),
+									notificationStartDate.toString(), notificationEndDate, zipInfo.getZos()));
+					if (logsRequested) {
+						zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
+						entryOpen = true;
+						docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder(OpenSearchSourceProfiles.PERSON_USE_CASE,
+								requestData.getSourceProfile(), null, key).getAnonymizedLogsByIun(requestData.getIun(),
+								notificationStartDate.toString(), notificationEndDate, zipInfo.getZos());
+					}
 				}
 			}
 			log.info(LoggingConstants.QUERY_EXECUTION_COMPLETED_TIME, System.currentTimeMillis() - performanceMillis,
 					docCount);
+			if (docCount < 0) {
+				throw new CustomException(ResponseConstants.GENERIC_INTERNAL_SERVER_ERROR_MESSAGE, 500);
+			}
 			if (docCount == 0) {
 				throw new CustomException(ResponseConstants.NO_DOCUMENT_FOUND_MESSAGE, 204);
 			}
-			zipService.closeEntry(zipInfo);
+			if (entryOpen) {
+				entryOpen = false;
+				zipService.closeEntry(zipInfo);
+			}
 		}catch(Exception err) {
 			log.error("Error preparing zip file", err);
-			zipService.closeEntry(zipInfo);
+			if (entryOpen) {
+				zipService.closeEntry(zipInfo);
+			}
 			zipService.addEntryWithContent(zipInfo, "error.txt", err.getMessage());
 		}
 		zipService.close(zipInfo);
@@ -210,21 +273,148 @@ public class LogServiceImpl implements LogService {
 		log.info("Getting anonymized logs...");
 
 		ZipInfo zipInfo = zipService.createZip(key, zipPassword, s3ClientService.uploadStreamV2(key));
+		boolean logsRequested = isLogsRequested(requestData.getOutputMode());
+		int summaryCount;
+		try {
+			summaryCount = addSummaryEntry(zipInfo, requestData.getOutputMode(),
+					handler -> handler.getAnonymizedLogsByTraceId(requestData.getTraceId(), requestData.getDateFrom(),
+							requestData.getDateTo(), zipInfo.getZos()));
+			if (logsRequested) {
+				zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
+			}
+		}catch(Exception err) {
+			completeZip(zipInfo, false, null, err, serviceStartTime);
+			return;
+		}
+		CompletableFuture<Integer> extraction = CompletableFuture.completedFuture(summaryCount);
+		if (logsRequested) {
+			try {
+				extraction = openSearchApiHandlerFactory.getOpenSearchApiHanlder(OpenSearchSourceProfiles.TRACE_USE_CASE,
+						requestData.getSourceProfile(), null, key).getAnonymizedLogsAsync(OpensearchConstants.OS_TRACE_ID_FIELD,
+						requestData.getTraceId(), requestData.getDateFrom(), requestData.getDateTo(), zipInfo.getZos());
+			} catch (RuntimeException err) {
+				extraction = CompletableFuture.failedFuture(err);
+			}
+		}
+		extraction.whenComplete((docCount, err) -> completeZip(zipInfo, logsRequested, docCount, err, serviceStartTime));
+	}
+
+	/**
+	 * Completes the archive of an anonymized extraction, adding the error.txt entry if the extraction failed
+	 * or found no document. It runs on the thread completing the extraction, which is not the service thread
+	 * when the logs are read by the reactive client
+	 * @param zipInfo the archive
+	 * @param entryOpen true if the logs entry is still open
+	 * @param docCount the number of documents extracted, null if the extraction failed
+	 * @param error the extraction error, if any
+	 * @param serviceStartTime the start time of the request
+	 */
+	private void completeZip(ZipInfo zipInfo, boolean entryOpen, Integer docCount, Throwable error,
+			long serviceStartTime) {
+		Throwable failure = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		try {
+			if (failure == null) {
+				log.info(LoggingConstants.QUERY_EXECUTION_COMPLETED_TIME, System.currentTimeMillis() - serviceStartTime,
+						docCount);
+				if (docCount == null || docCount == 0) {
+					failure = new CustomException(ResponseConstants.NO_DOCUMENT_FOUND_MESSAGE, 204);
+				}
+			}
+			if (entryOpen) {
+				zipService.closeEntry(zipInfo);
+			}
+			if (failure != null) {
+				log.error("Error processing logs request", failure);
+				zipService.addEntryWithContent(zipInfo, "error.txt", failure.getMessage());
+			}
+			zipService.close(zipInfo);
+		} catch (IOException e) {
+			log.error("Error completing zip file", e);
+		}
+		log.info(LoggingConstants.ANONYMIZED_RETRIEVE_PROCESS_END, (System.currentTimeMillis() - serviceStartTime));
+	}
+
+	/**
+	 * Writes the riepilogo.json entry with the summary of an anonymized extraction, if requested by the output mode
+	 * @param zipInfo the archive
+	 * @param outputMode the requested content of the archive
+	 * @param extraction the extraction to be summarized, writing to the archive stream
+	 * @return the number of documents summarized, 0 if the summary is not requested
+	 * @throws IOException in case of an IO error while writing the entry. The entry is closed in any case
+	 */
+	private int addSummaryEntry(ZipInfo zipInfo, LogsOutputModes outputMode,
+			ToIntFunction<OpenSearchApiHandler> extraction) throws IOException {
+		if (outputMode != LogsOutputModes.SUMMARY && outputMode != LogsOutputModes.LOGS_AND_SUMMARY) {
+			return 0;
+		}
+		long summaryStartTime = System.currentTimeMillis();
+		zipService.addEntry(zipInfo, OS_SUMMARY_RESULT + GenericConstants.JSON_EXTENSION);
+		int docCount;
 		try {
-			zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
-			int docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder().getAnonymizedLogsByTraceId(requestData.getTraceId(),
-					requestData.getDateFrom(), requestData.getDateTo(), zipInfo.getZos());
+			docCount = extraction.applyAsInt(openSearchApiHandlerFactory.getOpenSearchSummaryHandler());
+		} finally {
+			zipService.closeEntry(zipInfo);
+		}
+		log.info("Summary of {} documents written in {} ms", docCount, System.currentTimeMillis() - summaryStartTime);
+		if (docCount < 0) {
+			throw new CustomException(ResponseConstants.GENERIC_INTERNAL_SERVER_ERROR_MESSAGE, 500);
+		}
+		return docCount;
+	}
+
+	private static boolean isLogsRequested(LogsOutputModes outputMode) {
+		return outputMode != LogsOutputModes.SUMMARY;
+	}
+
+	@Override
+	@Async
+	public void getBulkLogs(String key, String zipPassword, BulkLogsRequestDto requestData, String xPagopaHelpdUid,
+			String xPagopaCxType) throws IOException {
+		log.info(
+				"Bulk logs retrieve process - START - user={}, userType={}, ticketNumber={}, identifierType={},"
+						+ " identifiers={}, startDate={}, endDate={}",
+				xPagopaHelpdUid, xPagopaCxType, requestData.getTicketNumber(), requestData.getIdentifierType(),
+				requestData.getIdentifiers().size(), requestData.getDateFrom(), requestData.getDateTo());
+		long serviceStartTime = System.currentTimeMillis();
+		log.info("Getting anonymized logs...");
+
+		ZipInfo zipInfo = zipService.createZip(key, zipPassword, s3ClientService.uploadStreamV2(key));
+		ZipIdentifierOutput output = new ZipIdentifierOutput(zipInfo);
+		try {
+			String identifierField;
+			String useCase;
+			switch (requestData.getIdentifierType()) {
+			case JTI:
+				identifierField = OpensearchConstants.OS_JTI_FIELD;
+				useCase = OpenSearchSourceProfiles.SESSION_USE_CASE;
+				break;
+			case IUN:
+				identifierField = OpensearchConstants.OS_IUN_FIELD;
+				useCase = OpenSearchSourceProfiles.PERSON_USE_CASE;
+				break;
+			default:
+				identifierField = OpensearchConstants.OS_TRACE_ID_FIELD;
+				useCase = OpenSearchSourceProfiles.TRACE_USE_CASE;
+				break;
+			}
+			List<String> identifiers = new ArrayList<>(new LinkedHashSet<>(requestData.getIdentifiers()));
+			int docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder(useCase, requestData.getSourceProfile(), null, key)
+					.getAnonymizedLogsByIdentifiers(identifierField, identifiers, requestData.getDateFrom(),
+							requestData.getDateTo(), output);
 			long performanceMillis = System.currentTimeMillis() - serviceStartTime;
 			log.info(LoggingConstants.QUERY_EXECUTION_COMPLETED_TIME, performanceMillis, docCount);
+			if (docCount < 0) {
+				throw new CustomException(ResponseConstants.GENERIC_INTERNAL_SERVER_ERROR_MESSAGE, 500);
+			}
 			if (docCount == 0) {
 				throw new CustomException(ResponseConstants.NO_DOCUMENT_FOUND_MESSAGE, 204);
 			}
-			zipService.closeEntry(zipInfo);
 		}catch(Exception err) {
-			log.error("Error processing NotificationLog Request", err);
+			log.error("Error processing bulk logs request", err);
+			output.closeOpenEntry();
 			zipService.addEntryWithContent(zipInfo, "error.txt", err.getMessage());
 		}
-		zipService.close(zipInfo);		
+		zipService.close(zipInfo);
 		log.info(LoggingConstants.ANONYMIZED_RETRIEVE_PROCESS_END, (System.currentTimeMillis() - serviceStartTime));
 	}
 
@@ -248,10 +438,10 @@ public class LogServiceImpl implements LogService {
 		long serviceStartTime = System.currentTimeMillis();
 		int docCount = 0;
 		long performanceMillis = 0;
-		File tmp = fileUtils.getFileWithRandomName(OS_RESULT, GenericConstants.TXT_EXTENSION);
+		boolean entryOpen = false;
 		ZipInfo zipInfo = zipService.createZip(key, zipPassword, s3ClientService.uploadStreamV2(key));
 		
-		try (OutputStream tmpOutStream = new FileOutputStream(tmp)){
+		try {
 	
 			// use case 3
 			if (requestData.getDateFrom() != null && requestData.getDateTo() != null && requestData.getTaxId() != null
@@ -264,15 +454,21 @@ public class LogServiceImpl implements LogService {
 				performanceMillis = System.currentTimeMillis();
 	
 				SAMLFilenameCollector filenameCollector = new SAMLFilenameCollector();
-				docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder(filenameCollector).getAnonymizedLogsByUid(internalId, requestData.getDateFrom(),
-						requestData.getDateTo(), tmpOutStream);
+				OpenSearchApiHandler handler = openSearchApiHandlerFactory.getOpenSearchApiHanlder(
+						OpenSearchSourceProfiles.PERSON_USE_CASE, requestData.getSourceProfile(), filenameCollector, key);
+				zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
+				entryOpen = true;
+				try (OutputStream deanonimizingStream = deanonimizationService.openDeanonimizingStream(zipInfo.getZos())) {
+					docCount = handler.getAnonymizedLogsByUid(internalId, requestData.getDateFrom(),
+							requestData.getDateTo(), deanonimizingStream);
+				}
+				if (docCount < 0) {
+					throw new CustomException(ResponseConstants.GENERIC_INTERNAL_SERVER_ERROR_MESSAGE, 500);
+				}
 				log.info(LoggingConstants.QEURY_EXECUTION_COMPLETED_TIME_DEANONIMIZE_DOCS,
 						System.currentTimeMillis() - performanceMillis, docCount);
-				tmpOutStream.flush();
 				performanceMillis = System.currentTimeMillis();
-				zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
-				deanonimizationService.deanonimizeDocuments(tmp, requestData.getRecipientType(),
-						zipInfo.getZos());
+				entryOpen = false;
 				zipService.closeEntry(zipInfo);
 	
 				s3DocumentDownloader.downloadToZip(s3Bucket, filenameCollector.getNames(), zipInfo);
@@ -288,23 +484,31 @@ public class LogServiceImpl implements LogService {
 					OffsetDateTime notificationStartDate = OffsetDateTime.parse(notificationDetails.getSentAt());
 					String notificationEndDate = notificationStartDate.plusMonths(3).toString();
 					performanceMillis = System.currentTimeMillis();
-					docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder().getAnonymizedLogsByIun(requestData.getIun(),
-							notificationStartDate.toString(), notificationEndDate, tmpOutStream);
-					tmpOutStream.flush();
+					zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
+					entryOpen = true;
+					try (OutputStream deanonimizingStream = deanonimizationService.openDeanonimizingStream(zipInfo.getZos())) {
+						docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder(OpenSearchSourceProfiles.PERSON_USE_CASE,
+								requestData.getSourceProfile(), null, key).getAnonymizedLogsByIun(requestData.getIun(),
+								notificationStartDate.toString(), notificationEndDate, deanonimizingStream);
+					}
+					if (docCount < 0) {
+						throw new CustomException(ResponseConstants.GENERIC_INTERNAL_SERVER_ERROR_MESSAGE, 500);
+					}
 					log.info(LoggingConstants.QEURY_EXECUTION_COMPLETED_TIME_DEANONIMIZE_DOCS,
 							System.currentTimeMillis() - performanceMillis, docCount);
 					performanceMillis = System.currentTimeMillis();
-					zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
-					deanonimizationService.deanonimizeDocuments(tmp, RecipientTypes.PF, zipInfo.getZos());
+					entryOpen = false;
 					zipService.closeEntry(zipInfo);
 				}
 			}
 		}catch(Exception err) {
 			log.error("Error processing NotificationLog Request", err);
+			if (entryOpen) {
+				zipService.closeEntry(zipInfo);
+			}
 			zipService.addEntryWithContent(zipInfo, "error.txt", err.getMessage());
 		}
 		zipService.close(zipInfo);
-		Files.delete(tmp.toPath());
 		log.info("Deanonimization completed in {} ms, constructing service response...",
 				System.currentTimeMillis() - performanceMillis);
 		log.info("deanonimized logs retrieve process - END in {} ms", (System.currentTimeMillis() - serviceStartTime));
@@ -326,30 +530,32 @@ public class LogServiceImpl implements LogService {
 
 
 		long serviceStartTime = System.currentTimeMillis();
-		long performanceMillis = System.currentTimeMillis();
 		ZipInfo zipInfo = zipService.createZip(key, zipPassword, s3ClientService.uploadStreamV2(key));
+		boolean logsRequested = isLogsRequested(requestData.getOutputMode());
+		int summaryCount;
 		try {
-			int docCount = 0;
 			log.info("Getting session activities' anonymized history... ");
-			performanceMillis = System.currentTimeMillis();
-	
-			zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
-			docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder().getAnonymizedSessionLogsByJti(requestData.getJti(), requestData.getDateFrom(),
-					requestData.getDateTo(), zipInfo.getZos());
-			zipService.closeEntry(zipInfo);
-			log.info(LoggingConstants.QUERY_EXECUTION_COMPLETED_TIME, System.currentTimeMillis() - performanceMillis,
-					docCount);
-			performanceMillis = System.currentTimeMillis();
-			if (docCount == 0) {
-				throw new CustomException(ResponseConstants.NO_DOCUMENT_FOUND_MESSAGE, 204);
+			summaryCount = addSummaryEntry(zipInfo, requestData.getOutputMode(),
+					handler -> handler.getAnonymizedSessionLogsByJti(requestData.getJti(), requestData.getDateFrom(),
+							requestData.getDateTo(), zipInfo.getZos()));
+			if (logsRequested) {
+				zipService.addEntry(zipInfo, OS_RESULT + GenericConstants.TXT_EXTENSION);
 			}
 		}catch(Exception err) {
-			log.error("Error processing NotificationLog Request", err);
-			zipService.addEntryWithContent(zipInfo, "error.txt", err.getMessage());
+			completeZip(zipInfo, false, null, err, serviceStartTime);
+			return;
 		}
-		zipService.close(zipInfo);		
-		log.info(LoggingConstants.SERVICE_RESPONSE_CONSTRUCTION_TIME, System.currentTimeMillis() - performanceMillis);
-		log.info(LoggingConstants.ANONYMIZED_RETRIEVE_PROCESS_END, (System.currentTimeMillis() - serviceStartTime));
+		CompletableFuture<Integer> extraction = CompletableFuture.completedFuture(summaryCount);
+		if (logsRequested) {
+			try {
+				extraction = openSearchApiHandlerFactory.getOpenSearchApiHanlder(OpenSearchSourceProfiles.SESSION_USE_CASE,
+						requestData.getSourceProfile(), null, key).getAnonymizedLogsAsync(OpensearchConstants.OS_JTI_FIELD,
+						requestData.getJti(), requestData.getDateFrom(), requestData.getDateTo(), zipInfo.getZos());
+			} catch (RuntimeException err) {
+				extraction = CompletableFuture.failedFuture(err);
+			}
+		}
+		extraction.whenComplete((docCount, err) -> completeZip(zipInfo, logsRequested, docCount, err, serviceStartTime));
 	}
 
 	@Override
@@ -362,34 +568,40 @@ public class LogServiceImpl implements LogService {
 				requestData.getJti(), requestData.getDateFrom(), requestData.getDateTo());
 		long serviceStartTime = System.currentTimeMillis();
 		long performanceMillis = 0;
-		File openSearchResponse = new FileUtilities().getFileWithRandomName(OS_RESULT, GenericConstants.TXT_EXTENSION);
-		FileOutputStream tmpOutStream = new FileOutputStream(openSearchResponse);
 		int docCount = 0;
+		boolean entryOpen = false;
 		ZipInfo zipInfo = zipService.createZip(key, zipPassword, s3ClientService.uploadStreamV2(key));
 		try {
 			log.info("Getting session activities' deanonimized history... ");
 			performanceMillis = System.currentTimeMillis();
 			SAMLFilenameCollector filenameCollector = new SAMLFilenameCollector();
-			docCount = openSearchApiHandlerFactory.getOpenSearchApiHanlder(filenameCollector).getAnonymizedSessionLogsByJti(requestData.getJti(), requestData.getDateFrom(), requestData.getDateTo(), tmpOutStream);
-	
-			log.info("Query execution completed in {} ms, retrieved {} documents, deanonimizing results...",
-					System.currentTimeMillis() - performanceMillis, docCount);
-			tmpOutStream.flush();
-			IOUtils.closeQuietly(tmpOutStream);
+			OpenSearchApiHandler handler = openSearchApiHandlerFactory.getOpenSearchApiHanlder(
+					OpenSearchSourceProfiles.SESSION_USE_CASE, requestData.getSourceProfile(), filenameCollector, key);
 			zipService.addEntry(zipInfo, OS_RESULT+GenericConstants.TXT_EXTENSION);
-			deanonimizationService.deanonimizeDocuments(openSearchResponse, RecipientTypes.PF, zipInfo.getZos());
+			entryOpen = true;
+			try (OutputStream deanonimizingStream = deanonimizationService.openDeanonimizingStream(zipInfo.getZos())) {
+				docCount = handler.getAnonymizedSessionLogsByJti(requestData.getJti(), requestData.getDateFrom(),
+						requestData.getDateTo(), deanonimizingStream);
+			}
+			if (docCount < 0) {
+				throw new CustomException(ResponseConstants.GENERIC_INTERNAL_SERVER_ERROR_MESSAGE, 500);
+			}
+			entryOpen = false;
 			zipService.closeEntry(zipInfo);
+			log.info("Query execution and deanonimization completed in {} ms, retrieved {} documents",
+					System.currentTimeMillis() - performanceMillis, docCount);
 			
 			s3DocumentDownloader.downloadToZip(s3Bucket, filenameCollector.getNames(), zipInfo);
 	
-			Files.delete(openSearchResponse.toPath());
-			log.info("Deanonimization completed in {} ms, constructing service response...", System.currentTimeMillis() - performanceMillis);
 			performanceMillis = System.currentTimeMillis();
 			if(docCount == 0) {
 				throw new CustomException(ResponseConstants.NO_DOCUMENT_FOUND_MESSAGE, 204);
 			}
 		}catch(Exception err) {
 			log.error("Error processing NotificationLog Request", err);
+			if (entryOpen) {
+				zipService.closeEntry(zipInfo);
+			}
 			zipService.addEntryWithContent(zipInfo, "error.txt", err.getMessage());
 		}
 		zipService.close(zipInfo);;
@@ -408,4 +620,45 @@ public class LogServiceImpl implements LogService {
 		}
 		return ret;
 	}
+
+	/**
+	 * Writes the documents of every identifier of a bulk extraction to its own entry of the archive, keeping track of
+	 * the entry left open by a failed extraction. The entries are numbered in the order of the identifiers, so that
+	 * identifiers differing only by the characters replaced in the entry names never share an entry
+	 */
+	private class ZipIdentifierOutput implements OpenSearchIdentifierOutput {
+
+		private final ZipInfo zipInfo;
+		private boolean entryOpen;
+		private int entries;
+
+		ZipIdentifierOutput(ZipInfo zipInfo) {
+			this.zipInfo = zipInfo;
+		}
+
+		@Override
+		public OutputStream open(String identifier) throws IOException {
+			zipService.addEntry(zipInfo, OS_RESULT + "-" + (++entries) + "-" + identifier.replaceAll("[^\\w-]", "_")
+					+ GenericConstants.TXT_EXTENSION);
+			entryOpen = true;
+			return zipInfo.getZos();
+		}
+
+		@Override
+		public void close(String identifier, int documentCount) throws IOException {
+			entryOpen = false;
+			zipService.closeEntry(zipInfo);
+		}
+
+		/**
+		 * Closes the entry of the identifier being extracted, if any, so that another entry can be added
+		 * @throws IOException in case of an IO error while closing the entry
+		 */
+		void closeOpenEntry() throws IOException {
+			if (entryOpen) {
+				entryOpen = false;
+				zipService.closeEntry(zipInfo);
+			}
+		}
+	}
 }
@@ -24,6 +24,7 @@ import it.gov.pagopa.logextractor.util.constant.LoggingConstants;
 import it.gov.pagopa.logextractor.util.constant.ResponseConstants;
 import it.gov.pagopa.logextractor.util.external.IStorageService;
 import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchApiHandlerFactory;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchSourceProfiles;
 import it.gov.pagopa.logextractor.util.external.pnservices.NotificationApiHandler;
 import it.gov.pagopa.logextractor.util.external.pnservices.NotificationDownloadFileData;
 import it.gov.pagopa.logextractor.util.external.pnservices.NotificationNotDownloadedFileData;
@@ -136,7 +137,8 @@ public class NotificationLogService {
 
 			OutputStream out = zipInfo.getZos();
 			zipService.addEntry(zipInfo, "dati.txt");
-			int docsNumber = openSearchApiHandlerFactory.getOpenSearchApiHanlder().getAnonymizedLogsByIun(requestData.getIun(),
+			int docsNumber = openSearchApiHandlerFactory.getOpenSearchApiHanlder(OpenSearchSourceProfiles.NOTIFICATION_USE_CASE, null, null, key)
+					.getAnonymizedLogsByIun(requestData.getIun(),
 					notificationStartDate.toString(), notificationEndDate, out);
 			zipService.closeEntry(zipInfo);
 			log.info(LoggingConstants.QUERY_EXECUTION_COMPLETED_TIME, System.currentTimeMillis() - performanceMillis,
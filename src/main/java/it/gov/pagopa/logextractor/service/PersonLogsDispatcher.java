@@ -0,0 +1,71 @@
+package it.gov.pagopa.logextractor.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import it.gov.pagopa.logextractor.config.ExtractionLaneTaskExecutor;
+import it.gov.pagopa.logextractor.enums.ExtractionLane;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.PersonLogsRequestDto;
+import it.gov.pagopa.logextractor.util.constant.ResponseConstants;
+import it.gov.pagopa.logextractor.util.external.IStorageService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Component estimating the person activities extractions out of the HTTP request thread and submitting them to the
+ * lane of their estimate
+ * */
+@Component
+@Slf4j
+public class PersonLogsDispatcher {
+
+	@Autowired
+	LogService logService;
+
+	@Autowired
+	ZipService zipService;
+
+	@Autowired
+	IStorageService s3ClientService;
+
+	@Value("${extraction.bulk.threshold-documents:1000000}")
+	long bulkThresholdDocuments;
+
+	/**
+	 * Estimates the extraction and submits it to the bulk lane if the estimate is above the bulk threshold, to the
+	 * interactive lane otherwise. An extraction that can not be estimated runs on the interactive lane, an extraction
+	 * rejected by a full bulk lane is completed with an archive holding the error
+	 * @param key the key of the extraction job
+	 * @param zipPassword the password of the archive
+	 * @param requestData the input data of type {@link PersonLogsRequestDto}
+	 * @param xPagopaHelpdUid the user requesting the extraction
+	 * @param xPagopaCxType the type of the user requesting the extraction
+	 * @throws Exception in case of an error submitting the extraction or writing the error archive
+	 * */
+	@Async("estimateExecutor")
+	public void dispatch(String key, String zipPassword, PersonLogsRequestDto requestData, String xPagopaHelpdUid,
+			String xPagopaCxType) throws Exception {
+		long estimatedDocuments = logService.estimatePersonLogs(key, requestData);
+		if (estimatedDocuments < 0) {
+			log.info("Job {} not estimated, running on the {} lane", key, ExtractionLane.INTERACTIVE);
+		}
+		ExtractionLane lane = estimatedDocuments > bulkThresholdDocuments ? ExtractionLane.BULK : ExtractionLane.INTERACTIVE;
+		try {
+			ExtractionLaneTaskExecutor.runIn(lane, () -> {
+				if (Boolean.TRUE.equals(requestData.getDeanonimization())) {
+					logService.getDeanonimizedPersonLogs(key, zipPassword, requestData, xPagopaHelpdUid, xPagopaCxType);
+				} else {
+					logService.getAnonymizedPersonLogs(key, zipPassword, requestData, xPagopaHelpdUid, xPagopaCxType);
+				}
+				return null;
+			});
+		} catch (TaskRejectedException e) {
+			log.error("Job {} rejected by the {} lane", key, lane, e);
+			ZipInfo zipInfo = zipService.createZip(key, zipPassword, s3ClientService.uploadStreamV2(key));
+			zipService.addEntryWithContent(zipInfo, "error.txt", ResponseConstants.TOO_MANY_EXTRACTIONS_MESSAGE);
+			zipService.close(zipInfo);
+		}
+	}
+}
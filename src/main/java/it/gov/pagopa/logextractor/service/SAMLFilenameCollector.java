@@ -2,34 +2,49 @@ package it.gov.pagopa.logextractor.service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 
-import it.gov.pagopa.logextractor.util.JsonUtilities;
 import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchApiObserver;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class SAMLFilenameCollector implements OpenSearchApiObserver {
 
+	private static final String CX_TYPE_FIELD = "cx_type";
+	private static final String TIMESTAMP_FIELD = "@timestamp";
+	private static final String JTI_FIELD = "jti";
+	private static final Set<String> OBSERVED_FIELDS = Collections.unmodifiableSet(
+			new HashSet<>(Arrays.asList(CX_TYPE_FIELD, TIMESTAMP_FIELD, JTI_FIELD)));
+
 	private Set<String> names = new HashSet<String>();
-	
+
+	@Override
+	public Set<String> getObservedFields() {
+		return OBSERVED_FIELDS;
+	}
+
 	@Override
-	public void notify(String document, int numDoc) {
-		JsonUtilities jsonUtils = new JsonUtilities();
-		String cxType = jsonUtils.getValue(document, "cx_type");
-		if ("PF".equals(cxType)) {
-			String date = jsonUtils.getValue(document, "@timestamp");
-			String jti = jsonUtils.getValue(document, "jti");
-			if(StringUtils.isNotBlank(date) && StringUtils.isNotBlank(jti)) {
-				String name = String.format("%s-%s.json", jti,
-						LocalDateTime.parse(date, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toLocalDate().toString());
-				names.add(name);
+	public void notify(List<Map<String, String>> documents, int firstDocumentNumber) {
+		for (Map<String, String> document : documents) {
+			String cxType = document.get(CX_TYPE_FIELD);
+			if ("PF".equals(cxType)) {
+				String date = document.get(TIMESTAMP_FIELD);
+				String jti = document.get(JTI_FIELD);
+				if(StringUtils.isNotBlank(date) && StringUtils.isNotBlank(jti)) {
+					String name = String.format("%s-%s.json", jti,
+							LocalDateTime.parse(date, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toLocalDate().toString());
+					names.add(name);
+				}
+			}else {
+				log.debug("Skipped SAML collection for cxType {}", cxType);
 			}
-		}else {
-			log.debug("Skipped SAML collection for cxType {}", cxType);
 		}
 	}
 
@@ -10,6 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
 import it.gov.pagopa.logextractor.util.FileUtilities;
 import it.gov.pagopa.logextractor.util.ZipArchiverImpl;
 import it.gov.pagopa.logextractor.util.external.IStorageService;
@@ -27,6 +28,9 @@ public class ZipService {
 	
 	@Autowired
 	FileUtilities fileUtilities;
+
+	@Autowired
+	ExtractionMetrics metrics = ExtractionMetrics.NOOP;
 	
 	
 	public ZipInfo createZip(String key, String password, OutputStream targetStream) {
@@ -38,10 +42,10 @@ public class ZipService {
 			//TODO: rivedere a fine refactory
 //			zos = zip.createArchiveStream(s3ClientService.openBucket(fileName));
 			if (targetStream != null) {
-				zos = zip.createArchiveStream(targetStream);
+				zos = zip.createArchiveStream(metrics.meterArchiveOutput(targetStream, password != null));
 			}else {
 				tmpFile = fileUtilities.getFileWithRandomName(key, ".zip");
-				zos = zip.createArchiveStream(new FileOutputStream(tmpFile));
+				zos = zip.createArchiveStream(metrics.meterArchiveOutput(new FileOutputStream(tmpFile), password != null));
 			}
 		} catch (IOException e) {
 			log.error("Error creating zip", e);
@@ -0,0 +1,189 @@
+package it.gov.pagopa.logextractor.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Meters of the stages of an extraction: query construction, Opensearch page fetch and parse, observers,
+ * de-anonymization lookups, archive writes and S3 part uploads, and the totals of every extraction by job type.
+ * The timers and the size summaries publish a percentile histogram, so that the latency distribution of every
+ * stage can be aggregated across the instances from the <code>/actuator/prometheus</code> endpoint.
+ * */
+@Component
+public class ExtractionMetrics {
+
+	/**
+	 * Metrics recording nothing, for the components created outside of the Spring context
+	 * */
+	public static final ExtractionMetrics NOOP = new ExtractionMetrics(new CompositeMeterRegistry());
+
+	private static final String PREFIX = "logextractor.";
+
+	private final MeterRegistry registry;
+	private final Timer queryBuild;
+	private final Timer pageFetch;
+	private final Timer pageParse;
+	private final DistributionSummary pageBytes;
+	private final DistributionSummary pageDocuments;
+	private final Timer observerBatch;
+	private final Timer s3PartUpload;
+	private final DistributionSummary s3PartBytes;
+
+	public ExtractionMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		this.queryBuild = timer("opensearch.query.build", "Time spent rendering an Opensearch query");
+		this.pageFetch = timer("opensearch.page.fetch",
+				"Time from sending an Opensearch page request to receiving the response headers");
+		this.pageParse = timer("opensearch.page.parse",
+				"Time spent reading, parsing and writing the documents of an Opensearch page");
+		this.pageBytes = summary("opensearch.page.bytes", "bytes", "Size of the documents of an Opensearch page");
+		this.pageDocuments = summary("opensearch.page.documents", "documents",
+				"Number of documents of an Opensearch page");
+		this.observerBatch = timer("opensearch.observer.batch",
+				"Time spent notifying a batch of documents to the observers");
+		this.s3PartUpload = timer("s3.part.upload", "Time spent uploading a part of a multipart upload");
+		this.s3PartBytes = summary("s3.part.bytes", "bytes", "Size of a part of a multipart upload");
+	}
+
+	public void recordQueryBuild(long elapsedNanos) {
+		queryBuild.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordPageFetch(long elapsedNanos) {
+		pageFetch.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordPageParse(long elapsedNanos) {
+		pageParse.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the size of an Opensearch page
+	 * @param documentCount the number of documents of the page
+	 * @param documentBytes the total size of the documents of the page
+	 * */
+	public void recordPage(int documentCount, long documentBytes) {
+		pageDocuments.record(documentCount);
+		pageBytes.record(documentBytes);
+	}
+
+	public void recordObserverBatch(long elapsedNanos) {
+		observerBatch.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records a call to the de-anonymization services, made only when the value is not cached
+	 * @param lookup the name of the looked up value
+	 * @param success false if the lookup failed
+	 * @param elapsedNanos the duration of the call
+	 * */
+	public void recordLookup(String lookup, boolean success, long elapsedNanos) {
+		Timer.builder(PREFIX + "deanonymization.lookup")
+				.description("Time spent calling the de-anonymization services on a cache miss")
+				.tag("lookup", lookup)
+				.tag("outcome", success ? "success" : "error")
+				.publishPercentileHistogram()
+				.register(registry)
+				.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the upload of a part of a multipart upload
+	 * @param partBytes the size of the part
+	 * @param elapsedNanos the duration of the upload
+	 * */
+	public void recordS3Part(long partBytes, long elapsedNanos) {
+		s3PartUpload.record(elapsedNanos, TimeUnit.NANOSECONDS);
+		s3PartBytes.record(partBytes);
+	}
+
+	/**
+	 * Records the totals of an extraction
+	 * @param jobType the extraction use case
+	 * @param documents the number of documents written
+	 * @param bytes the size of the documents written
+	 * @param elapsedNanos the duration of the extraction
+	 * */
+	public void recordExtraction(String jobType, long documents, long bytes, long elapsedNanos) {
+		Counter.builder(PREFIX + "extraction.documents").description("Documents written by the extractions")
+				.tag("type", jobType).register(registry).increment(documents);
+		Counter.builder(PREFIX + "extraction.bytes").baseUnit("bytes").description("Bytes written by the extractions")
+				.tag("type", jobType).register(registry).increment(bytes);
+		Timer.builder(PREFIX + "extraction.duration").description("Duration of the Opensearch extractions")
+				.tag("type", jobType).publishPercentileHistogram().register(registry)
+				.record(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Wraps the stream of an archive entry, timing the writes of the documents: the time includes the compression,
+	 * the encryption and the wait for the stream the archive is written to
+	 * @param out the stream of the archive entry
+	 * @param jobType the extraction use case
+	 * @return the timed stream
+	 * */
+	public OutputStream meterArchiveEntry(OutputStream out, String jobType) {
+		return new MeteredOutputStream(out,
+				Timer.builder(PREFIX + "archive.entry.write")
+						.description("Time spent writing documents into an archive entry")
+						.tag("type", jobType).publishPercentileHistogram().register(registry));
+	}
+
+	/**
+	 * Wraps the stream an archive is written to, timing the writes of the compressed and encrypted bytes: subtracted
+	 * from the entry writes, it leaves the time spent compressing and encrypting
+	 * @param out the stream the archive is written to
+	 * @param encrypted true if the archive entries are encrypted
+	 * @return the timed stream
+	 * */
+	public OutputStream meterArchiveOutput(OutputStream out, boolean encrypted) {
+		return new MeteredOutputStream(out,
+				Timer.builder(PREFIX + "archive.output.write")
+						.description("Time spent handing the archive bytes to the upload or to the file")
+						.tag("encrypted", Boolean.toString(encrypted)).publishPercentileHistogram().register(registry));
+	}
+
+	private Timer timer(String name, String description) {
+		return Timer.builder(PREFIX + name).description(description).publishPercentileHistogram().register(registry);
+	}
+
+	private DistributionSummary summary(String name, String unit, String description) {
+		return DistributionSummary.builder(PREFIX + name).baseUnit(unit).description(description)
+				.publishPercentileHistogram().register(registry);
+	}
+
+	/**
+	 * Stream timing the writes to the wrapped stream
+	 * */
+	private static class MeteredOutputStream extends FilterOutputStream {
+		private final Timer timer;
+
+		MeteredOutputStream(OutputStream out, Timer timer) {
+			super(out);
+			this.timer = timer;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			out.write(b);
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			out.write(b, off, len);
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+}
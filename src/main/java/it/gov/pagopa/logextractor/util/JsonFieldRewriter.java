@@ -0,0 +1,210 @@
+package it.gov.pagopa.logextractor.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * Rewrites the values of some top level fields of a JSON document in a single streaming pass, without building
+ * a tree. The parser only records where the values of the fields start and end, then the document is copied
+ * as is with the recorded values replaced, so that the keys order, the numbers and the escapes of the rest of the
+ * document are written byte for byte.
+ * <p>
+ * As with {@link JsonUtilities#replaceValues(String, Map)}, a field missing from the document is not added and
+ * a null replacement removes the field, together with its separating comma, the way org.json drops a field
+ * put with a null value.
+ */
+public class JsonFieldRewriter {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final Set<String> fields;
+
+	/**
+	 * @param fields the names of the top level fields to read and rewrite
+	 */
+	public JsonFieldRewriter(Set<String> fields) {
+		this.fields = Collections.unmodifiableSet(new HashSet<>(fields));
+	}
+
+	/**
+	 * Returns the edited document with the specified value replacement, reading only the fields to replace
+	 * @param document the single document represented as a Json formatted string
+	 * @param keyValue the map containing the keys and the new associated values
+	 * @return A string representation of the edited document with the specified value replacement
+	 * @throws IOException if the document is not a valid JSON object
+	 */
+	public static String replaceValues(String document, Map<String, String> keyValue) throws IOException {
+		return new JsonFieldRewriter(keyValue.keySet()).read(document).rewrite(keyValue);
+	}
+
+	/**
+	 * Reads the position and the value of the fields of a document
+	 * @param document the single document represented as a Json formatted string
+	 * @return the document with its fields located
+	 * @throws IOException if the document is not a valid JSON object
+	 */
+	public Document read(String document) throws IOException {
+		Map<String, String> values = new HashMap<>();
+		List<Span> spans = new ArrayList<>();
+		try (JsonParser parser = JSON_FACTORY.createParser(document)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException(parser, "Document is not a JSON object");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				int fieldStart = (int) parser.getTokenLocation().getCharOffset();
+				JsonToken valueToken = parser.nextToken();
+				if (!fields.contains(fieldName)) {
+					parser.skipChildren();
+					continue;
+				}
+				int start = (int) parser.getTokenLocation().getCharOffset();
+				if (valueToken.isScalarValue()) {
+					String value = parser.getValueAsString();
+					values.putIfAbsent(fieldName, value);
+				} else {
+					parser.skipChildren();
+				}
+				spans.add(new Span(fieldName, fieldStart, start, valueEnd(document, parser, valueToken)));
+			}
+			if (parser.currentToken() != JsonToken.END_OBJECT) {
+				throw new JsonParseException(parser, "Unexpected token " + parser.currentToken());
+			}
+		}
+		return new Document(document, values, spans);
+	}
+
+	/**
+	 * @return the end, exclusive, of the value the parser is on: the current offset of the parser, that is past
+	 * a number and its delimiter, is moved back over the delimiter and the whitespace
+	 */
+	private static int valueEnd(String document, JsonParser parser, JsonToken valueToken) throws IOException {
+		if (valueToken == JsonToken.VALUE_STRING) {
+			parser.getText();
+		}
+		int end = (int) parser.getCurrentLocation().getCharOffset();
+		if (valueToken == JsonToken.VALUE_NUMBER_INT || valueToken == JsonToken.VALUE_NUMBER_FLOAT) {
+			while (end > 0 && !isNumberChar(document.charAt(end - 1))) {
+				end--;
+			}
+		}
+		return end;
+	}
+
+	private static boolean isNumberChar(char c) {
+		return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+	}
+
+	/**
+	 * Document with the values of its fields located
+	 */
+	public static class Document {
+		private final String source;
+		private final Map<String, String> values;
+		private final List<Span> spans;
+
+		private Document(String source, Map<String, String> values, List<Span> spans) {
+			this.source = source;
+			this.values = values;
+			this.spans = spans;
+		}
+
+		/**
+		 * @param field the name of the field
+		 * @return the text of the scalar value of the field, null if the field is missing, null or not a scalar
+		 */
+		public String getValue(String field) {
+			return values.get(field);
+		}
+
+		/**
+		 * Returns the document with the values of some fields replaced by strings, copying the rest as is
+		 * @param replacements the new values by field name, the fields missing from the document are ignored and
+		 * the fields with a null value are removed
+		 * @return the rewritten document
+		 */
+		public String rewrite(Map<String, String> replacements) {
+			StringBuilder rewritten = null;
+			int copied = 0;
+			for (Span span : spans) {
+				if (!replacements.containsKey(span.field)) {
+					continue;
+				}
+				if (rewritten == null) {
+					rewritten = new StringBuilder(source.length() + 64);
+				}
+				String replacement = replacements.get(span.field);
+				if (replacement == null) {
+					copied = removeField(rewritten, copied, span);
+					continue;
+				}
+				rewritten.append(source, copied, span.start);
+				rewritten.append('"');
+				JsonStringEncoder.getInstance().quoteAsString(replacement, rewritten);
+				rewritten.append('"');
+				copied = span.end;
+			}
+			if (rewritten == null) {
+				return source;
+			}
+			return rewritten.append(source, copied, source.length()).toString();
+		}
+
+		/**
+		 * Copies the source up to a field and skips the field with the comma following it or, for the last field,
+		 * with the comma preceding it
+		 * @return the offset of the source copied so far
+		 */
+		private int removeField(StringBuilder rewritten, int copied, Span span) {
+			int start = span.fieldStart;
+			int end = skipWhitespace(span.end);
+			if (end < source.length() && source.charAt(end) == ',') {
+				end++;
+			} else {
+				end = span.end;
+				int comma = start;
+				while (comma > copied && Character.isWhitespace(source.charAt(comma - 1))) {
+					comma--;
+				}
+				if (comma > copied && source.charAt(comma - 1) == ',') {
+					start = comma - 1;
+				}
+			}
+			rewritten.append(source, copied, start);
+			return end;
+		}
+
+		private int skipWhitespace(int offset) {
+			while (offset < source.length() && Character.isWhitespace(source.charAt(offset))) {
+				offset++;
+			}
+			return offset;
+		}
+	}
+
+	private static class Span {
+		private final String field;
+		private final int fieldStart;
+		private final int start;
+		private final int end;
+
+		Span(String field, int fieldStart, int start, int end) {
+			this.field = field;
+			this.fieldStart = fieldStart;
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
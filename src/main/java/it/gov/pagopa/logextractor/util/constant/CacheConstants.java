@@ -0,0 +1,14 @@
+package it.gov.pagopa.logextractor.util.constant;
+
+/**
+ * Utility class to list the cache regions constants
+ */
+public class CacheConstants {
+    private CacheConstants(){}
+    public static final String CACHE_MANAGER = "cacheManager10Hour";
+    public static final String KEY_PREFIX = "pn-logextractor:";
+    public static final String TAX_ID_BY_INTERNAL_ID_CACHE = "taxIdByInternalId";
+    public static final String INTERNAL_ID_BY_TAX_ID_CACHE = "internalIdByTaxId";
+    public static final String PUBLIC_AUTHORITY_ID_BY_NAME_CACHE = "publicAuthorityIdByName";
+    public static final String PUBLIC_AUTHORITY_NAME_BY_ID_CACHE = "publicAuthorityNameById";
+}
@@ -13,6 +13,27 @@ public class OpensearchConstants {
     public static final String OS_TRACE_ID_FIELD = "root_trace_id";
     public static final String OS_JTI_FIELD = "jti";
     public static final String OS_RESPONSE_SCROLL_ID_FIELD = "_scroll_id";
+    public static final String OS_RESPONSE_HITS_FIELD = "hits";
+    public static final String OS_RESPONSE_SOURCE_FIELD = "_source";
+    public static final String OS_RESPONSE_SORT_FIELD = "sort";
+    public static final String OS_RESPONSE_RESPONSES_FIELD = "responses";
+    public static final String OS_RESPONSE_ERROR_FIELD = "error";
+    public static final String OS_SCROLL_ID_FIELD = "scroll_id";
+    public static final String OS_PIT_ID_FIELD = "pit_id";
+    public static final String OS_PIT_KEEP_ALIVE_PARAMETER = "keep_alive";
+    public static final String OS_PIT_KEEP_ALIVE_DURATION = "10m";
+    public static final String OS_POINT_IN_TIME_PATH = "/point_in_time";
+    public static final String OS_SCROLL_PATH = "/scroll";
+    public static final String OS_SEARCH_PATH = "/_search";
+    public static final String OS_COUNT_PATH = "/_count";
+    public static final String OS_MULTI_SEARCH_PATH = "/_msearch";
+    public static final String OS_CAT_INDICES_PATH = "/_cat/indices";
+    public static final String OS_CAT_COLUMNS_PARAMETER = "h";
+    public static final String OS_CAT_FORMAT_PARAMETER = "format";
+    public static final String OS_CAT_FORMAT_JSON = "json";
+    public static final String OS_CAT_INDEX_FIELD = "index";
+    public static final String OS_RESPONSE_COUNT_FIELD = "count";
+    public static final String OS_PIT_DEFAULT_TIEBREAKER_FIELD = "_id";
     public static final int OS_QUERY_RESULT_PAGE_SIZE = 10000;
     public static final String OS_SCROLL_PARAMETER ="scroll";
     public static final String OS_SCROLL_ID_VALIDITY_DURATION ="10m";
@@ -19,6 +19,12 @@ public class ResponseConstants {
   public static final String SUCCESS_RESPONSE_MESSAGE = "Operazione completata con successo";
   public static final String NO_NOTIFICATION_FOUND_MESSAGE =
       "Nessuna notifica trovata per i dati inseriti";
+  public static final String UNKNOWN_SOURCE_PROFILE_MESSAGE =
+      "Profilo di estrazione sconosciuto: ";
+  public static final String TOO_MANY_EXTRACTIONS_MESSAGE =
+      "Troppe estrazioni in corso, ritentare piu' tardi";
+  public static final String OPENSEARCH_CONTEXTS_UNAVAILABLE_MESSAGE =
+      "Estrazione interrotta: troppe estrazioni Opensearch in corso, ritentare piu' tardi";
   public static final String NO_DOCUMENT_FOUND_MESSAGE =
       "Nessun documento trovato per i dati inseriti";
 
@@ -0,0 +1,67 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.gov.pagopa.logextractor.util.constant.GenericConstants;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link OpenSearchCheckpointStore} keeping every checkpoint as a JSON file in the export folder.
+ * Checkpoints are written to a temporary file and then moved, so a crash never leaves a partial checkpoint.
+ * */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "external.opensearch.pit.checkpoint.store", havingValue = "file")
+public class FileOpenSearchCheckpointStore implements OpenSearchCheckpointStore {
+
+	private static final String CHECKPOINT_FOLDER = "opensearch-checkpoints";
+	private static final String CHECKPOINT_EXTENSION = ".json";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Path folder = Paths.get(GenericConstants.EXPORT_FOLDER, CHECKPOINT_FOLDER);
+
+	@Override
+	public OpenSearchCheckpoint load(String key) {
+		Path checkpointFile = folder.resolve(key + CHECKPOINT_EXTENSION);
+		if (!Files.exists(checkpointFile)) {
+			return null;
+		}
+		try {
+			return mapper.readValue(checkpointFile.toFile(), OpenSearchCheckpoint.class);
+		} catch (IOException e) {
+			log.warn("Unreadable OpenSearch checkpoint {}, ignoring it", checkpointFile, e);
+			return null;
+		}
+	}
+
+	@Override
+	public void save(String key, OpenSearchCheckpoint checkpoint) {
+		try {
+			Files.createDirectories(folder);
+			Path tempFile = Files.createTempFile(folder, key, null);
+			mapper.writeValue(tempFile.toFile(), checkpoint);
+			Files.move(tempFile, folder.resolve(key + CHECKPOINT_EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("Error saving OpenSearch checkpoint {}", key, e);
+		}
+	}
+
+	@Override
+	public void delete(String key) {
+		try {
+			Files.deleteIfExists(folder.resolve(key + CHECKPOINT_EXTENSION));
+		} catch (IOException e) {
+			log.warn("Error deleting OpenSearch checkpoint {}", key, e);
+		}
+	}
+}
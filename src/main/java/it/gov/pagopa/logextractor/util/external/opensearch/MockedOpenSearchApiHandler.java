@@ -19,9 +19,8 @@ public class MockedOpenSearchApiHandler extends OpenSearchApiHandler {
 
 	public MockedOpenSearchApiHandler(RestTemplate client, String opensearchSearchUrl,
 			String opensearchSearchFollowupUrl, String opensearchUsername, String opensearchPassword,
-			List<OpenSearchApiObserver> observers, int docCounter) {
-		super(client, opensearchSearchUrl, opensearchSearchFollowupUrl, opensearchUsername, opensearchPassword, observers,
-				docCounter);
+			List<OpenSearchApiObserver> observers) {
+		super(client, opensearchSearchUrl, opensearchSearchFollowupUrl, opensearchUsername, opensearchPassword, observers);
 	}
 
 	@Override
@@ -2,43 +2,131 @@ package it.gov.pagopa.logextractor.util.external.opensearch;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
-import org.apache.commons.lang3.RegExUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import it.gov.pagopa.logextractor.dto.OpensearchScrollQueryData;
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
 import it.gov.pagopa.logextractor.util.SortOrders;
 import it.gov.pagopa.logextractor.util.constant.LoggingConstants;
 import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
-import lombok.AllArgsConstructor;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchResponseStreamParser.DocumentHandler;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchRetryPolicy.Replay;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchTimeWindowPlanner.TimeWindow;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Uility class for integrations with OpenSearch service
  * */
 @Slf4j
-@AllArgsConstructor
 public class OpenSearchApiHandler {
+	private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+	private static final MediaType MULTI_SEARCH_CONTENT_TYPE = new MediaType("application", "x-ndjson");
+
 	private RestTemplate client;
 	private String opensearchSearchUrl;
 	private String opensearchSearchFollowupUrl;
 	private String opensearchUsername;
 	private String opensearchPassword;
 	private List<OpenSearchApiObserver> observers = new ArrayList<>();
-	private int docCounter=0;
+	@Setter
+	private boolean streamingEnabled;
+	@Setter
+	private int scrollSlices = 1;
+	@Setter
+	private AsyncTaskExecutor sliceExecutor;
+	@Setter
+	private int prefetchPages;
+	@Setter
+	private boolean timeWindowsEnabled;
+	@Setter
+	private int timeWindowParallelism = 4;
+	@Setter
+	private long timeWindowMaxDocuments = 100000;
+	@Setter
+	private long timeWindowMinMinutes = 60;
+	@Setter
+	private boolean pitEnabled;
+	@Setter
+	private String pitTiebreakerField = OpensearchConstants.OS_PIT_DEFAULT_TIEBREAKER_FIELD;
+	@Setter
+	private String jobKey;
+	@Setter
+	private OpenSearchCheckpointStore checkpointStore;
+	@Setter
+	private OpenSearchContextManager contextManager;
+	@Setter
+	private OpenSearchSourceFilter sourceFilter;
+	@Setter
+	private OpenSearchPageSizer pageSizer;
+	@Setter
+	private int observerBatchSize = OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+	@Setter
+	private int observerQueueBatches = 4;
+	private OpenSearchObserverPipeline observerPipeline;
+	private int pageSize = OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+	@Setter
+	private OpenSearchIndexResolver indexResolver;
+	@Setter
+	private OpenSearchSummary summary;
+	@Setter
+	private OpenSearchReactiveClient reactiveClient;
+	@Setter
+	private int sinkBufferSize = 65536;
+	@Setter
+	private long multiSearchBufferBytes = 16777216;
+	@Setter
+	private long timeWindowBufferBytes = 16777216;
+	@Setter
+	private OpenSearchRetryPolicy retryPolicy = OpenSearchRetryPolicy.NO_RETRY;
+	@Setter
+	private ExtractionMetrics metrics = ExtractionMetrics.NOOP;
+	@Setter
+	private String jobType = "other";
+	private String searchUrl;
+
+	public OpenSearchApiHandler(RestTemplate client, String opensearchSearchUrl, String opensearchSearchFollowupUrl,
+			String opensearchUsername, String opensearchPassword, List<OpenSearchApiObserver> observers) {
+		this.client = client;
+		this.opensearchSearchUrl = opensearchSearchUrl;
+		this.searchUrl = opensearchSearchUrl;
+		this.opensearchSearchFollowupUrl = opensearchSearchFollowupUrl;
+		this.opensearchUsername = opensearchUsername;
+		this.opensearchPassword = opensearchPassword;
+		this.observers = observers;
+	}
 
 	public void setObserver(OpenSearchApiObserver o) {
 		synchronized (observers){
@@ -69,19 +157,37 @@ public class OpenSearchApiHandler {
 	 * */
 	public int getAnonymizedLogsByUid(String uid, LocalDate dateFrom, LocalDate dateTo, OutputStream out){
 		ArrayList<OpenSearchQuerydata> queryData = new ArrayList<>();
-		HashMap<String, Object> queryParams = new HashMap<>();
-		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor();
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
 		log.info(LoggingConstants.QUERY_CONSTRUCTION);
+		queryData.add(prepareUidQueryData(queryConstructor, uid, dateFrom, dateTo));
+		return extractDocuments(queryConstructor, queryData, out);
+	}
+
+	/**
+	 * Counts the documents that {@link #getAnonymizedLogsByUid(String, LocalDate, LocalDate, OutputStream)}
+	 * would extract, with the same bool filter
+	 * @param uid The uid to use for the count query
+	 * @param dateFrom The period start date
+	 * @param dateTo The period end date
+	 * @return The number of matching documents
+	 * */
+	public long countAnonymizedLogsByUid(String uid, LocalDate dateFrom, LocalDate dateTo) {
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
+		OpenSearchQuerydata queryData = prepareUidQueryData(queryConstructor, uid, dateFrom, dateTo);
+		targetIndexes(queryData.getRangeData());
+		return countDocuments(queryConstructor, queryData, queryData.getRangeData());
+	}
+
+	private OpenSearchQuerydata prepareUidQueryData(OpenSearchQueryConstructor queryConstructor, String uid,
+			LocalDate dateFrom, LocalDate dateTo) {
+		HashMap<String, Object> queryParams = new HashMap<>();
 		String queryUid = (StringUtils.startsWithIgnoreCase(uid, OpensearchConstants.UID_PF_PREFIX) ||
 				StringUtils.startsWithIgnoreCase(uid, OpensearchConstants.UID_PG_PREFIX)) ?
 				StringUtils.substring(uid, 3) : uid;
 		queryParams.put(OpensearchConstants.OS_UID_FIELD, queryUid);
-		queryData.add(queryConstructor.prepareQueryData(queryParams,
+		return queryConstructor.prepareQueryData(queryParams,
 				new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, dateFrom.toString(), dateTo.toString()),
-				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC)));
-		String query = queryConstructor.createBooleanMultiSearchQuery(queryData);
-		log.info(LoggingConstants.QUERY_EXECUTION + RegExUtils.removeAll(query, "\n"));
-		return extractDocumentsFromOpensearch(query, out);
+				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC));
 	}
 	
 	/**
@@ -96,15 +202,13 @@ public class OpenSearchApiHandler {
 	public int getAnonymizedLogsByIun(String iun, String dateFrom, String dateTo, OutputStream out) {
 		ArrayList<OpenSearchQuerydata> queryData = new ArrayList<>();
 		HashMap<String, Object> queryParams = new HashMap<>();
-		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor();
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
 		log.info(LoggingConstants.QUERY_CONSTRUCTION);
 		queryParams.put(OpensearchConstants.OS_IUN_FIELD, iun);
 		queryData.add(queryConstructor.prepareQueryData(queryParams,
 				new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, dateFrom, dateTo),
 				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC)));
-		String query = queryConstructor.createBooleanMultiSearchQuery(queryData);
-		log.info(LoggingConstants.QUERY_EXECUTION + RegExUtils.removeAll(query, "\n"));
-		return extractDocumentsFromOpensearch(query, out);
+		return extractDocuments(queryConstructor, queryData, out);
 	}
 	
 	/**
@@ -117,7 +221,7 @@ public class OpenSearchApiHandler {
 	 * */
 	public int getAnonymizedLogsByTraceId(String traceId, LocalDate dateFrom, LocalDate dateTo, OutputStream out){
 		HashMap<String, Object> queryParams = new HashMap<>();
-		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor();
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
 		log.info(LoggingConstants.QUERY_CONSTRUCTION);
 		queryParams.put(OpensearchConstants.OS_TRACE_ID_FIELD, traceId);
 		OpenSearchQuerydata queryData = queryConstructor.prepareQueryData(queryParams,
@@ -125,10 +229,7 @@ public class OpenSearchApiHandler {
 				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC));
 		ArrayList<OpenSearchQuerydata> listOfQueryData = new ArrayList<>();
 		listOfQueryData.add(queryData);
-		String query = queryConstructor.createBooleanMultiSearchQuery(listOfQueryData);
-		log.info(LoggingConstants.QUERY_EXECUTION + RegExUtils.removeAll(query, "\n"));
-
-		return extractDocumentsFromOpensearch(query, out);
+		return extractDocuments(queryConstructor, listOfQueryData, out);
 	}
 	
 	/**
@@ -141,7 +242,7 @@ public class OpenSearchApiHandler {
 	 * */
 	public int getAnonymizedSessionLogsByJti(String jti, LocalDate dateFrom, LocalDate dateTo, OutputStream out){
 		HashMap<String, Object> queryParams = new HashMap<>();
-		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor();
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
 		log.info(LoggingConstants.QUERY_CONSTRUCTION);
 		queryParams.put(OpensearchConstants.OS_JTI_FIELD, jti);
 		OpenSearchQuerydata queryData = queryConstructor.prepareQueryData(queryParams,
@@ -149,13 +250,240 @@ public class OpenSearchApiHandler {
 				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC));
 		ArrayList<OpenSearchQuerydata> listOfQueryData = new ArrayList<>();
 		listOfQueryData.add(queryData);
-		String query = queryConstructor.createBooleanMultiSearchQuery(listOfQueryData);
-		log.info(LoggingConstants.QUERY_EXECUTION + RegExUtils.removeAll(query, "\n"));
+		return extractDocuments(queryConstructor, listOfQueryData, out);
+	}
 
-		return extractDocumentsFromOpensearch(query, out);
-		
+
+	/**
+	 * Extracts the documents of several values of the same identifier field within the input date range.
+	 * The first page of every identifier is read with a single _msearch request and kept in memory, up to
+	 * {@link #multiSearchBufferBytes} for all the identifiers, the following pages with search_after requests, so that
+	 * no scroll context is kept open while the identifiers are written one at a time. The first page of an identifier
+	 * not fitting in memory is read again with its own request when the identifier is written
+	 * @param identifierField The field to search the identifiers in
+	 * @param identifiers The identifiers
+	 * @param dateFrom The period start date
+	 * @param dateTo The period end date
+	 * @param output The destination of the documents of every identifier
+	 * @return The number of documents extracted for all the identifiers, -1 in case of error
+	 * */
+	public int getAnonymizedLogsByIdentifiers(String identifierField, List<String> identifiers, LocalDate dateFrom,
+			LocalDate dateTo, OpenSearchIdentifierOutput output) {
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
+		log.info(LoggingConstants.QUERY_CONSTRUCTION);
+		List<OpenSearchQuerydata> queryData = new ArrayList<>();
+		for (String identifier : identifiers) {
+			HashMap<String, Object> queryParams = new HashMap<>();
+			queryParams.put(identifierField, identifier);
+			queryData.add(queryConstructor.prepareQueryData(queryParams,
+					new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, dateFrom.toString(), dateTo.toString()),
+					new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC)));
+		}
+		targetIndexes(queryData.isEmpty() ? null : queryData.get(0).getRangeData());
+		pageSize = pageSizer != null ? pageSizer.nextPageSize() : OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+		queryConstructor.setPageSize(pageSize);
+		List<OpenSearchApiObserver> currentObservers = getObservers();
+		observerPipeline = currentObservers.isEmpty() ? null
+				: new OpenSearchObserverPipeline(currentObservers, observerBatchSize, observerQueueBatches, metrics);
+		OpenSearchDocumentBuffer[] firstPageBuffers = new OpenSearchDocumentBuffer[identifiers.size()];
+		try (OpenSearchObserverPipeline pipeline = observerPipeline) {
+			byte[] multiSearchBody = buildQuery(() -> queryConstructor.createMultiSearchBody(queryData, pitTiebreakerField));
+			log.info(LoggingConstants.QUERY_EXECUTION + "_msearch on {} values of {}", identifiers.size(), identifierField);
+			List<OpenSearchResponsePage> firstPages = readFirstPages(multiSearchBody, firstPageBuffers);
+			if (firstPages.size() != identifiers.size()) {
+				throw new IOException("OpenSearch multi search returned " + firstPages.size() + " responses for "
+						+ identifiers.size() + " queries");
+			}
+			OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+			int counter = 0;
+			for (int index = 0; index < identifiers.size(); index++) {
+				String identifier = identifiers.get(index);
+				OpenSearchNdjsonSink out = new OpenSearchNdjsonSink(output.open(identifier), sinkBufferSize);
+				OpenSearchPageGuard guard = new OpenSearchPageGuard(
+						(document, length, sortValues) -> writeDocument(document, length, out));
+				int identifierIndex = index;
+				OpenSearchResponsePage page = firstPages.get(index);
+				int documents = 0;
+				if (firstPageBuffers[index] != null) {
+					documents = firstPageBuffers[index].writeTo((buffer, offset, length) -> writeDocument(buffer, offset,
+							length, out));
+					firstPageBuffers[index] = null;
+				} else if (page.getDocumentCount() > 0) {
+					byte[] query = buildQuery(() -> queryConstructor.createBooleanSearchAfterQuery(
+							queryData.get(identifierIndex), null, pitTiebreakerField));
+					page = executeSearchAfter(query, response -> parser.parse(response.getBody(), guard), guard);
+					documents = page.getDocumentCount();
+				}
+				while (page.getDocumentCount() >= pageSize) {
+					List<Object> searchAfter = page.getLastSortValues();
+					byte[] query = buildQuery(() -> queryConstructor.createBooleanSearchAfterQuery(
+							queryData.get(identifierIndex), searchAfter, pitTiebreakerField));
+					page = executeSearchAfter(query, response -> parser.parse(response.getBody(), guard), guard);
+					documents += page.getDocumentCount();
+				}
+				out.flush();
+				output.close(identifier, documents);
+				log.debug("OpenSearch extraction of {} completed with {} documents", identifier, documents);
+				counter += documents;
+			}
+			return counter;
+		} catch (IOException | RuntimeException e) {
+			log.error("Error extracting OpenSearch logs by identifiers", e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Sends a _msearch request and keeps the documents of every response in memory, up to
+	 * {@link #multiSearchBufferBytes} for all the responses
+	 * @param multiSearchBody The _msearch request body
+	 * @param firstPageBuffers The buffers filled with the documents of every response, null if a response has none
+	 * or does not fit in memory
+	 * @return The pages of the responses, in the order of the queries
+	 * */
+	private List<OpenSearchResponsePage> readFirstPages(byte[] multiSearchBody, OpenSearchDocumentBuffer[] firstPageBuffers) {
+		return retryPolicy.execute("_msearch", Replay.REQUEST, null, () -> {
+			Arrays.fill(firstPageBuffers, null);
+			try {
+				return readFirstPagesOnce(multiSearchBody, firstPageBuffers);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	private List<OpenSearchResponsePage> readFirstPagesOnce(byte[] multiSearchBody,
+			OpenSearchDocumentBuffer[] firstPageBuffers) throws IOException {
+		boolean[] overflown = new boolean[firstPageBuffers.length];
+		long[] bufferedBytes = new long[1];
+		OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+		List<OpenSearchResponsePage> pages = executeMultiSearch(multiSearchBody, response -> parser.parseMultiSearch(
+				response.getBody(), (index, document, length, sortValues) -> {
+					if (index >= firstPageBuffers.length) {
+						throw new IOException("Unexpected OpenSearch multi search response " + index);
+					}
+					if (overflown[index]) {
+						return;
+					}
+					if (bufferedBytes[0] + length > multiSearchBufferBytes) {
+						overflown[index] = true;
+						if (firstPageBuffers[index] != null) {
+							bufferedBytes[0] -= firstPageBuffers[index].size();
+							firstPageBuffers[index] = null;
+						}
+						return;
+					}
+					if (firstPageBuffers[index] == null) {
+						firstPageBuffers[index] = new OpenSearchDocumentBuffer();
+					}
+					firstPageBuffers[index].append(document, length);
+					bufferedBytes[0] += length;
+				}));
+		for (int index = 0; index < overflown.length; index++) {
+			if (overflown[index]) {
+				log.debug("OpenSearch first page of query {} does not fit in memory, it will be read again", index);
+			}
+		}
+		return pages;
+	}
+
+
+	/**
+	 * Extracts the documents with the given value of the input field within the input date range without holding
+	 * the calling thread: with a reactive client the pages are read by the client threads and written to the output
+	 * stream by the writer of this extraction, on the writer threads shared by all the extractions, otherwise the extraction runs on the calling thread and the
+	 * returned future is already complete. The reactive client reads a single scroll without retries, so the point
+	 * in time, sliced, prefetched and time window extractions always run on the calling thread
+	 * @param field The field to search the value in
+	 * @param value The value to search for
+	 * @param dateFrom The period start date
+	 * @param dateTo The period end date
+	 * @param out The stream where to write the documents, one per line
+	 * @return The future number of documents written, completed exceptionally in case of error
+	 * */
+	public CompletableFuture<Integer> getAnonymizedLogsAsync(String field, String value, LocalDate dateFrom,
+			LocalDate dateTo, OutputStream out) {
+		HashMap<String, Object> queryParams = new HashMap<>();
+		OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
+		log.info(LoggingConstants.QUERY_CONSTRUCTION);
+		queryParams.put(field, value);
+		List<OpenSearchQuerydata> queryData = Collections.singletonList(queryConstructor.prepareQueryData(queryParams,
+				new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, dateFrom.toString(), dateTo.toString()),
+				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC)));
+		if (reactiveClient == null || summary != null || pitEnabled || scrollSlices > 1 || timeWindowsEnabled
+				|| prefetchPages > 0) {
+			int counter = extractDocuments(queryConstructor, queryData, out);
+			return counter < 0
+					? CompletableFuture.failedFuture(new IOException("Error extracting OpenSearch logs"))
+					: CompletableFuture.completedFuture(counter);
+		}
+		long extractionStart = System.nanoTime();
+		targetIndexes(queryData.get(0).getRangeData());
+		pageSize = pageSizer != null ? pageSizer.nextPageSize() : OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+		queryConstructor.setPageSize(pageSize);
+		byte[] query = buildQuery(() -> queryConstructor.createBooleanMultiSearchQuery(queryData));
+		logQuery(query, 1);
+		List<OpenSearchApiObserver> currentObservers = getObservers();
+		observerPipeline = currentObservers.isEmpty() ? null
+				: new OpenSearchObserverPipeline(currentObservers, observerBatchSize, observerQueueBatches, metrics);
+		OpenSearchContextLease lease = contextManager != null ? contextManager.acquire(1, this)
+				: new OpenSearchContextLease(null, 0, this);
+		String urlTemplate = UriComponentsBuilder.fromHttpUrl(searchUrl)
+				.queryParam(OpensearchConstants.OS_SCROLL_PARAMETER, OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION)
+				.build().toUriString();
+		OpenSearchNdjsonSink sink = new OpenSearchNdjsonSink(metrics.meterArchiveEntry(out, jobType), sinkBufferSize);
+		DocumentHandler documentHandler = (document, length, sortValues) -> writeDocument(document, length, sink);
+		Executor writer = reactiveClient.newWriter();
+		return reactiveClient.send(HttpMethod.GET.name(), urlTemplate, opensearchUsername, opensearchPassword, query,
+						documentHandler, writer)
+				.thenCompose(page -> scrollAsync(page, null, 0, documentHandler, lease, writer))
+				.handleAsync((counter, error) -> {
+					lease.close();
+					RuntimeException closeError = null;
+					try (OpenSearchObserverPipeline pipeline = observerPipeline) {
+						flush(sink);
+						logWritten(sink);
+						metrics.recordExtraction(jobType, sink.getLineCount(), sink.getByteCount(),
+								System.nanoTime() - extractionStart);
+					} catch (RuntimeException e) {
+						closeError = e;
+					}
+					if (error != null) {
+						throw error instanceof CompletionException ? (CompletionException) error
+								: new CompletionException(error);
+					}
+					if (closeError != null) {
+						throw closeError;
+					}
+					return counter;
+				}, writer);
+	}
+
+	/**
+	 * Continues a scroll read by the reactive client from the input page
+	 * @param page The last page read
+	 * @param previousScrollId The scroll id sent to read the page, null for the first page
+	 * @param counter The number of documents read before the page
+	 * @param documentHandler The callback receiving the documents
+	 * @param lease The lease tracking the scroll context
+	 * @param writer The executor writing the documents of the extraction
+	 * @return The future number of documents read by the whole scroll
+	 * */
+	private CompletableFuture<Integer> scrollAsync(OpenSearchResponsePage page, String previousScrollId, int counter,
+			DocumentHandler documentHandler, OpenSearchContextLease lease, Executor writer) {
+		int total = counter + page.getDocumentCount();
+		metrics.recordPage(page.getDocumentCount(), page.getDocumentBytes());
+		lease.trackScroll(previousScrollId, page.getScrollId());
+		if (page.getDocumentCount() < pageSize || page.getScrollId() == null) {
+			return CompletableFuture.completedFuture(total);
+		}
+		JSONObject scrollQuery = new JSONObject()
+				.put(OpensearchConstants.OS_SCROLL_PARAMETER, OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION)
+				.put(OpensearchConstants.OS_SCROLL_ID_FIELD, page.getScrollId());
+		return reactiveClient.send(HttpMethod.GET.name(), opensearchSearchFollowupUrl, opensearchUsername,
+						opensearchPassword, scrollQuery.toString().getBytes(StandardCharsets.UTF_8), documentHandler, writer)
+				.thenCompose(next -> scrollAsync(next, page.getScrollId(), total, documentHandler, lease, writer));
 	}
-	
 	
 	private HttpHeaders buildHeaders() {
 		HttpHeaders requestHeaders = new HttpHeaders();
@@ -167,59 +495,736 @@ public class OpenSearchApiHandler {
         return requestHeaders;
 	}
 	
+	/**
+	 * Extracts the documents matching the input query data with the configured pagination mode: point in time,
+	 * sliced scroll, time windows, prefetched scroll or plain scroll
+	 * @param queryConstructor The query constructor
+	 * @param queryData The query data
+	 * @param out The stream where to write the documents, one per line
+	 * @return The number of documents contained into the Opensearch response
+	 * */
+	private int extractDocuments(OpenSearchQueryConstructor queryConstructor, List<OpenSearchQuerydata> queryData,
+			OutputStream out) {
+		long extractionStart = System.nanoTime();
+		boolean timeWindows = !pitEnabled && scrollSlices <= 1 && timeWindowsEnabled && queryData.size() == 1
+				&& null != queryData.get(0).getRangeData();
+		int contexts = 1;
+		if (!pitEnabled) {
+			contexts = timeWindows ? timeWindowParallelism : scrollSlices;
+		}
+		targetIndexes(queryData.size() == 1 ? queryData.get(0).getRangeData() : null);
+		if (summary != null) {
+			return summarizeDocuments(queryConstructor, queryData.get(0), out);
+		}
+		pageSize = pageSizer != null ? pageSizer.nextPageSize() : OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+		queryConstructor.setPageSize(pageSize);
+		List<OpenSearchApiObserver> currentObservers = getObservers();
+		observerPipeline = currentObservers.isEmpty() ? null
+				: new OpenSearchObserverPipeline(currentObservers, observerBatchSize, observerQueueBatches, metrics);
+		OpenSearchNdjsonSink sink = new OpenSearchNdjsonSink(metrics.meterArchiveEntry(out, jobType), sinkBufferSize);
+		try (OpenSearchObserverPipeline pipeline = observerPipeline;
+				OpenSearchContextLease lease = contextManager != null ? contextManager.acquire(contexts, this)
+						: new OpenSearchContextLease(null, 0, this)) {
+			if (pitEnabled) {
+				return extractDocumentsFromOpensearchPit(queryConstructor, queryData, sink, lease);
+			}
+			if (scrollSlices > 1) {
+				return extractDocumentsFromOpensearchSliced(queryConstructor, queryData, sink, lease);
+			}
+			if (timeWindows) {
+				List<TimeWindow> windows = new OpenSearchTimeWindowPlanner(timeWindowMaxDocuments,
+						Duration.ofMinutes(timeWindowMinMinutes)).plan(queryData.get(0).getRangeData(),
+								range -> countDocuments(queryConstructor, queryData.get(0), range));
+				log.info("OpenSearch query split into {} time windows", windows.size());
+				lease.retainPermits(windows.size());
+				if (windows.size() != 1) {
+					return extractDocumentsFromOpensearchWindows(queryConstructor, queryData.get(0), windows, sink, lease);
+				}
+			}
+			byte[] query = buildQuery(() -> queryConstructor.createBooleanMultiSearchQuery(queryData));
+			logQuery(query, 1);
+			if (prefetchPages > 0) {
+				return extractDocumentsFromOpensearchPrefetch(query, sink, lease);
+			}
+			return extractDocumentsFromOpensearch(query, sink, lease);
+		} finally {
+			flush(sink);
+			logWritten(sink);
+			metrics.recordExtraction(jobType, sink.getLineCount(), sink.getByteCount(), System.nanoTime() - extractionStart);
+		}
+	}
+
+	/**
+	 * Writes the summary of the documents matching the input query data instead of the documents, with a single
+	 * aggregation query
+	 * @param queryConstructor The query constructor
+	 * @param queryData The query data
+	 * @param out The stream where to write the summary
+	 * @return The number of documents matching the query data, -1 in case of error
+	 * */
+	private int summarizeDocuments(OpenSearchQueryConstructor queryConstructor, OpenSearchQuerydata queryData,
+			OutputStream out) {
+		byte[] query = buildQuery(() -> queryConstructor.createBooleanAggregationQuery(queryData, summary.getAggregations()));
+		logQuery(query, 1);
+		try {
+			Long total = client.execute(searchUrl, HttpMethod.POST,
+					client.httpEntityCallback(new HttpEntity<>(query, buildHeaders())),
+					response -> summary.write(response.getBody(), queryData.getRangeData(), out));
+			return total == null ? -1 : (int) Math.min(Integer.MAX_VALUE, total);
+		} catch (RestClientException e) {
+			log.error("Error summarizing OpenSearch logs", e);
+			return -1;
+		}
+	}
+
 	/**
 	 * Performs a search HTTP GET request to the Opensearch service and extract the documents
 	 * that satisfy the input query
 	 * @param query The search query to be sent
 	 * @param out 
+	 * @param lease The lease tracking the scroll context
 	 * @return The number of documents contained into the Opensearch response
 	 * */
-	private int extractDocumentsFromOpensearch(String query, OutputStream out) {
+	private int extractDocumentsFromOpensearch(byte[] query, OpenSearchNdjsonSink out, OpenSearchContextLease lease) {
+		if (streamingEnabled) {
+			return extractDocumentsFromOpensearchStream(query, out, lease);
+		}
 		HttpHeaders requestHeaders = buildHeaders();
-        HttpEntity<String> request = new HttpEntity<>(query, requestHeaders);
-		String urlTemplate = UriComponentsBuilder.fromHttpUrl(opensearchSearchUrl)
+        HttpEntity<byte[]> request = new HttpEntity<>(query, requestHeaders);
+		String urlTemplate = UriComponentsBuilder.fromHttpUrl(searchUrl)
 						.queryParam(OpensearchConstants.OS_SCROLL_PARAMETER, "{scroll}")
 						.encode()
 						.toUriString();
 		HashMap<String, Object> params = new HashMap<>();
 		params.put(OpensearchConstants.OS_SCROLL_PARAMETER, OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION);
-        String response = client.exchange(
+		long pageStart = System.nanoTime();
+        String response = retryPolicy.execute("search", Replay.REQUEST, null, () -> client.exchange(
 				urlTemplate,
 				HttpMethod.GET,
 				request,
 				String.class,
-				params).getBody();
+				params).getBody());
+        metrics.recordPageFetch(System.nanoTime() - pageStart);
         
         int counter = 0;
+        String scrollId = null;
         ArrayList<String> currentDocs;
         try {
 	        while (!( currentDocs = getDocumentsFromCurrentResponse(response)).isEmpty()){
-	        	boolean show=true;
+	        	long readNanos = System.nanoTime() - pageStart;
+	        	long pageBytes = 0;
 	        	for(String line : currentDocs) {
-	        		out.write(line.getBytes(StandardCharsets.UTF_8));
-	        		out.write("\n".getBytes(StandardCharsets.UTF_8));
-	        		if (show) {
-	        			log.info("first line ... "+line);
-	        			show=false;
-	        		}
+	        		int length = out.encode(line);
+	        		pageBytes += length;
+	        		writeDocument(out.getEncoded(), length, out);
 	        		counter ++;
 	        	}
 	        	out.flush();
-	        	log.info("Fetching next page from OpenSearch...");
+	        	metrics.recordPage(currentDocs.size(), pageBytes);
+	        	if (pageSizer != null) {
+	        		pageSizer.record(currentDocs.size(), pageBytes, readNanos);
+	        	}
+	        	String nextScrollId = new JSONObject(response).getString(OpensearchConstants.OS_RESPONSE_SCROLL_ID_FIELD);
+	        	lease.trackScroll(scrollId, nextScrollId);
+	        	scrollId = nextScrollId;
+	        	if (currentDocs.size() < pageSize) {
+	        		break;
+	        	}
+	        	log.info("Written {} documents, fetching next page from OpenSearch...", counter);
 	        	OpensearchScrollQueryData scrollQueryDto = new OpensearchScrollQueryData(
-	        			OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION,
-	        			new JSONObject(response).getString(OpensearchConstants.OS_RESPONSE_SCROLL_ID_FIELD));
+	        			OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION, scrollId);
 	        	HttpEntity<OpensearchScrollQueryData> requestScroll = new HttpEntity<>(scrollQueryDto, requestHeaders);
-	        	response = client.exchange(opensearchSearchFollowupUrl,HttpMethod.GET,requestScroll,String.class).getBody();
+	        	pageStart = System.nanoTime();
+	        	response = retryPolicy.execute("scroll", Replay.NONE, null,
+	        			() -> client.exchange(opensearchSearchFollowupUrl,HttpMethod.GET,requestScroll,String.class).getBody());
+	        	metrics.recordPageFetch(System.nanoTime() - pageStart);
 	        }
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
         	log.error("Error writing OpenSearch logs to stream", e);
         	counter = -1;
         }
         return counter;
 	}
 
-	
+	/**
+	 * Performs the same scroll of {@link #extractDocumentsFromOpensearch(byte[], OpenSearchNdjsonSink, OpenSearchContextLease)}
+	 * reading every response page as a stream: the <code>_source</code> documents are copied straight to the output stream
+	 * and the scroll id is captured in the same pass, without building the page as a String or a tree
+	 * @param query The search query to be sent
+	 * @param out The stream where to write the documents, one per line
+	 * @param lease The lease tracking the scroll context
+	 * @return The number of documents contained into the Opensearch response
+	 * */
+	private int extractDocumentsFromOpensearchStream(byte[] query, OpenSearchNdjsonSink out, OpenSearchContextLease lease) {
+		int counter;
+		try {
+			counter = scrollDocuments(query, (document, length, sortValues) -> writeDocument(document, length, out), lease,
+					written -> {
+						flush(out);
+						log.info("Written {} documents, fetching next page from OpenSearch...", written);
+					});
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Error writing OpenSearch logs to stream", e);
+			counter = -1;
+		}
+		return counter;
+	}
+
+	/**
+	 * Scrolls the results of the input query reading every response page as a stream, clearing the scroll as soon
+	 * as the last page is read
+	 * @param query The search query to be sent
+	 * @param documentHandler The callback receiving every document
+	 * @param lease The lease tracking the scroll context
+	 * @param pageWritten The callback receiving the number of documents handled after every page
+	 * @return The number of documents contained into the Opensearch response
+	 * @throws IOException in case of an IO error while handling a document
+	 * */
+	private int scrollDocuments(byte[] query, DocumentHandler documentHandler, OpenSearchContextLease lease,
+			IntConsumer pageWritten) throws IOException {
+		OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+		OpenSearchPageGuard guard = new OpenSearchPageGuard(documentHandler);
+		ResponseExtractor<OpenSearchResponsePage> pageExtractor = response -> parser.parse(response.getBody(), guard);
+		int counter = 0;
+		OpenSearchResponsePage page = executeSearch(query, pageExtractor, guard);
+		String scrollId = null;
+		while (page != null && page.getDocumentCount() > 0) {
+			counter += page.getDocumentCount();
+			lease.trackScroll(scrollId, page.getScrollId());
+			scrollId = page.getScrollId();
+			pageWritten.accept(counter);
+			if (page.getDocumentCount() < pageSize) {
+				break;
+			}
+			page = executeScroll(scrollId, pageExtractor, guard);
+		}
+		lease.finishScroll(scrollId);
+		return counter;
+	}
+
+	/**
+	 * Extracts the time windows of a query concurrently, at most {@link #timeWindowParallelism} at a time. The window
+	 * at the head of the extraction is written straight to the output stream, the later windows are kept in memory,
+	 * up to {@link #timeWindowBufferBytes}, until they reach the head, so the output is the same of a single scroll
+	 * on the whole range
+	 * @param queryConstructor The query constructor
+	 * @param queryData The query data of the whole range
+	 * @param windows The planned windows, in ascending order
+	 * @param out The stream where to write the documents, one per line
+	 * @param lease The lease tracking the scroll contexts of the windows
+	 * @return The number of documents contained into the Opensearch response
+	 * */
+	private int extractDocumentsFromOpensearchWindows(OpenSearchQueryConstructor queryConstructor,
+			OpenSearchQuerydata queryData, List<TimeWindow> windows, OpenSearchNdjsonSink out, OpenSearchContextLease lease) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(timeWindowParallelism, windows.size())));
+		OpenSearchWindowBacklog backlog = new OpenSearchWindowBacklog(windows.size(), timeWindowBufferBytes,
+				(buffer, offset, length) -> writeDocument(buffer, offset, length, out), window -> {
+					flush(out);
+					lease.retainPermits(windows.size() - window - 1);
+					log.info("{} of {} time windows completed", window + 1, windows.size());
+				});
+		List<Future<Void>> windowTasks = new ArrayList<>();
+		int counter;
+		try {
+			for (int window = 0; window < windows.size(); window++) {
+				int windowIndex = window;
+				OpenSearchQuerydata windowData = new OpenSearchQuerydata(queryData.getMatchFields(),
+						windows.get(window).getRange(), queryData.getSortFilter());
+				byte[] windowQuery = buildQuery(
+						() -> queryConstructor.createBooleanMultiSearchQuery(Collections.singletonList(windowData)));
+				windowTasks.add(executor.submit(() -> extractWindow(windowIndex, windowQuery, backlog, lease)));
+			}
+			for (Future<Void> windowTask : windowTasks) {
+				awaitWindow(windowTask);
+			}
+			counter = backlog.getDocumentCount();
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Error writing OpenSearch logs to stream", e);
+			counter = -1;
+		} finally {
+			backlog.abort();
+			executor.shutdownNow();
+		}
+		return counter;
+	}
+
+	private Void extractWindow(int window, byte[] query, OpenSearchWindowBacklog backlog, OpenSearchContextLease lease)
+			throws IOException {
+		scrollDocuments(query, (document, length, sortValues) -> backlog.write(window, document, length), lease,
+				written -> {});
+		backlog.finish(window);
+		return null;
+	}
+
+	private static void awaitWindow(Future<Void> window) throws IOException {
+		try {
+			window.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for an OpenSearch time window", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Restricts the searches of the current extraction to the indexes overlapping the input range, if an index
+	 * resolver is configured
+	 * @param range The range of the extraction, null to search on the configured search url
+	 * */
+	private void targetIndexes(OpenSearchRangeQueryData range) {
+		searchUrl = indexResolver != null && range != null
+				? indexResolver.resolve(opensearchSearchUrl, range, this::listIndexes)
+				: opensearchSearchUrl;
+	}
+
+	/**
+	 * Lists the names of the existing indexes matching the input wildcard expression
+	 * @param indexExpression The index name or wildcard expression
+	 * @return The index names
+	 * */
+	List<String> listIndexes(String indexExpression) {
+		String catUrl = UriComponentsBuilder.fromHttpUrl(opensearchSearchUrl)
+				.replacePath(OpensearchConstants.OS_CAT_INDICES_PATH + "/" + indexExpression)
+				.replaceQuery(null)
+				.queryParam(OpensearchConstants.OS_CAT_COLUMNS_PARAMETER, OpensearchConstants.OS_CAT_INDEX_FIELD)
+				.queryParam(OpensearchConstants.OS_CAT_FORMAT_PARAMETER, OpensearchConstants.OS_CAT_FORMAT_JSON)
+				.build().toUriString();
+		String response = retryPolicy.execute("_cat/indices", Replay.REQUEST, null,
+				() -> client.exchange(catUrl, HttpMethod.GET, new HttpEntity<>(buildHeaders()), String.class).getBody());
+		List<String> indexes = new ArrayList<>();
+		if (StringUtils.isNotBlank(response)) {
+			JSONArray rows = new JSONArray(response);
+			for (int row = 0; row < rows.length(); row++) {
+				indexes.add(rows.getJSONObject(row).getString(OpensearchConstants.OS_CAT_INDEX_FIELD));
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Counts the documents matching the input query data restricted to the input range
+	 * @param queryConstructor The query constructor
+	 * @param queryData The query data
+	 * @param range The range replacing the one of the query data
+	 * @return The number of matching documents
+	 * */
+	long countDocuments(OpenSearchQueryConstructor queryConstructor, OpenSearchQuerydata queryData,
+			OpenSearchRangeQueryData range) {
+		byte[] countQuery = queryConstructor.createBooleanCountQuery(
+				new OpenSearchQuerydata(queryData.getMatchFields(), range, queryData.getSortFilter()));
+		String countUrl = StringUtils.removeEnd(searchUrl, OpensearchConstants.OS_SEARCH_PATH)
+				+ OpensearchConstants.OS_COUNT_PATH;
+		String response = retryPolicy.execute("_count", Replay.REQUEST, null, () -> client.exchange(countUrl,
+				HttpMethod.POST, new HttpEntity<>(countQuery, buildHeaders()), String.class).getBody());
+		return new JSONObject(response).getLong(OpensearchConstants.OS_RESPONSE_COUNT_FIELD);
+	}
+
+	/**
+	 * Performs the same scroll of {@link #extractDocumentsFromOpensearchStream(byte[], OpenSearchNdjsonSink, OpenSearchContextLease)}
+	 * reading up to {@link #prefetchPages} pages ahead on a separate thread, so that the next page is already on its
+	 * way while the current one is written to the output stream
+	 * @param query The search query to be sent
+	 * @param out The stream where to write the documents, one per line
+	 * @param lease The lease tracking the scroll context
+	 * @return The number of documents contained into the Opensearch response
+	 * */
+	private int extractDocumentsFromOpensearchPrefetch(byte[] query, OpenSearchNdjsonSink out, OpenSearchContextLease lease) {
+		int counter;
+		try {
+			counter = new OpenSearchScrollPrefetcher(this, lease, prefetchPages).extract(query,
+					(page, offset, length) -> writeDocument(page, offset, length, out),
+					() -> flush(out));
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Error writing OpenSearch logs to stream", e);
+			counter = -1;
+		}
+		return counter;
+	}
+
+	/**
+	 * Runs the sliced scroll extraction, merging the slices in ascending timestamp order
+	 * @param queryConstructor The query constructor
+	 * @param queryData The query data, sorted by timestamp
+	 * @param out The stream where to write the documents, one per line
+	 * @param lease The lease tracking the scroll contexts of the slices
+	 * @return The number of documents contained into the Opensearch response
+	 * */
+	private int extractDocumentsFromOpensearchSliced(OpenSearchQueryConstructor queryConstructor,
+			List<OpenSearchQuerydata> queryData, OpenSearchNdjsonSink out, OpenSearchContextLease lease) {
+		List<byte[]> sliceQueries = new ArrayList<>();
+		for (int sliceId = 0; sliceId < scrollSlices; sliceId++) {
+			int slice = sliceId;
+			sliceQueries.add(buildQuery(() -> queryConstructor.createBooleanSlicedSearchQuery(queryData, slice, scrollSlices)));
+		}
+		logQuery(sliceQueries.get(0), scrollSlices);
+		int counter;
+		try {
+			counter = new OpenSearchSlicedScrollExtractor(this, lease, sliceExecutor).extract(sliceQueries,
+					(buffer, offset, length) -> writeDocument(buffer, offset, length, out));
+			out.flush();
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Error writing OpenSearch logs to stream", e);
+			counter = -1;
+		}
+		return counter;
+	}
+
+	/**
+	 * Pages through a point in time with <code>search_after</code>, until a page shorter than the page size is read.
+	 * After every page written to the output stream
+	 * the sort values of its last document are saved as a checkpoint, so that an expired point in time is reopened
+	 * and read again from the last written page instead of failing the whole extraction.
+	 * The checkpoint is only used within the run: a restarted job writes a new archive, so it always starts from
+	 * the first document. If a checkpoint store is configured, the checkpoint is also saved there, keyed by job and
+	 * query, only to record how far a failed job went.
+	 * @param queryConstructor The query constructor
+	 * @param queryData The query data
+	 * @param out The stream where to write the documents, one per line
+	 * @param lease The lease tracking the point in time
+	 * @return The number of documents contained into the Opensearch response
+	 * */
+	private int extractDocumentsFromOpensearchPit(OpenSearchQueryConstructor queryConstructor,
+			List<OpenSearchQuerydata> queryData, OpenSearchNdjsonSink out, OpenSearchContextLease lease) {
+		String checkpointKey = checkpointKey(queryConstructor.createBooleanMultiSearchQuery(queryData));
+		OpenSearchCheckpoint checkpoint = new OpenSearchCheckpoint(null, null, 0);
+		OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+		OpenSearchPageGuard guard = new OpenSearchPageGuard(
+				(document, length, sortValues) -> writeDocument(document, length, out));
+		ResponseExtractor<OpenSearchResponsePage> pageExtractor = response -> parser.parse(response.getBody(), guard);
+		int counter = 0;
+		try {
+			checkpoint.setPitId(openPit());
+			lease.trackPit(null, checkpoint.getPitId());
+			boolean reopened = false;
+			boolean lastPageFull = true;
+			while (lastPageFull) {
+				int requestedPageSize = pageSizer != null ? pageSizer.nextPageSize() : pageSize;
+				queryConstructor.setPageSize(requestedPageSize);
+				byte[] query = buildQuery(() -> queryConstructor.createBooleanPitSearchQuery(queryData, checkpoint.getPitId(),
+						OpensearchConstants.OS_PIT_KEEP_ALIVE_DURATION, checkpoint.getSearchAfter(), pitTiebreakerField));
+				OpenSearchResponsePage page;
+				try {
+					page = executePitSearch(query, pageExtractor, guard);
+					lastPageFull = page.getDocumentCount() == requestedPageSize;
+					reopened = false;
+				} catch (HttpClientErrorException.NotFound e) {
+					if (reopened) {
+						throw e;
+					}
+					log.warn("OpenSearch point in time expired, reopening it from document {}", counter);
+					String expiredPitId = checkpoint.getPitId();
+					checkpoint.setPitId(openPit());
+					lease.trackPit(expiredPitId, checkpoint.getPitId());
+					reopened = true;
+					continue;
+				}
+				if (page.getDocumentCount() > 0) {
+					counter += page.getDocumentCount();
+					out.flush();
+					lease.trackPit(checkpoint.getPitId(), StringUtils.defaultIfBlank(page.getPitId(), checkpoint.getPitId()));
+					checkpoint.setPitId(StringUtils.defaultIfBlank(page.getPitId(), checkpoint.getPitId()));
+					checkpoint.setSearchAfter(page.getLastSortValues());
+					checkpoint.setDocumentCount(counter);
+					saveCheckpoint(checkpointKey, checkpoint);
+					log.info("Written {} documents, fetching next page from OpenSearch...", counter);
+				}
+			}
+			deleteCheckpoint(checkpointKey);
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Error writing OpenSearch logs to stream", e);
+			counter = -1;
+		}
+		return counter;
+	}
+
+	/**
+	 * @param query The query of the extraction
+	 * @return the key of the checkpoint of the query within the current job, so that concurrent jobs running the
+	 * same query never share a checkpoint
+	 * */
+	private String checkpointKey(byte[] query) {
+		String job = jobKey != null ? jobKey.replaceAll("[^\\w.-]", "_") : UUID.randomUUID().toString();
+		return job + "-" + DigestUtils.md5DigestAsHex(query);
+	}
+
+	private void saveCheckpoint(String checkpointKey, OpenSearchCheckpoint checkpoint) {
+		if (checkpointStore != null) {
+			checkpointStore.save(checkpointKey, checkpoint);
+		}
+	}
+
+	private void deleteCheckpoint(String checkpointKey) {
+		if (checkpointStore != null) {
+			checkpointStore.delete(checkpointKey);
+		}
+	}
+
+	/**
+	 * Creates a point in time on the searched indexes
+	 * @return The point in time id
+	 * */
+	String openPit() {
+		String urlTemplate = UriComponentsBuilder.fromHttpUrl(searchUrl + OpensearchConstants.OS_POINT_IN_TIME_PATH)
+				.queryParam(OpensearchConstants.OS_PIT_KEEP_ALIVE_PARAMETER, "{keepAlive}")
+				.encode()
+				.toUriString();
+		HashMap<String, Object> params = new HashMap<>();
+		params.put("keepAlive", OpensearchConstants.OS_PIT_KEEP_ALIVE_DURATION);
+		String response = retryPolicy.execute("point in time", Replay.REQUEST, null, () -> client.exchange(urlTemplate,
+				HttpMethod.POST, new HttpEntity<>(buildHeaders()), String.class, params).getBody());
+		return new JSONObject(response).getString(OpensearchConstants.OS_PIT_ID_FIELD);
+	}
+
+	/**
+	 * Deletes a point in time, releasing its search contexts on the cluster
+	 * @param pitId The point in time id
+	 * */
+	void closePit(String pitId) {
+		JSONObject body = new JSONObject().put(OpensearchConstants.OS_PIT_ID_FIELD, new JSONArray().put(pitId));
+		try {
+			client.exchange(getPitSearchUrl() + OpensearchConstants.OS_POINT_IN_TIME_PATH, HttpMethod.DELETE,
+					new HttpEntity<>(body.toString(), buildHeaders()), String.class);
+		} catch (RestClientException e) {
+			log.warn("Error deleting OpenSearch point in time, it will expire on its own", e);
+		}
+	}
+
+	/**
+	 * Clears the input scroll contexts with a single request
+	 * @param scrollIds The scroll ids to be cleared
+	 * */
+	void clearScrolls(List<String> scrollIds) {
+		JSONObject body = new JSONObject().put(OpensearchConstants.OS_SCROLL_ID_FIELD, new JSONArray(scrollIds));
+		if (reactiveClient != null) {
+			reactiveClient.sendAndDiscard(HttpMethod.DELETE.name(), opensearchSearchFollowupUrl, opensearchUsername,
+					opensearchPassword, body.toString().getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		try {
+			client.exchange(opensearchSearchFollowupUrl, HttpMethod.DELETE, new HttpEntity<>(body.toString(), buildHeaders()),
+					String.class);
+		} catch (RestClientException e) {
+			log.warn("Error clearing OpenSearch scroll contexts, they will expire on their own", e);
+		}
+	}
+
+	/**
+	 * Reads a page of a point in time with the input extractor
+	 * @param query The point in time search query to be sent
+	 * @param pageExtractor The extractor reading the response body
+	 * @param guard The guard of the documents written by the extractor, if any
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executePitSearch(byte[] query, ResponseExtractor<T> pageExtractor, OpenSearchPageGuard guard) {
+		HttpEntity<byte[]> request = new HttpEntity<>(query, buildHeaders());
+		return retryPolicy.execute("point in time search", Replay.PAGE, guard, () -> {
+			long start = System.nanoTime();
+			return recordPage(client.execute(getPitSearchUrl(), HttpMethod.GET, client.httpEntityCallback(request),
+					timePage(pageExtractor, start)), start);
+		});
+	}
+
+	/**
+	 * Sends a _msearch request to the indexes of the search url and reads the responses with the input extractor
+	 * @param body The _msearch request body, a header line and a query line for each search
+	 * @param responseExtractor The extractor reading the response body
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executeMultiSearch(byte[] body, ResponseExtractor<T> responseExtractor) {
+		HttpHeaders requestHeaders = buildHeaders();
+		requestHeaders.setContentType(MULTI_SEARCH_CONTENT_TYPE);
+		String multiSearchUrl = StringUtils.removeEnd(searchUrl, OpensearchConstants.OS_SEARCH_PATH)
+				+ OpensearchConstants.OS_MULTI_SEARCH_PATH;
+		return client.execute(multiSearchUrl, HttpMethod.POST,
+				client.httpEntityCallback(new HttpEntity<>(body, requestHeaders)), responseExtractor);
+	}
+
+	/**
+	 * Reads a search after page on the search url, without opening any search context
+	 * @param query The search after query to be sent
+	 * @param pageExtractor The extractor reading the response body
+	 * @param guard The guard of the documents written by the extractor, if any
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executeSearchAfter(byte[] query, ResponseExtractor<T> pageExtractor, OpenSearchPageGuard guard) {
+		HttpEntity<byte[]> request = new HttpEntity<>(query, buildHeaders());
+		return retryPolicy.execute("search after", Replay.PAGE, guard, () -> {
+			long start = System.nanoTime();
+			return recordPage(client.execute(searchUrl, HttpMethod.GET, client.httpEntityCallback(request),
+					timePage(pageExtractor, start)), start);
+		});
+	}
+
+	/**
+	 * Feeds the measures of a page read in streaming mode to the metrics and to the page sizer, if any. The page
+	 * sizer is given the time spent to fetch and parse the page, without the time spent writing its documents
+	 * */
+	private <T> T recordPage(T page, long start) {
+		if (page instanceof OpenSearchResponsePage) {
+			OpenSearchResponsePage responsePage = (OpenSearchResponsePage) page;
+			metrics.recordPage(responsePage.getDocumentCount(), responsePage.getDocumentBytes());
+			if (pageSizer != null) {
+				pageSizer.record(responsePage.getDocumentCount(), responsePage.getDocumentBytes(),
+						System.nanoTime() - start - responsePage.getOutputNanos());
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Wraps a page extractor, recording the time until the response headers as the fetch time of the page and
+	 * the time spent in the extractor as its parse time
+	 * @param pageExtractor The extractor reading the response body
+	 * @param start The time the request was sent
+	 * @return The timed extractor
+	 * */
+	private <T> ResponseExtractor<T> timePage(ResponseExtractor<T> pageExtractor, long start) {
+		return response -> {
+			long parseStart = System.nanoTime();
+			metrics.recordPageFetch(parseStart - start);
+			try {
+				return pageExtractor.extractData(response);
+			} finally {
+				metrics.recordPageParse(System.nanoTime() - parseStart);
+			}
+		};
+	}
+
+	/**
+	 * Renders a query, recording the time spent
+	 * @param builder The query constructor call
+	 * @return The rendered query
+	 * */
+	private <E extends Exception> byte[] buildQuery(QueryBuilder<E> builder) throws E {
+		long start = System.nanoTime();
+		try {
+			return builder.build();
+		} finally {
+			metrics.recordQueryBuild(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Logs a rendered query, which is a single line followed by a new line
+	 * @param query The rendered query
+	 * @param slices The number of slices the query is executed on
+	 * */
+	private static void logQuery(byte[] query, int slices) {
+		if (log.isInfoEnabled()) {
+			String queryLine = new String(query, 0, Math.max(0, query.length - 1), StandardCharsets.UTF_8);
+			if (slices > 1) {
+				log.info(LoggingConstants.QUERY_EXECUTION + "{} on {} slices", queryLine, slices);
+			} else {
+				log.info(LoggingConstants.QUERY_EXECUTION + "{}", queryLine);
+			}
+		}
+	}
+
+	/**
+	 * @return the page size of the queries of the current extraction
+	 * */
+	int getPageSize() {
+		return pageSize;
+	}
+
+	private String getPitSearchUrl() {
+		return StringUtils.removeEnd(opensearchSearchFollowupUrl, OpensearchConstants.OS_SCROLL_PATH);
+	}
+
+	/**
+	 * Opens a scroll on the search url and reads the first response page with an extractor that buffers the page
+	 * instead of writing it to the output
+	 * @param query The search query to be sent
+	 * @param pageExtractor The extractor reading the response body
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executeSearch(byte[] query, ResponseExtractor<T> pageExtractor) {
+		return executeSearch(query, pageExtractor, null);
+	}
+
+	/**
+	 * Opens a scroll on the search url and reads the first response page with the input extractor
+	 * @param query The search query to be sent
+	 * @param pageExtractor The extractor reading the response body
+	 * @param guard The guard of the documents written by the extractor, null if the extractor buffers the page
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executeSearch(byte[] query, ResponseExtractor<T> pageExtractor, OpenSearchPageGuard guard) {
+		HttpEntity<byte[]> request = new HttpEntity<>(query, buildHeaders());
+		String urlTemplate = UriComponentsBuilder.fromHttpUrl(searchUrl)
+						.queryParam(OpensearchConstants.OS_SCROLL_PARAMETER, "{scroll}")
+						.encode()
+						.toUriString();
+		HashMap<String, Object> params = new HashMap<>();
+		params.put(OpensearchConstants.OS_SCROLL_PARAMETER, OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION);
+		return retryPolicy.execute("search", Replay.REQUEST, guard, () -> {
+			long start = System.nanoTime();
+			return recordPage(client.execute(urlTemplate, HttpMethod.GET, client.httpEntityCallback(request),
+					timePage(pageExtractor, start), params), start);
+		});
+	}
+
+	/**
+	 * Requests the next page of an open scroll and reads it with an extractor that buffers the page instead of
+	 * writing it to the output
+	 * @param scrollId The scroll id returned by the previous page
+	 * @param pageExtractor The extractor reading the response body
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executeScroll(String scrollId, ResponseExtractor<T> pageExtractor) {
+		return executeScroll(scrollId, pageExtractor, null);
+	}
+
+	/**
+	 * Requests the next page of an open scroll and reads it with the input extractor
+	 * @param scrollId The scroll id returned by the previous page
+	 * @param pageExtractor The extractor reading the response body
+	 * @param guard The guard of the documents written by the extractor, null if the extractor buffers the page
+	 * @return The value returned by the extractor
+	 * */
+	<T> T executeScroll(String scrollId, ResponseExtractor<T> pageExtractor, OpenSearchPageGuard guard) {
+		OpensearchScrollQueryData scrollQueryDto = new OpensearchScrollQueryData(
+				OpensearchConstants.OS_SCROLL_ID_VALIDITY_DURATION, scrollId);
+		HttpEntity<OpensearchScrollQueryData> requestScroll = new HttpEntity<>(scrollQueryDto, buildHeaders());
+		return retryPolicy.execute("scroll", Replay.NONE, guard, () -> {
+			long start = System.nanoTime();
+			return recordPage(client.execute(opensearchSearchFollowupUrl, HttpMethod.GET,
+					client.httpEntityCallback(requestScroll), timePage(pageExtractor, start)), start);
+		});
+	}
+
+	private void writeDocument(byte[] document, int length, OpenSearchNdjsonSink out) {
+		writeDocument(document, 0, length, out);
+	}
+
+	private void writeDocument(byte[] buffer, int offset, int length, OpenSearchNdjsonSink out) {
+		try {
+			out.writeLine(buffer, offset, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (observerPipeline != null) {
+			observerPipeline.accept(buffer, offset, length);
+		}
+	}
+
+
+	private void flush(OutputStream out) {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void logWritten(OpenSearchNdjsonSink sink) {
+		log.info("Written {} lines, {} bytes of OpenSearch documents", sink.getLineCount(), sink.getByteCount());
+	}
+
 	/**
 	 * Gets the document list from an Opensearch response page
 	 * @param openSearchResponseBody The current Opensearch response
@@ -236,10 +1241,7 @@ public class OpenSearchApiHandler {
 					for (int hitIndex = 0; hitIndex < opensearchEnrichedDoc.length(); hitIndex++) {
 						if (!opensearchEnrichedDoc.getJSONObject(hitIndex).isNull("_source")) {
 							String doc = opensearchEnrichedDoc.getJSONObject(hitIndex).getJSONObject("_source").toString();
-							docCounter++;
 							documents.add(doc);
-							getObservers().parallelStream().forEach(o -> o.notify(doc, docCounter));
-								
 						}
 					}
 				}
@@ -252,4 +1254,12 @@ public class OpenSearchApiHandler {
 	private List<OpenSearchApiObserver> getObservers() {
 		return observers!=null ? observers : new ArrayList<>();
 	}
+
+	/**
+	 * A call to the query constructor
+	 * */
+	@FunctionalInterface
+	private interface QueryBuilder<E extends Exception> {
+		byte[] build() throws E;
+	}
 }
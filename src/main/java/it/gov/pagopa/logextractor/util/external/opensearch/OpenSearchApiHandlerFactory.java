@@ -2,13 +2,18 @@ package it.gov.pagopa.logextractor.util.external.opensearch;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
+
 @Service
 public class OpenSearchApiHandlerFactory {
 	@Autowired
@@ -22,17 +27,169 @@ public class OpenSearchApiHandlerFactory {
 	String opensearchUsername;
 	@Value("${external.opensearch.basicauth.password}")
 	String opensearchPassword;
+	@Value("${external.opensearch.streaming.enabled:false}")
+	boolean streamingEnabled;
+	@Value("${external.opensearch.scroll.slices:1}")
+	int scrollSlices;
+	@Value("${external.opensearch.scroll.prefetch-pages:0}")
+	int prefetchPages;
+	@Value("${external.opensearch.windows.enabled:false}")
+	boolean timeWindowsEnabled;
+	@Value("${external.opensearch.windows.parallelism:4}")
+	int timeWindowParallelism;
+	@Value("${external.opensearch.windows.max-documents:100000}")
+	long timeWindowMaxDocuments;
+	@Value("${external.opensearch.windows.min-minutes:60}")
+	long timeWindowMinMinutes;
+	@Value("${external.opensearch.windows.buffer-bytes:16777216}")
+	long timeWindowBufferBytes;
+	@Value("${external.opensearch.pit.enabled:false}")
+	boolean pitEnabled;
+	@Value("${external.opensearch.pit.tiebreaker.field:_id}")
+	String pitTiebreakerField;
+	@Autowired(required = false)
+	OpenSearchCheckpointStore checkpointStore;
+	@Autowired
+	OpenSearchContextManager contextManager;
+	@Autowired
+	OpenSearchSourceProfiles sourceProfiles;
+	@Value("${external.opensearch.page-size.adaptive.enabled:false}")
+	boolean adaptivePageSizeEnabled;
+	@Value("${external.opensearch.page-size.min:500}")
+	int minPageSize;
+	@Value("${external.opensearch.page-size.max:10000}")
+	int maxPageSize;
+	@Value("${external.opensearch.page-size.target-bytes:16777216}")
+	long targetPageBytes;
+	@Value("${external.opensearch.page-size.latency-budget-millis:5000}")
+	long pageLatencyBudgetMillis;
+	private final ConcurrentMap<String, OpenSearchPageSizer> pageSizers = new ConcurrentHashMap<>();
+	@Value("${external.opensearch.observers.batch-size:10000}")
+	int observerBatchSize;
+	@Value("${external.opensearch.observers.queue-batches:4}")
+	int observerQueueBatches;
+	@Value("${external.opensearch.sink.buffer-bytes:65536}")
+	int sinkBufferSize;
+	@Value("${external.opensearch.multi-search.buffer-bytes:16777216}")
+	long multiSearchBufferBytes;
+	@Value("${external.opensearch.retry.max-attempts:3}")
+	int retryMaxAttempts;
+	@Value("${external.opensearch.retry.initial-backoff-millis:500}")
+	long retryInitialBackoffMillis;
+	@Value("${external.opensearch.retry.max-backoff-millis:10000}")
+	long retryMaxBackoffMillis;
+	@Value("${external.opensearch.indexes.resolver.enabled:false}")
+	boolean indexResolverEnabled;
+	@Autowired
+	OpenSearchIndexResolver indexResolver;
+	@Value("${external.opensearch.summary.service-field:aws.cloudwatch.log_group}")
+	String summaryServiceField;
+	@Value("${external.opensearch.summary.level-field:level}")
+	String summaryLevelField;
+	@Value("${external.opensearch.summary.interval:1d}")
+	String summaryInterval;
+	@Value("${external.opensearch.summary.max-services:100}")
+	int summaryMaxServices;
+	@Value("${external.opensearch.reactive.enabled:false}")
+	boolean reactiveEnabled;
+	@Autowired
+	OpenSearchReactiveClient reactiveClient;
+	@Autowired
+	@Qualifier("openSearchSliceExecutor")
+	AsyncTaskExecutor sliceExecutor;
+	@Autowired
+	ExtractionMetrics metrics;
 
 	public OpenSearchApiHandler getOpenSearchApiHanlder() {
 		return getOpenSearchApiHanlder((List<OpenSearchApiObserver>)null) ;
 	}
 	public OpenSearchApiHandler getOpenSearchApiHanlder(OpenSearchApiObserver observer) {
 		List<OpenSearchApiObserver> observers = new ArrayList<>();
-		observers.add(observer);
+		if (observer != null) {
+			observers.add(observer);
+		}
 		return getOpenSearchApiHanlder(observers) ;
 	}
+	/**
+	 * Creates a handler returning only the <code>_source</code> fields of the profile selected for the extraction
+	 * @param useCase the extraction use case, see {@link OpenSearchSourceProfiles}
+	 * @param sourceProfile the profile selected on the request, null to use the default profile of the use case
+	 * @param observer the observer to be notified of every document, if any
+	 * @return the handler
+	 * */
+	public OpenSearchApiHandler getOpenSearchApiHanlder(String useCase, String sourceProfile, OpenSearchApiObserver observer) {
+		return getOpenSearchApiHanlder(useCase, sourceProfile, observer, null);
+	}
+	/**
+	 * Creates a handler returning only the <code>_source</code> fields of the profile selected for the extraction
+	 * @param useCase the extraction use case, see {@link OpenSearchSourceProfiles}
+	 * @param sourceProfile the profile selected on the request, null to use the default profile of the use case
+	 * @param observer the observer to be notified of every document, if any
+	 * @param jobKey the key of the extraction job, identifying its checkpoints
+	 * @return the handler
+	 * */
+	public OpenSearchApiHandler getOpenSearchApiHanlder(String useCase, String sourceProfile, OpenSearchApiObserver observer,
+			String jobKey) {
+		List<OpenSearchApiObserver> observers = new ArrayList<>();
+		if (observer != null) {
+			observers.add(observer);
+		}
+		OpenSearchApiHandler handler = getOpenSearchApiHanlder(observers);
+		handler.setSourceFilter(sourceProfiles.resolve(useCase, sourceProfile));
+		handler.setJobType(useCase);
+		handler.setJobKey(jobKey);
+		handler.setPageSizer(getPageSizer(useCase));
+		return handler;
+	}
+	/**
+	 * Creates a handler writing, instead of the documents, the summary of the documents by interval, service and level
+	 * @return the handler
+	 * */
+	public OpenSearchApiHandler getOpenSearchSummaryHandler() {
+		OpenSearchApiHandler handler = getOpenSearchApiHanlder((List<OpenSearchApiObserver>) null);
+		handler.setSummary(new OpenSearchSummary(summaryServiceField, summaryLevelField, summaryInterval,
+				summaryMaxServices));
+		handler.setJobType("summary");
+		return handler;
+	}
+	/**
+	 * Returns the page sizer of a use case, so that the documents of an index never size the pages of another one
+	 * @param useCase the extraction use case
+	 * @return the page sizer, null if the adaptive page size is disabled
+	 * */
+	OpenSearchPageSizer getPageSizer(String useCase) {
+		if (!adaptivePageSizeEnabled) {
+			return null;
+		}
+		return pageSizers.computeIfAbsent(useCase, key -> new OpenSearchPageSizer(minPageSize, maxPageSize,
+				targetPageBytes, pageLatencyBudgetMillis));
+	}
 	public OpenSearchApiHandler getOpenSearchApiHanlder(List<OpenSearchApiObserver> observers) {
-		return new OpenSearchApiHandler(client, opensearchSearchUrl, opensearchSearchFollowupUrl, opensearchUsername,
-				opensearchPassword, observers, 0);
+		OpenSearchApiHandler handler = new OpenSearchApiHandler(client, opensearchSearchUrl, opensearchSearchFollowupUrl,
+				opensearchUsername, opensearchPassword, observers);
+		handler.setStreamingEnabled(streamingEnabled);
+		handler.setScrollSlices(scrollSlices);
+		handler.setPrefetchPages(prefetchPages);
+		handler.setTimeWindowsEnabled(timeWindowsEnabled);
+		handler.setTimeWindowParallelism(timeWindowParallelism);
+		handler.setTimeWindowMaxDocuments(timeWindowMaxDocuments);
+		handler.setTimeWindowMinMinutes(timeWindowMinMinutes);
+		handler.setTimeWindowBufferBytes(timeWindowBufferBytes);
+		handler.setPitEnabled(pitEnabled);
+		handler.setPitTiebreakerField(pitTiebreakerField);
+		handler.setCheckpointStore(checkpointStore);
+		handler.setContextManager(contextManager);
+		handler.setPageSizer(getPageSizer("default"));
+		handler.setObserverBatchSize(observerBatchSize);
+		handler.setObserverQueueBatches(observerQueueBatches);
+		handler.setSinkBufferSize(sinkBufferSize);
+		handler.setMultiSearchBufferBytes(multiSearchBufferBytes);
+		handler.setRetryPolicy(new OpenSearchRetryPolicy(retryMaxAttempts, retryInitialBackoffMillis,
+				retryMaxBackoffMillis));
+		handler.setIndexResolver(indexResolverEnabled ? indexResolver : null);
+		handler.setReactiveClient(reactiveEnabled ? reactiveClient : null);
+		handler.setSliceExecutor(sliceExecutor);
+		handler.setMetrics(metrics);
+		return handler;
 	}
 }
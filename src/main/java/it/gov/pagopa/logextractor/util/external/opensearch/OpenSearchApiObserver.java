@@ -1,11 +1,26 @@
 package it.gov.pagopa.logextractor.util.external.opensearch;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Observer of the documents extracted from OpenSearch. The documents are delivered in batches by an
+ * {@link OpenSearchObserverPipeline}, on its own thread, with only the fields requested by the observers
+ * */
 public interface OpenSearchApiObserver {
 
 	/**
-	 * Notify new OpenSearch document
-	 * @param document
-	 * @param numDoc
+	 * @return the top level fields of the documents needed by the observer, their scalar values are extracted
+	 * once per document and shared by all the observers
+	 */
+	Set<String> getObservedFields();
+
+	/**
+	 * Notify a batch of OpenSearch documents
+	 * @param documents the observed fields of every document of the batch, in extraction order, a field is missing
+	 * if the document does not contain it as a scalar value
+	 * @param firstDocumentNumber the number of the first document of the batch in the extraction, starting from 1
 	 */
-	public void notify(String document, int numDoc);
+	void notify(List<Map<String, String>> documents, int firstDocumentNumber);
 }
@@ -0,0 +1,231 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchResponseStreamParser.DocumentBuffer;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchResponseStreamParser.DocumentHandler;
+
+/**
+ * Non blocking reader of an Opensearch search or scroll response page. The response body is pushed chunk by chunk
+ * as it arrives from the network and parsed with the Jackson non blocking parser, so that no thread waits for the
+ * rest of the body: every <code>_source</code> object is handed to the {@link DocumentHandler} as soon as its hit
+ * is complete, in the same form produced by {@link OpenSearchResponseStreamParser}.
+ * Instances read a single page and are not thread safe, chunks must be pushed one at a time.
+ * */
+public class OpenSearchAsyncPageParser {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final int ROOT = 1;
+	private static final int HITS_OBJECT = 2;
+	private static final int HITS_ARRAY = 3;
+	private static final int HIT = 4;
+
+	private final JsonParser parser;
+	private final ByteArrayFeeder feeder;
+	private final DocumentBuffer documentBuffer = new DocumentBuffer();
+	private final JsonGenerator generator;
+	private final DocumentHandler handler;
+	private final String[] fieldNames = new String[HIT + 1];
+	private int depth;
+	private int copyDepth;
+	private List<Object> sortValues;
+	private List<Object> hitSortValues = Collections.emptyList();
+	private boolean hitHasDocument;
+	private String scrollId;
+	private String pitId;
+	private int documentCount;
+	private List<Object> lastSortValues = Collections.emptyList();
+	private long documentBytes;
+	private long outputNanos;
+
+	/**
+	 * @param handler the callback receiving every <code>_source</code> document of the page
+	 * @throws IOException if the parser cannot be created
+	 * */
+	public OpenSearchAsyncPageParser(DocumentHandler handler) throws IOException {
+		this.handler = handler;
+		this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+		this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+		this.generator = JSON_FACTORY.createGenerator(documentBuffer, JsonEncoding.UTF8);
+		this.generator.setRootValueSeparator(null);
+	}
+
+	/**
+	 * Parses the next chunk of the response body, handing every completed document to the handler
+	 * @param chunk the buffer containing the chunk, it can be reused once the method returns
+	 * @param offset the offset of the chunk in the buffer
+	 * @param length the length of the chunk
+	 * @throws IOException in case of a malformed response, an error response or an error handling a document
+	 * */
+	public void feed(byte[] chunk, int offset, int length) throws IOException {
+		feeder.feedInput(chunk, offset, offset + length);
+		drain();
+	}
+
+	/**
+	 * Completes the parsing once the whole response body has been pushed
+	 * @return the {@link OpenSearchResponsePage} read
+	 * @throws IOException in case of a truncated or malformed response
+	 * */
+	public OpenSearchResponsePage finish() throws IOException {
+		feeder.endOfInput();
+		drain();
+		generator.close();
+		parser.close();
+		if (depth != 0) {
+			throw new IOException("Truncated OpenSearch response");
+		}
+		return new OpenSearchResponsePage(scrollId, pitId, documentCount, lastSortValues, documentBytes, outputNanos);
+	}
+
+	private void drain() throws IOException {
+		JsonToken token;
+		while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+			if (copyDepth > 0) {
+				copyToken(token);
+			} else if (sortValues != null) {
+				readSortValue(token);
+			} else {
+				readToken(token);
+			}
+		}
+	}
+
+	private void readToken(JsonToken token) throws IOException {
+		switch (token) {
+		case FIELD_NAME:
+			if (depth < fieldNames.length) {
+				fieldNames[depth] = parser.getCurrentName();
+			}
+			break;
+		case START_OBJECT:
+			if (isAt(HIT) && OpensearchConstants.OS_RESPONSE_SOURCE_FIELD.equals(fieldNames[HIT])) {
+				documentBuffer.reset();
+				generator.writeStartObject();
+				copyDepth = 1;
+				break;
+			}
+			checkError();
+			if (isAt(HITS_ARRAY)) {
+				hitSortValues = Collections.emptyList();
+				hitHasDocument = false;
+			}
+			depth++;
+			break;
+		case START_ARRAY:
+			if (isAt(HIT) && OpensearchConstants.OS_RESPONSE_SORT_FIELD.equals(fieldNames[HIT])) {
+				sortValues = new ArrayList<>(2);
+				break;
+			}
+			depth++;
+			break;
+		case END_OBJECT:
+			if (isAt(HIT) && hitHasDocument) {
+				documentCount++;
+				lastSortValues = hitSortValues;
+				documentBytes += documentBuffer.size();
+				long handleStart = System.nanoTime();
+				try {
+					handler.handle(documentBuffer.getBuffer(), documentBuffer.size(), hitSortValues);
+				} finally {
+					outputNanos += System.nanoTime() - handleStart;
+				}
+			}
+			depth--;
+			break;
+		case END_ARRAY:
+			depth--;
+			break;
+		default:
+			readScalar();
+			break;
+		}
+	}
+
+	private void readScalar() throws IOException {
+		if (depth != ROOT) {
+			return;
+		}
+		checkError();
+		if (OpensearchConstants.OS_RESPONSE_SCROLL_ID_FIELD.equals(fieldNames[ROOT])) {
+			scrollId = parser.getValueAsString();
+		} else if (OpensearchConstants.OS_PIT_ID_FIELD.equals(fieldNames[ROOT])) {
+			pitId = parser.getValueAsString();
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (depth == ROOT && OpensearchConstants.OS_RESPONSE_ERROR_FIELD.equals(fieldNames[ROOT])) {
+			throw new IOException("OpenSearch query failed");
+		}
+	}
+
+	/**
+	 * @return true if the parser is directly inside the input level of the hits of the response
+	 * */
+	private boolean isAt(int level) {
+		return depth == level && OpensearchConstants.OS_RESPONSE_HITS_FIELD.equals(fieldNames[ROOT])
+				&& OpensearchConstants.OS_RESPONSE_HITS_FIELD.equals(fieldNames[HITS_OBJECT]);
+	}
+
+	private void readSortValue(JsonToken token) throws IOException {
+		if (token == JsonToken.END_ARRAY) {
+			hitSortValues = sortValues;
+			sortValues = null;
+		} else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+			sortValues.add(parser.getNumberValue());
+		} else if (token == JsonToken.VALUE_NULL) {
+			sortValues.add(null);
+		} else if (token.isScalarValue()) {
+			sortValues.add(parser.getText());
+		} else {
+			throw new IOException("Unexpected OpenSearch sort value " + token);
+		}
+	}
+
+	private void copyToken(JsonToken token) throws IOException {
+		switch (token) {
+		case START_OBJECT:
+			generator.writeStartObject();
+			copyDepth++;
+			break;
+		case END_OBJECT:
+			generator.writeEndObject();
+			copyDepth--;
+			break;
+		case START_ARRAY:
+			generator.writeStartArray();
+			copyDepth++;
+			break;
+		case END_ARRAY:
+			generator.writeEndArray();
+			copyDepth--;
+			break;
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			generator.writeNumber(parser.getText());
+			break;
+		case VALUE_STRING:
+			generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+			break;
+		default:
+			generator.copyCurrentEvent(parser);
+			break;
+		}
+		if (copyDepth == 0) {
+			generator.flush();
+			hitHasDocument = true;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.Serializable;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a point in time extraction: the point in time to read from and the sort values of the last
+ * document already written, to be used as <code>search_after</code> for the next page
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OpenSearchCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String pitId;
+	private List<Object> searchAfter;
+	private int documentCount;
+}
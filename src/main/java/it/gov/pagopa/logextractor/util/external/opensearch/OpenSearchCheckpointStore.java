@@ -0,0 +1,30 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+/**
+ * Storage for the checkpoints of the point in time extractions, keyed by the extraction job and query.
+ * The checkpoints only record the progress of the extractions, so that how far a failed job went can be inspected:
+ * the extractions never read them back. Saving a checkpoint costs a write after every page, so no store is enabled
+ * unless <code>external.opensearch.pit.checkpoint.store</code> is set to <code>file</code> or <code>redis</code>
+ * */
+public interface OpenSearchCheckpointStore {
+
+	/**
+	 * Loads the checkpoint saved for the input key
+	 * @param key the checkpoint key
+	 * @return the saved checkpoint, null if there is none
+	 * */
+	OpenSearchCheckpoint load(String key);
+
+	/**
+	 * Saves the checkpoint for the input key, replacing the previous one
+	 * @param key the checkpoint key
+	 * @param checkpoint the checkpoint to save
+	 * */
+	void save(String key, OpenSearchCheckpoint checkpoint);
+
+	/**
+	 * Deletes the checkpoint saved for the input key, if any
+	 * @param key the checkpoint key
+	 * */
+	void delete(String key);
+}
@@ -0,0 +1,141 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The scroll and point in time contexts opened by a single extraction. Every id returned by Opensearch is tracked
+ * as soon as it is read. The scroll of a slice or time window is cleared by {@link #finishScroll(String)} as soon
+ * as it ends, and the reserved room the extraction is not going to use again is given back with
+ * {@link #retainPermits(int)}, so that a long extraction never holds more contexts than it reserved.
+ * {@link #close()} clears all the contexts still open, with a single clear scroll request for the scrolls.
+ * Closing is idempotent and thread safe, so the lease can be shared by the slices of a sliced scroll.
+ * */
+public class OpenSearchContextLease implements AutoCloseable {
+
+	private final OpenSearchContextManager manager;
+	private int permits;
+	private final OpenSearchApiHandler handler;
+	private final Set<String> scrollIds = new LinkedHashSet<>();
+	private final Set<String> pitIds = new LinkedHashSet<>();
+	private boolean closed;
+
+	OpenSearchContextLease(OpenSearchContextManager manager, int permits, OpenSearchApiHandler handler) {
+		this.manager = manager;
+		this.permits = permits;
+		this.handler = handler;
+	}
+
+	/**
+	 * Tracks the scroll id returned by the last page, replacing the one returned by the previous page
+	 * @param previousScrollId the scroll id sent to read the page, null for the first page
+	 * @param scrollId the scroll id returned by the page
+	 * */
+	public synchronized void trackScroll(String previousScrollId, String scrollId) {
+		replace(scrollIds, previousScrollId, scrollId);
+	}
+
+	/**
+	 * Tracks a point in time, replacing the previous one if it has been reopened
+	 * @param previousPitId the point in time id previously in use, null when the first one is opened
+	 * @param pitId the point in time id now in use
+	 * */
+	public synchronized void trackPit(String previousPitId, String pitId) {
+		replace(pitIds, previousPitId, pitId);
+	}
+
+	/**
+	 * Clears the scroll of a finished slice or time window right away, instead of when the lease is closed
+	 * @param scrollId the last scroll id returned by the scroll, null if none was returned
+	 * */
+	public void finishScroll(String scrollId) {
+		boolean tracked;
+		synchronized (this) {
+			tracked = scrollId != null && scrollIds.remove(scrollId);
+		}
+		if (tracked) {
+			try {
+				handler.clearScrolls(Collections.singletonList(scrollId));
+			} finally {
+				contextsChanged(-1);
+			}
+		}
+	}
+
+	/**
+	 * Gives back to the manager the reserved room above the input number of contexts, when the extraction is not
+	 * going to open more than that number of contexts at the same time anymore
+	 * @param contexts the number of contexts the extraction may still open at the same time
+	 * */
+	public void retainPermits(int contexts) {
+		int released;
+		synchronized (this) {
+			if (closed || permits <= contexts) {
+				return;
+			}
+			released = permits - Math.max(0, contexts);
+			permits -= released;
+		}
+		if (manager != null) {
+			manager.release(released);
+		}
+	}
+
+	private void replace(Set<String> ids, String previousId, String id) {
+		if (Objects.equals(previousId, id)) {
+			return;
+		}
+		int before = ids.size();
+		if (previousId != null) {
+			ids.remove(previousId);
+		}
+		if (id != null && !closed) {
+			ids.add(id);
+		}
+		contextsChanged(ids.size() - before);
+	}
+
+	private void contextsChanged(int delta) {
+		if (manager != null && delta != 0) {
+			manager.contextsChanged(delta);
+		}
+	}
+
+	/**
+	 * Clears every context still open and releases the reserved room
+	 * */
+	@Override
+	public void close() {
+		ArrayList<String> scrollsToClear;
+		ArrayList<String> pitsToClose;
+		int heldPermits;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			heldPermits = permits;
+			permits = 0;
+			scrollsToClear = new ArrayList<>(scrollIds);
+			pitsToClose = new ArrayList<>(pitIds);
+			scrollIds.clear();
+			pitIds.clear();
+		}
+		try {
+			if (!scrollsToClear.isEmpty()) {
+				handler.clearScrolls(scrollsToClear);
+			}
+			for (String pitId : pitsToClose) {
+				handler.closePit(pitId);
+			}
+		} finally {
+			contextsChanged(-(scrollsToClear.size() + pitsToClose.size()));
+			if (manager != null) {
+				manager.release(heldPermits);
+			}
+		}
+	}
+}
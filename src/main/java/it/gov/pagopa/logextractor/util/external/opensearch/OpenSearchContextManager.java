@@ -0,0 +1,84 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.gov.pagopa.logextractor.exception.CustomException;
+import it.gov.pagopa.logextractor.util.constant.ResponseConstants;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps track of the scroll and point in time contexts opened on the Opensearch cluster by all the extractions
+ * of this instance. Every extraction takes an {@link OpenSearchContextLease} before opening its contexts and
+ * closes it when done, so that the contexts are cleared as soon as the extraction ends, successfully or not.
+ * The number of contexts held at the same time is capped, and the live count is published as a gauge.
+ * */
+@Slf4j
+@Component
+public class OpenSearchContextManager {
+
+	static final String OPEN_CONTEXTS_METRIC = "opensearch.contexts.open";
+
+	private final int maxConcurrentContexts;
+	private final long acquireTimeoutSeconds;
+	private final Semaphore permits;
+	private final AtomicInteger openContexts = new AtomicInteger();
+
+	public OpenSearchContextManager(@Value("${external.opensearch.contexts.max-concurrent:20}") int maxConcurrentContexts,
+			@Value("${external.opensearch.contexts.acquire-timeout-seconds:120}") long acquireTimeoutSeconds,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		this.maxConcurrentContexts = Math.max(1, maxConcurrentContexts);
+		this.acquireTimeoutSeconds = acquireTimeoutSeconds;
+		this.permits = new Semaphore(this.maxConcurrentContexts, true);
+		meterRegistry.ifAvailable(registry -> Gauge.builder(OPEN_CONTEXTS_METRIC, openContexts, AtomicInteger::get)
+				.description("Scroll and point in time contexts currently open on the Opensearch cluster")
+				.register(registry));
+	}
+
+	/**
+	 * Reserves room for the input number of contexts, waiting for running extractions to release theirs if the
+	 * cap is reached. The extractions run after the request has been accepted, so a timeout does not reach the
+	 * caller as an HTTP 503: it fails the extraction and is reported in the error.txt entry of the archive
+	 * @param contexts the number of contexts the extraction is going to open at the same time
+	 * @param handler the handler used to clear the contexts when the lease is closed
+	 * @return the lease to be closed at the end of the extraction
+	 * @throws CustomException if the contexts cannot be reserved within the configured timeout, with the message
+	 * written to the archive
+	 * */
+	public OpenSearchContextLease acquire(int contexts, OpenSearchApiHandler handler) {
+		int requested = Math.min(Math.max(1, contexts), maxConcurrentContexts);
+		try {
+			if (!permits.tryAcquire(requested, acquireTimeoutSeconds, TimeUnit.SECONDS)) {
+				log.warn("No room for {} OpenSearch contexts after {} seconds, {} contexts open", requested,
+						acquireTimeoutSeconds, openContexts.get());
+				throw new CustomException(ResponseConstants.OPENSEARCH_CONTEXTS_UNAVAILABLE_MESSAGE, 503);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException(ResponseConstants.OPENSEARCH_CONTEXTS_UNAVAILABLE_MESSAGE, 503);
+		}
+		return new OpenSearchContextLease(this, requested, handler);
+	}
+
+	/**
+	 * @return the number of contexts currently open
+	 * */
+	public int getOpenContexts() {
+		return openContexts.get();
+	}
+
+	void contextsChanged(int delta) {
+		openContexts.addAndGet(delta);
+	}
+
+	void release(int contexts) {
+		permits.release(contexts);
+	}
+}
@@ -0,0 +1,111 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Documents held in memory, in the order they are read, until they can be written to the output of the extraction.
+ * The buffer starts small and grows with the documents, the caller is in charge of bounding its size
+ * */
+class OpenSearchDocumentBuffer {
+
+	private static final int INITIAL_BYTES = 8192;
+	private static final int INITIAL_DOCUMENTS = 64;
+
+	/**
+	 * Destination of the buffered documents
+	 * */
+	@FunctionalInterface
+	interface DocumentWriter {
+
+		/**
+		 * @param buffer The buffer holding the document
+		 * @param offset The offset of the document in the buffer
+		 * @param length The length of the document
+		 * @throws IOException in case of an IO error
+		 * */
+		void write(byte[] buffer, int offset, int length) throws IOException;
+	}
+
+	private byte[] bytes = new byte[INITIAL_BYTES];
+	private int[] ends = new int[INITIAL_DOCUMENTS];
+	private int size;
+	private int documentCount;
+
+	/**
+	 * Appends a document to the buffer
+	 * @param document The buffer holding the document
+	 * @param length The length of the document
+	 * */
+	void append(byte[] document, int length) {
+		if (size + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+		}
+		if (documentCount == ends.length) {
+			ends = Arrays.copyOf(ends, ends.length * 2);
+		}
+		System.arraycopy(document, 0, bytes, size, length);
+		size += length;
+		ends[documentCount++] = size;
+	}
+
+	/**
+	 * Writes the buffered documents in order
+	 * @param writer The destination of the documents
+	 * @return The number of documents written
+	 * @throws IOException in case of an IO error
+	 * */
+	int writeTo(DocumentWriter writer) throws IOException {
+		int start = 0;
+		for (int document = 0; document < documentCount; document++) {
+			writer.write(bytes, start, ends[document] - start);
+			start = ends[document];
+		}
+		return documentCount;
+	}
+
+	/**
+	 * Empties the buffer, keeping its memory for the next documents
+	 * */
+	void clear() {
+		size = 0;
+		documentCount = 0;
+	}
+
+	/**
+	 * @return The buffer holding the documents, valid until the next {@link #append(byte[], int)}
+	 * */
+	byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @param document The index of a buffered document
+	 * @return The offset of the document in {@link #getBytes()}
+	 * */
+	int getStart(int document) {
+		return document == 0 ? 0 : ends[document - 1];
+	}
+
+	/**
+	 * @param document The index of a buffered document
+	 * @return The offset following the document in {@link #getBytes()}
+	 * */
+	int getEnd(int document) {
+		return ends[document];
+	}
+
+	/**
+	 * @return The bytes of the buffered documents
+	 * */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of buffered documents
+	 * */
+	int getDocumentCount() {
+		return documentCount;
+	}
+}
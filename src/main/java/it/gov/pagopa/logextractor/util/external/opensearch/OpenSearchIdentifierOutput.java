@@ -0,0 +1,27 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination of a multi identifier extraction: the documents of every identifier are written, one per line,
+ * to the stream opened for that identifier, one identifier at a time and in the requested order
+ * */
+public interface OpenSearchIdentifierOutput {
+
+	/**
+	 * Opens the destination of the documents of an identifier
+	 * @param identifier The identifier
+	 * @return The stream where to write the documents, it is not closed by the caller
+	 * @throws IOException in case of an IO error
+	 * */
+	OutputStream open(String identifier) throws IOException;
+
+	/**
+	 * Completes the destination of the documents of an identifier
+	 * @param identifier The identifier
+	 * @param documentCount The number of documents written for the identifier
+	 * @throws IOException in case of an IO error
+	 * */
+	void close(String identifier, int documentCount) throws IOException;
+}
@@ -0,0 +1,159 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Restricts the Opensearch searches to the time partitioned indexes overlapping the range of the query, instead of
+ * the alias or wildcard of the configured search url. The index names are built from a pattern such as
+ * <code>pn-logs-{yyyy.MM.dd}</code>, where the part in braces is the date format of the partition, and are checked
+ * against a cached listing of the existing indexes. The configured search url is kept whenever the indexes cannot
+ * be resolved: a range without dates, too many indexes, no existing index or an error listing them.
+ * */
+@Slf4j
+@Component
+public class OpenSearchIndexResolver {
+
+	private static final long MISSING_INDEX_RECHECK_MILLIS = 30000;
+	private static final int MAX_RANGE_DAYS = 3660;
+
+	private final String indexPrefix;
+	private final String indexSuffix;
+	private final DateTimeFormatter indexDateFormat;
+	private final long cacheTtlMillis;
+	private final int maxIndexes;
+	private final int marginDays;
+	private final Clock clock;
+	private Set<String> cachedIndexes;
+	private long cachedAt;
+
+	@Autowired
+	public OpenSearchIndexResolver(@Value("${external.opensearch.indexes.pattern:}") String indexPattern,
+			@Value("${external.opensearch.indexes.cache-ttl-seconds:300}") long cacheTtlSeconds,
+			@Value("${external.opensearch.indexes.max-indexes:60}") int maxIndexes,
+			@Value("${external.opensearch.indexes.margin-days:1}") int marginDays) {
+		this(indexPattern, cacheTtlSeconds, maxIndexes, marginDays, Clock.systemUTC());
+	}
+
+	OpenSearchIndexResolver(String indexPattern, long cacheTtlSeconds, int maxIndexes, int marginDays, Clock clock) {
+		int dateStart = StringUtils.indexOf(indexPattern, '{');
+		int dateEnd = StringUtils.indexOf(indexPattern, '}');
+		if (dateStart >= 0 && dateEnd > dateStart) {
+			this.indexPrefix = indexPattern.substring(0, dateStart);
+			this.indexSuffix = indexPattern.substring(dateEnd + 1);
+			this.indexDateFormat = DateTimeFormatter.ofPattern(indexPattern.substring(dateStart + 1, dateEnd));
+		} else {
+			if (StringUtils.isNotBlank(indexPattern)) {
+				log.warn("OpenSearch index pattern {} has no date format, indexes will not be resolved", indexPattern);
+			}
+			this.indexPrefix = null;
+			this.indexSuffix = null;
+			this.indexDateFormat = null;
+		}
+		this.cacheTtlMillis = cacheTtlSeconds * 1000;
+		this.maxIndexes = Math.max(1, maxIndexes);
+		this.marginDays = Math.max(0, marginDays);
+		this.clock = clock;
+	}
+
+	/**
+	 * Resolves the search url restricted to the indexes overlapping the input range
+	 * @param searchUrl the configured search url, ending with the search path
+	 * @param range the range of the query
+	 * @param indexLister the function listing the names of the existing indexes matching a wildcard expression
+	 * @return the search url on the resolved indexes, or the configured search url if the indexes cannot be resolved
+	 * */
+	public String resolve(String searchUrl, OpenSearchRangeQueryData range,
+			Function<String, List<String>> indexLister) {
+		if (indexDateFormat == null || range == null) {
+			return searchUrl;
+		}
+		Set<String> candidates = candidateIndexes(range);
+		if (candidates.isEmpty() || candidates.size() > maxIndexes) {
+			return searchUrl;
+		}
+		List<String> indexes;
+		try {
+			indexes = existingIndexes(candidates, indexLister);
+		} catch (RestClientException e) {
+			log.warn("Error listing OpenSearch indexes, searching on {}", searchUrl, e);
+			return searchUrl;
+		}
+		if (indexes.isEmpty()) {
+			return searchUrl;
+		}
+		UriComponents uri = UriComponentsBuilder.fromHttpUrl(searchUrl).build();
+		String basePath = StringUtils.removeEnd(StringUtils.defaultString(uri.getPath()), OpensearchConstants.OS_SEARCH_PATH);
+		String lastSegment = StringUtils.substringAfterLast(basePath, "/");
+		if (StringUtils.containsAny(lastSegment, '*', ',') || StringUtils.startsWith(lastSegment, indexPrefix)) {
+			basePath = StringUtils.substringBeforeLast(basePath, "/");
+		}
+		String resolvedUrl = UriComponentsBuilder.fromHttpUrl(searchUrl)
+				.replacePath(basePath + "/" + String.join(",", indexes) + OpensearchConstants.OS_SEARCH_PATH)
+				.build().toUriString();
+		log.debug("OpenSearch range {} - {} resolved to {} indexes", range.getFrom(), range.getTo(), indexes.size());
+		return resolvedUrl;
+	}
+
+	private Set<String> candidateIndexes(OpenSearchRangeQueryData range) {
+		Set<String> candidates = new LinkedHashSet<>();
+		LocalDate from;
+		LocalDate to;
+		try {
+			from = LocalDate.parse(StringUtils.left(range.getFrom(), 10)).minusDays(marginDays);
+			to = LocalDate.parse(StringUtils.left(range.getTo(), 10)).plusDays(marginDays);
+		} catch (DateTimeParseException | NullPointerException e) {
+			return candidates;
+		}
+		if (to.isBefore(from) || from.plusDays(MAX_RANGE_DAYS).isBefore(to)) {
+			return candidates;
+		}
+		for (LocalDate day = from; !day.isAfter(to) && candidates.size() <= maxIndexes; day = day.plusDays(1)) {
+			candidates.add(indexPrefix + indexDateFormat.format(day) + indexSuffix);
+		}
+		return candidates;
+	}
+
+	private synchronized List<String> existingIndexes(Set<String> candidates,
+			Function<String, List<String>> indexLister) {
+		long now = clock.millis();
+		if (cachedIndexes == null || now - cachedAt > cacheTtlMillis) {
+			refresh(indexLister, now);
+		} else if (!cachedIndexes.containsAll(candidates) && now - cachedAt > MISSING_INDEX_RECHECK_MILLIS) {
+			// an index of the range may have been created after the listing, e.g. the one of the current day
+			refresh(indexLister, now);
+		}
+		List<String> indexes = new ArrayList<>();
+		for (String candidate : candidates) {
+			if (cachedIndexes.contains(candidate)) {
+				indexes.add(candidate);
+			}
+		}
+		return indexes;
+	}
+
+	private void refresh(Function<String, List<String>> indexLister, long now) {
+		cachedIndexes = new HashSet<>(indexLister.apply(indexPrefix + "*"));
+		cachedAt = now;
+		log.info("OpenSearch indexes listing refreshed, {} indexes", cachedIndexes.size());
+	}
+}
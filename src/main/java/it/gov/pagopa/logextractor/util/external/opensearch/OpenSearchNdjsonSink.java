@@ -0,0 +1,149 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Buffered writer of the extracted documents as new line delimited JSON. Documents already UTF-8 encoded are
+ * copied into a reusable buffer together with their line separator, documents read as text are encoded into a
+ * reusable scratch array, so that writing a line allocates nothing and the target stream receives a few large
+ * writes instead of two small writes per document.
+ * The lines and bytes written are counted for the extraction logs. Closing the sink flushes it without closing
+ * the target stream, which belongs to the caller. Instances are not thread safe.
+ * */
+public class OpenSearchNdjsonSink extends OutputStream {
+
+	private static final byte NEW_LINE = '\n';
+	private static final int MIN_BUFFER_SIZE = 1024;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;
+	private byte[] encoded = new byte[MIN_BUFFER_SIZE];
+	private long lineCount;
+	private long byteCount;
+
+	/**
+	 * @param out The stream where to write the lines
+	 * @param bufferSize The size of the write buffer
+	 * */
+	public OpenSearchNdjsonSink(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[Math.max(MIN_BUFFER_SIZE, bufferSize)];
+	}
+
+	/**
+	 * Writes a UTF-8 encoded document followed by the line separator
+	 * @param document The buffer containing the document
+	 * @param offset The offset of the document in the buffer
+	 * @param length The length of the document
+	 * @throws IOException in case of an IO error writing to the target stream
+	 * */
+	public void writeLine(byte[] document, int offset, int length) throws IOException {
+		write(document, offset, length);
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = NEW_LINE;
+		byteCount++;
+		lineCount++;
+	}
+
+	/**
+	 * Encodes a document in UTF-8 into the scratch array of the sink, which is reused by the next call
+	 * @param document The document
+	 * @return The length of the encoded document, read from the start of {@link #getEncoded()}
+	 * */
+	public int encode(CharSequence document) {
+		int length = 0;
+		int chars = document.length();
+		for (int i = 0; i < chars; i++) {
+			if (encoded.length - length < 4) {
+				encoded = Arrays.copyOf(encoded, encoded.length * 2);
+			}
+			char c = document.charAt(i);
+			if (c < 0x80) {
+				encoded[length++] = (byte) c;
+			} else if (c < 0x800) {
+				encoded[length++] = (byte) (0xC0 | (c >> 6));
+				encoded[length++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(document.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, document.charAt(++i));
+				encoded[length++] = (byte) (0xF0 | (codePoint >> 18));
+				encoded[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				encoded[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				encoded[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				encoded[length++] = '?';
+			} else {
+				encoded[length++] = (byte) (0xE0 | (c >> 12));
+				encoded[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				encoded[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return the scratch array holding the last document passed to {@link #encode(CharSequence)}
+	 * */
+	public byte[] getEncoded() {
+		return encoded;
+	}
+
+	/**
+	 * @return the number of lines written
+	 * */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return the number of bytes written, line separators included
+	 * */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+		byteCount++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.length - count) {
+			flushBuffer();
+		}
+		if (length >= buffer.length) {
+			out.write(bytes, offset, length);
+		} else {
+			System.arraycopy(bytes, offset, buffer, count, length);
+			count += length;
+		}
+		byteCount += length;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
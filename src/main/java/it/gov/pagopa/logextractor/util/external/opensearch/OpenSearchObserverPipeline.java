@@ -0,0 +1,191 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers the extracted documents to the {@link OpenSearchApiObserver}s in batches, on a dedicated thread.
+ * The extracting thread reads once the fields requested by all the observers, so that a batch holds only those
+ * fields and never a copy of the documents, the observer thread notifies every observer once per batch.
+ * At most <code>queueBatches</code> batches wait for the observers, then the extracting thread blocks until
+ * the observers catch up. Instances are not thread safe, documents must be accepted from a single thread.
+ * */
+@Slf4j
+public class OpenSearchObserverPipeline implements AutoCloseable {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final Batch END_OF_DOCUMENTS = new Batch(0, 0);
+
+	private final List<OpenSearchApiObserver> observers;
+	private final Set<String> observedFields = new HashSet<>();
+	private final int batchSize;
+	private final BlockingQueue<Batch> queue;
+	private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private final Future<?> worker;
+	private final ExtractionMetrics metrics;
+	private int documentCounter;
+	private Batch current;
+	private boolean closed;
+
+	public OpenSearchObserverPipeline(List<OpenSearchApiObserver> observers, int batchSize, int queueBatches) {
+		this(observers, batchSize, queueBatches, ExtractionMetrics.NOOP);
+	}
+
+	public OpenSearchObserverPipeline(List<OpenSearchApiObserver> observers, int batchSize, int queueBatches,
+			ExtractionMetrics metrics) {
+		this.metrics = metrics;
+		this.observers = new ArrayList<>(observers);
+		for (OpenSearchApiObserver observer : this.observers) {
+			observedFields.addAll(observer.getObservedFields());
+		}
+		this.batchSize = Math.max(1, batchSize);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, queueBatches));
+		this.worker = executor.submit(this::notifyBatches);
+	}
+
+	/**
+	 * Adds a document to the current batch, handing the batch to the observers when it is full
+	 * @param buffer the buffer containing the UTF-8 encoded document
+	 * @param offset the offset of the document in the buffer
+	 * @param length the length of the document
+	 * */
+	public void accept(byte[] buffer, int offset, int length) {
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		if (current == null) {
+			current = new Batch(documentCounter + 1, batchSize);
+		}
+		current.documents.add(readObservedFields(buffer, offset, length));
+		documentCounter++;
+		if (current.documents.size() == batchSize) {
+			dispatch();
+		}
+	}
+
+	/**
+	 * Hands the pending documents to the observers and waits until all of them have been notified
+	 * */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (failure.get() == null) {
+				dispatch();
+			}
+			queue.put(END_OF_DOCUMENTS);
+			worker.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while notifying the OpenSearch observers", e);
+		} catch (ExecutionException e) {
+			failure.compareAndSet(null, new IllegalStateException(e.getCause()));
+		} finally {
+			executor.shutdownNow();
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	private void dispatch() {
+		if (current != null && !current.documents.isEmpty()) {
+			try {
+				queue.put(current);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while notifying the OpenSearch observers", e);
+			}
+		}
+		current = null;
+	}
+
+	private void notifyBatches() {
+		try {
+			Batch batch;
+			while ((batch = queue.take()) != END_OF_DOCUMENTS) {
+				if (failure.get() == null) {
+					notifyBatch(batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void notifyBatch(Batch batch) {
+		long notifyStart = System.nanoTime();
+		try {
+			List<Map<String, String>> readOnlyDocuments = Collections.unmodifiableList(batch.documents);
+			for (OpenSearchApiObserver observer : observers) {
+				observer.notify(readOnlyDocuments, batch.firstDocumentNumber);
+			}
+		} catch (RuntimeException e) {
+			log.error("Error notifying the OpenSearch observers", e);
+			failure.compareAndSet(null, e);
+		}
+		metrics.recordObserverBatch(System.nanoTime() - notifyStart);
+	}
+
+	private Map<String, String> readObservedFields(byte[] buffer, int offset, int length) {
+		Map<String, String> fields = new HashMap<>();
+		if (observedFields.isEmpty()) {
+			return fields;
+		}
+		try (JsonParser parser = JSON_FACTORY.createParser(buffer, offset, length)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return fields;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME && fields.size() < observedFields.size()) {
+				String fieldName = parser.getCurrentName();
+				JsonToken valueToken = parser.nextToken();
+				if (valueToken.isScalarValue() && valueToken != JsonToken.VALUE_NULL && observedFields.contains(fieldName)) {
+					fields.put(fieldName, parser.getValueAsString());
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return fields;
+	}
+
+	/**
+	 * A batch of the observed fields of consecutive documents
+	 * */
+	private static class Batch {
+		private final int firstDocumentNumber;
+		private final List<Map<String, String>> documents;
+
+		Batch(int firstDocumentNumber, int capacity) {
+			this.firstDocumentNumber = firstDocumentNumber;
+			this.documents = new ArrayList<>(capacity);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchResponseStreamParser.DocumentHandler;
+
+/**
+ * Document handler keeping track of how many documents of the page being read have been handed to the output,
+ * so that a page read again after a failed attempt does not write the same documents twice: the documents
+ * already handed over are skipped and only the following ones reach the output.
+ * An IO error of the output is rethrown as {@link UncheckedIOException}, so that it is never mistaken for an
+ * error of the request and retried.
+ * */
+class OpenSearchPageGuard implements DocumentHandler {
+
+	private final DocumentHandler delegate;
+	private int delivered;
+	private int skip;
+	private int position;
+
+	OpenSearchPageGuard(DocumentHandler delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Starts reading a new page
+	 * */
+	void startPage() {
+		delivered = 0;
+		skip = 0;
+		position = 0;
+	}
+
+	/**
+	 * Starts reading again the current page, skipping the documents already handed to the output
+	 * */
+	void restartPage() {
+		skip = delivered;
+		position = 0;
+	}
+
+	/**
+	 * @return the number of documents of the current page handed to the output
+	 * */
+	int getDelivered() {
+		return delivered;
+	}
+
+	@Override
+	public void handle(byte[] document, int length, List<Object> sortValues) {
+		if (position++ < skip) {
+			return;
+		}
+		try {
+			delegate.handle(document, length, sortValues);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		delivered++;
+	}
+}
@@ -0,0 +1,64 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chooses the page size of the Opensearch queries from the size and the read time of the documents of the
+ * previous pages, so that a page stays close to a target size in bytes and within a latency budget.
+ * The averages are exponentially weighted and shared by the extractions of the same use case, see
+ * {@link OpenSearchApiHandlerFactory#getPageSizer(String)}. The read time is the time spent to fetch and parse
+ * the page, without the time spent writing its documents to the output.
+ * */
+@Slf4j
+public class OpenSearchPageSizer {
+
+	private static final double SMOOTHING = 0.3;
+
+	private final int minPageSize;
+	private final int maxPageSize;
+	private final long targetPageBytes;
+	private final long latencyBudgetNanos;
+	private double bytesPerDocument;
+	private double nanosPerDocument;
+
+	public OpenSearchPageSizer(int minPageSize, int maxPageSize, long targetPageBytes, long latencyBudgetMillis) {
+		this.minPageSize = Math.max(1, minPageSize);
+		this.maxPageSize = Math.max(this.minPageSize, maxPageSize);
+		this.targetPageBytes = targetPageBytes;
+		this.latencyBudgetNanos = latencyBudgetMillis * 1_000_000L;
+	}
+
+	/**
+	 * @return the page size for the next query, the maximum page size until a page has been measured
+	 * */
+	public synchronized int nextPageSize() {
+		double pageSize = maxPageSize;
+		if (bytesPerDocument > 0) {
+			pageSize = Math.min(pageSize, targetPageBytes / bytesPerDocument);
+		}
+		if (nanosPerDocument > 0) {
+			pageSize = Math.min(pageSize, latencyBudgetNanos / nanosPerDocument);
+		}
+		return (int) Math.max(minPageSize, pageSize);
+	}
+
+	/**
+	 * Records the measures of a page read from Opensearch
+	 * @param documentCount the number of documents of the page
+	 * @param documentBytes the total size of the documents of the page
+	 * @param elapsedNanos the time spent to request and parse the page, without writing its documents
+	 * */
+	public synchronized void record(int documentCount, long documentBytes, long elapsedNanos) {
+		if (documentCount <= 0) {
+			return;
+		}
+		bytesPerDocument = smooth(bytesPerDocument, (double) documentBytes / documentCount);
+		nanosPerDocument = smooth(nanosPerDocument, (double) elapsedNanos / documentCount);
+		log.debug("OpenSearch page of {} documents, {} bytes in {} ms, next page size {}", documentCount, documentBytes,
+				elapsedNanos / 1_000_000, nextPageSize());
+	}
+
+	private static double smooth(double average, double sample) {
+		return average == 0 ? sample : average + SMOOTHING * (sample - average);
+	}
+}
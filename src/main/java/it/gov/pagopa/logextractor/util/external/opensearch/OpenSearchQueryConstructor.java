@@ -2,47 +2,164 @@ package it.gov.pagopa.logextractor.util.external.opensearch;
 
 import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import lombok.Getter;
+import lombok.Setter;
+
 /**
- * Utility class for constructing OpenSearch queries
+ * Utility class for constructing OpenSearch queries. The queries are rendered from {@link OpenSearchQueryTemplate}s
+ * as UTF-8 bytes; the template of the last query data is kept, so that the pages of a point in time only fill
+ * the changing slots
  * */
 public class OpenSearchQueryConstructor {
+
+	private static final byte[] MULTI_SEARCH_HEADER = "{}\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final OpenSearchSourceFilter sourceFilter;
+	@Getter
+	@Setter
+	private int pageSize = OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+	private OpenSearchQuerydata lastQueryData;
+	private OpenSearchQueryTemplate lastTemplate;
+
+	public OpenSearchQueryConstructor() {
+		this(null);
+	}
+
+	/**
+	 * @param sourceFilter the <code>_source</code> fields to be returned by the search queries, null for all the fields
+	 * */
+	public OpenSearchQueryConstructor(OpenSearchSourceFilter sourceFilter) {
+		this.sourceFilter = sourceFilter;
+	}
 	
 	/**
-	 * Creates a boolean multi-search query string with the input query data
+	 * Creates a boolean multi-search query with the input query data
+	 * @param queryData The query data
+	 * @return The multi-search boolean query, one line for each query data
+	 * */
+	public byte[] createBooleanMultiSearchQuery(List<OpenSearchQuerydata> queryData) {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		if (null != queryData) {
+			for (OpenSearchQuerydata currentQueryData : queryData) {
+				getTemplate(currentQueryData).renderSearch(queryBuilder, pageSize);
+			}
+		}
+		return queryBuilder.toByteArray();
+	}
+
+	/**
+	 * Creates a boolean search query with the input query data, restricted to one slice of a sliced scroll
+	 * @param queryData The query data
+	 * @param sliceId The slice to be read, starting from 0
+	 * @param maxSlices The total number of slices
+	 * @return The sliced boolean query
+	 * */
+	public byte[] createBooleanSlicedSearchQuery(List<OpenSearchQuerydata> queryData, int sliceId, int maxSlices) {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		if (null != queryData) {
+			for (OpenSearchQuerydata currentQueryData : queryData) {
+				getTemplate(currentQueryData).renderSlicedSearch(queryBuilder, pageSize, sliceId, maxSlices);
+			}
+		}
+		return queryBuilder.toByteArray();
+	}
+
+	/**
+	 * Creates a boolean search query with the input query data, reading a page of a point in time after the
+	 * input sort values
+	 * @param queryData The query data
+	 * @param pitId The point in time id
+	 * @param keepAlive The point in time keep alive duration
+	 * @param searchAfter The sort values of the last document already read, null to read the first page
+	 * @param tiebreakerField The field added as last sort criteria to make the sort values unique, if not blank
+	 * @return The point in time boolean query
+	 * @throws JsonProcessingException if the sort values cannot be serialized
+	 * */
+	public byte[] createBooleanPitSearchQuery(List<OpenSearchQuerydata> queryData, String pitId, String keepAlive,
+			List<Object> searchAfter, String tiebreakerField) throws JsonProcessingException {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		if (null != queryData) {
+			for (OpenSearchQuerydata currentQueryData : queryData) {
+				getTemplate(currentQueryData).renderPitSearch(queryBuilder, pageSize, pitId, keepAlive, searchAfter,
+						tiebreakerField);
+			}
+		}
+		return queryBuilder.toByteArray();
+	}
+
+	/**
+	 * Creates a boolean search query with the input query data, reading the page after the input sort values
+	 * without keeping any search context open
 	 * @param queryData The query data
-	 * @return A string representing the multi-search boolean query 
-	 * */
-	public String createBooleanMultiSearchQuery(List<OpenSearchQuerydata> queryData) {
-		StringBuilder queryBuilder = new StringBuilder();
-		StringBuilder paramsBuilder = new StringBuilder();
-		if(null != queryData && !queryData.isEmpty()) {
-			for(OpenSearchQuerydata currentQueryData : queryData) {
-				for (OpenSearchQueryFilter filterTemp : currentQueryData.getMatchFields()) {
-					paramsBuilder.append("{\"match\":{"+ "\""+filterTemp.getKey()+"\":"+ "\""
-							+filterTemp.getValue()+"\"}},");
-			    }
-				if(null != currentQueryData.getRangeData()) {
-					paramsBuilder.append("{\"range\":{\""+currentQueryData.getRangeData().getRangeField()+"\":{\"gte\":\""
-							+currentQueryData.getRangeData().getFrom()+"\",\"lte\":\""
-							+currentQueryData.getRangeData().getTo()+"\"}}}");
-				}
-				else{
-					paramsBuilder.deleteCharAt(paramsBuilder.length()-1);
-				}
-				queryBuilder.append("{\"query\":{\"bool\":{\"filter\":["+paramsBuilder+"]}}");
-				if(null != currentQueryData.getSortFilter()) {
-					queryBuilder.append(",\"sort\":[{\""+currentQueryData.getSortFilter().getSortField()+"\": "
-							+ "{\"order\":\""+currentQueryData.getSortFilter().getSortOrder().toString()+"\"}}]\n");
-				}
-				queryBuilder.append(",\"size\":" + OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE + "}\n");
-				paramsBuilder.setLength(0);
+	 * @param searchAfter The sort values of the last document already read, null to read the first page
+	 * @param tiebreakerField The field added as last sort criteria to make the sort values unique, if not blank
+	 * @return The search after boolean query
+	 * @throws JsonProcessingException if the sort values cannot be serialized
+	 * */
+	public byte[] createBooleanSearchAfterQuery(OpenSearchQuerydata queryData, List<Object> searchAfter,
+			String tiebreakerField) throws JsonProcessingException {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		getTemplate(queryData).renderSearchAfter(queryBuilder, pageSize, searchAfter, tiebreakerField);
+		return queryBuilder.toByteArray();
+	}
+
+	/**
+	 * Creates the body of a _msearch request reading the first search after page of every query data,
+	 * an empty header line followed by the query line for each query data
+	 * @param queryData The query data
+	 * @param tiebreakerField The field added as last sort criteria to make the sort values unique, if not blank
+	 * @return The _msearch request body
+	 * @throws JsonProcessingException if the sort values cannot be serialized
+	 * */
+	public byte[] createMultiSearchBody(List<OpenSearchQuerydata> queryData, String tiebreakerField)
+			throws JsonProcessingException {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		if (null != queryData) {
+			for (OpenSearchQuerydata currentQueryData : queryData) {
+				queryBuilder.write(MULTI_SEARCH_HEADER);
+				getTemplate(currentQueryData).renderSearchAfter(queryBuilder, pageSize, null, tiebreakerField);
 			}
 		}
-		return queryBuilder.toString();
+		return queryBuilder.toByteArray();
+	}
+
+	/**
+	 * Creates a boolean search query with the input query data returning only the input aggregations
+	 * @param queryData The query data
+	 * @param aggregations The UTF-8 encoded <code>aggs</code> object
+	 * @return The aggregation boolean query
+	 * */
+	public byte[] createBooleanAggregationQuery(OpenSearchQuerydata queryData, byte[] aggregations) {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		getTemplate(queryData).renderAggregation(queryBuilder, aggregations);
+		return queryBuilder.toByteArray();
+	}
+
+	/**
+	 * Creates the body of a count request matching the same documents of the input query data
+	 * @param queryData The query data
+	 * @return The count boolean query
+	 * */
+	public byte[] createBooleanCountQuery(OpenSearchQuerydata queryData) {
+		ByteArrayBuilder queryBuilder = new ByteArrayBuilder();
+		getTemplate(queryData).renderCount(queryBuilder);
+		return queryBuilder.toByteArray();
+	}
+
+	private synchronized OpenSearchQueryTemplate getTemplate(OpenSearchQuerydata queryData) {
+		if (queryData != lastQueryData) {
+			lastTemplate = OpenSearchQueryTemplate.compile(queryData, sourceFilter);
+			lastQueryData = queryData;
+		}
+		return lastTemplate;
 	}
 	
 	/**
@@ -0,0 +1,311 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.gov.pagopa.logextractor.util.SortOrders;
+
+/**
+ * Precompiled OpenSearch search query. The match, range, sort and <code>_source</code> clauses of a query data are
+ * serialized once, as escaped UTF-8 bytes, when the template is compiled; rendering a query only appends them to the
+ * output buffer and fills the slots that change between requests: size, slice, point in time and search_after.
+ * The rendered query is a single line JSON object followed by a new line, ready to be sent and logged as is.
+ * Templates are immutable and can be shared between threads.
+ * */
+public class OpenSearchQueryTemplate {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final JsonStringEncoder ENCODER = JsonStringEncoder.getInstance();
+
+	private static final byte[] QUERY_START = ascii("{\"query\":{\"bool\":{\"filter\":[");
+	private static final byte[] QUERY_END = ascii("]}}");
+	private static final byte[] MATCH_START = ascii("{\"match\":{");
+	private static final byte[] RANGE_START = ascii("{\"range\":{");
+	private static final byte[] RANGE_FROM = ascii(":{\"gte\":");
+	private static final byte[] RANGE_TO_INCLUSIVE = ascii(",\"lte\":");
+	private static final byte[] RANGE_TO_EXCLUSIVE = ascii(",\"lt\":");
+	private static final byte[] SORT_START = ascii(",\"sort\":[");
+	private static final byte[] ORDER = ascii(":{\"order\":");
+	private static final byte[] SOURCE_START = ascii(",\"_source\":{");
+	private static final byte[] INCLUDES = ascii("\"includes\":[");
+	private static final byte[] EXCLUDES = ascii("\"excludes\":[");
+	private static final byte[] SLICE_ID = ascii(",\"slice\":{\"id\":");
+	private static final byte[] SLICE_MAX = ascii(",\"max\":");
+	private static final byte[] PIT_ID = ascii(",\"pit\":{\"id\":");
+	private static final byte[] PIT_KEEP_ALIVE = ascii(",\"keep_alive\":");
+	private static final byte[] SEARCH_AFTER = ascii(",\"search_after\":[");
+	private static final byte[] SIZE = ascii(",\"size\":");
+	private static final byte[] AGGREGATION_START = ascii(",\"track_total_hits\":true,\"size\":0,\"aggs\":");
+	private static final byte[] NULL = ascii("null");
+	private static final byte[] SEARCH_END = ascii("}\n");
+
+	private final byte[] query;
+	private final byte[] sort;
+	private final byte[] source;
+
+	private OpenSearchQueryTemplate(byte[] query, byte[] sort, byte[] source) {
+		this.query = query;
+		this.sort = sort;
+		this.source = source;
+	}
+
+	/**
+	 * Compiles the template of the input query data
+	 * @param queryData The query data
+	 * @param sourceFilter The <code>_source</code> fields to be returned by the search queries, null for all the fields
+	 * @return the compiled template
+	 * */
+	public static OpenSearchQueryTemplate compile(OpenSearchQuerydata queryData, OpenSearchSourceFilter sourceFilter) {
+		return new OpenSearchQueryTemplate(compileQuery(queryData), compileSort(queryData.getSortFilter()),
+				compileSource(sourceFilter));
+	}
+
+	/**
+	 * Renders the body of a count request matching the same documents of the search queries
+	 * @param out The buffer where to write the query
+	 * */
+	public void renderCount(ByteArrayBuilder out) {
+		out.write(query);
+		out.write('}');
+	}
+
+	/**
+	 * Renders a search query returning no documents, only the total number of matching documents and the input
+	 * aggregations
+	 * @param out The buffer where to write the query
+	 * @param aggregations The UTF-8 encoded <code>aggs</code> object
+	 * */
+	public void renderAggregation(ByteArrayBuilder out, byte[] aggregations) {
+		out.write(query);
+		out.write(AGGREGATION_START);
+		out.write(aggregations);
+		out.write(SEARCH_END);
+	}
+
+	/**
+	 * Renders a scroll search query
+	 * @param out The buffer where to write the query
+	 * @param size The page size
+	 * */
+	public void renderSearch(ByteArrayBuilder out, int size) {
+		writeSort(out, null);
+		writeEnd(out, size);
+	}
+
+	/**
+	 * Renders a search query restricted to one slice of a sliced scroll
+	 * @param out The buffer where to write the query
+	 * @param size The page size
+	 * @param sliceId The slice to be read, starting from 0
+	 * @param maxSlices The total number of slices
+	 * */
+	public void renderSlicedSearch(ByteArrayBuilder out, int size, int sliceId, int maxSlices) {
+		writeSort(out, null);
+		out.write(SLICE_ID);
+		writeAscii(out, Integer.toString(sliceId));
+		out.write(SLICE_MAX);
+		writeAscii(out, Integer.toString(maxSlices));
+		out.write('}');
+		writeEnd(out, size);
+	}
+
+	/**
+	 * Renders a search query reading a page of a point in time after the input sort values
+	 * @param out The buffer where to write the query
+	 * @param size The page size
+	 * @param pitId The point in time id
+	 * @param keepAlive The point in time keep alive duration
+	 * @param searchAfter The sort values of the last document already read, null to read the first page
+	 * @param tiebreakerField The field added as last sort criteria to make the sort values unique, if not blank
+	 * @throws JsonProcessingException if a sort value cannot be serialized
+	 * */
+	public void renderPitSearch(ByteArrayBuilder out, int size, String pitId, String keepAlive, List<Object> searchAfter,
+			String tiebreakerField) throws JsonProcessingException {
+		writeSort(out, StringUtils.isBlank(tiebreakerField) ? null : tiebreakerField);
+		out.write(PIT_ID);
+		writeString(out, pitId);
+		out.write(PIT_KEEP_ALIVE);
+		writeString(out, keepAlive);
+		out.write('}');
+		writeSearchAfter(out, searchAfter);
+		writeEnd(out, size);
+	}
+
+	/**
+	 * Renders a search query reading the page after the input sort values, without scroll or point in time
+	 * @param out The buffer where to write the query
+	 * @param size The page size
+	 * @param searchAfter The sort values of the last document already read, null to read the first page
+	 * @param tiebreakerField The field added as last sort criteria to make the sort values unique, if not blank
+	 * @throws JsonProcessingException if a sort value cannot be serialized
+	 * */
+	public void renderSearchAfter(ByteArrayBuilder out, int size, List<Object> searchAfter, String tiebreakerField)
+			throws JsonProcessingException {
+		writeSort(out, StringUtils.isBlank(tiebreakerField) ? null : tiebreakerField);
+		writeSearchAfter(out, searchAfter);
+		writeEnd(out, size);
+	}
+
+	private void writeSearchAfter(ByteArrayBuilder out, List<Object> searchAfter) throws JsonProcessingException {
+		if (null != searchAfter && !searchAfter.isEmpty()) {
+			out.write(SEARCH_AFTER);
+			for (int index = 0; index < searchAfter.size(); index++) {
+				if (index > 0) {
+					out.write(',');
+				}
+				writeValue(out, searchAfter.get(index));
+			}
+			out.write(']');
+		}
+	}
+
+	private void writeSort(ByteArrayBuilder out, String tiebreakerField) {
+		out.write(query);
+		if (null != sort) {
+			out.write(sort);
+			if (null != tiebreakerField) {
+				out.write(',');
+				writeSortField(out, tiebreakerField, SortOrders.ASC);
+			}
+			out.write(']');
+		}
+	}
+
+	private void writeEnd(ByteArrayBuilder out, int size) {
+		if (null != source) {
+			out.write(source);
+		}
+		out.write(SIZE);
+		writeAscii(out, Integer.toString(size));
+		out.write(SEARCH_END);
+	}
+
+	private static byte[] compileQuery(OpenSearchQuerydata queryData) {
+		ByteArrayBuilder out = new ByteArrayBuilder();
+		out.write(QUERY_START);
+		boolean first = true;
+		for (OpenSearchQueryFilter filter : queryData.getMatchFields()) {
+			if (!first) {
+				out.write(',');
+			}
+			first = false;
+			out.write(MATCH_START);
+			writeString(out, filter.getKey());
+			out.write(':');
+			writeString(out, filter.getValue());
+			out.write('}');
+			out.write('}');
+		}
+		OpenSearchRangeQueryData range = queryData.getRangeData();
+		if (null != range) {
+			if (!first) {
+				out.write(',');
+			}
+			out.write(RANGE_START);
+			writeString(out, range.getRangeField());
+			out.write(RANGE_FROM);
+			writeString(out, range.getFrom());
+			out.write(range.isToExclusive() ? RANGE_TO_EXCLUSIVE : RANGE_TO_INCLUSIVE);
+			writeString(out, range.getTo());
+			out.write('}');
+			out.write('}');
+			out.write('}');
+		}
+		out.write(QUERY_END);
+		return out.toByteArray();
+	}
+
+	private static byte[] compileSort(OpenSearchSortFilter sortFilter) {
+		if (null == sortFilter) {
+			return null;
+		}
+		ByteArrayBuilder out = new ByteArrayBuilder();
+		out.write(SORT_START);
+		writeSortField(out, sortFilter.getSortField(), sortFilter.getSortOrder());
+		return out.toByteArray();
+	}
+
+	private static byte[] compileSource(OpenSearchSourceFilter sourceFilter) {
+		if (null == sourceFilter) {
+			return null;
+		}
+		boolean includes = null != sourceFilter.getIncludes() && !sourceFilter.getIncludes().isEmpty();
+		boolean excludes = null != sourceFilter.getExcludes() && !sourceFilter.getExcludes().isEmpty();
+		if (!includes && !excludes) {
+			return null;
+		}
+		ByteArrayBuilder out = new ByteArrayBuilder();
+		out.write(SOURCE_START);
+		if (includes) {
+			out.write(INCLUDES);
+			writeStrings(out, sourceFilter.getIncludes());
+		}
+		if (excludes) {
+			if (includes) {
+				out.write(',');
+			}
+			out.write(EXCLUDES);
+			writeStrings(out, sourceFilter.getExcludes());
+		}
+		out.write('}');
+		return out.toByteArray();
+	}
+
+	private static void writeSortField(ByteArrayBuilder out, String field, SortOrders order) {
+		out.write('{');
+		writeString(out, field);
+		out.write(ORDER);
+		writeString(out, order.toString());
+		out.write('}');
+		out.write('}');
+	}
+
+	private static void writeStrings(ByteArrayBuilder out, List<String> values) {
+		for (int index = 0; index < values.size(); index++) {
+			if (index > 0) {
+				out.write(',');
+			}
+			writeString(out, values.get(index));
+		}
+		out.write(']');
+	}
+
+	private static void writeValue(ByteArrayBuilder out, Object value) throws JsonProcessingException {
+		if (null == value) {
+			out.write(NULL);
+		} else if (value instanceof String) {
+			writeString(out, (String) value);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			writeAscii(out, value.toString());
+		} else {
+			out.write(MAPPER.writeValueAsBytes(value));
+		}
+	}
+
+	private static void writeString(ByteArrayBuilder out, String value) {
+		if (null == value) {
+			out.write(NULL);
+			return;
+		}
+		out.write('"');
+		out.write(ENCODER.quoteAsUTF8(value));
+		out.write('"');
+	}
+
+	private static void writeAscii(ByteArrayBuilder out, String value) {
+		for (int index = 0; index < value.length(); index++) {
+			out.write(value.charAt(index));
+		}
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -10,4 +10,9 @@ public class OpenSearchRangeQueryData {
 	private String rangeField;
 	private String from;
 	private String to;
+	private boolean toExclusive;
+
+	public OpenSearchRangeQueryData(String rangeField, String from, String to) {
+		this(rangeField, from, to, false);
+	}
 }
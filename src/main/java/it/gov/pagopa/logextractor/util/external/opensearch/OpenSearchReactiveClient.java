@@ -0,0 +1,261 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchResponseStreamParser.DocumentHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Non blocking Opensearch client shared by all the extractions of this instance. Requests are sent with the JDK
+ * HTTP client on a small fixed thread pool and the response bodies are parsed while they arrive by an
+ * {@link OpenSearchAsyncPageParser}. The chunks are parsed, and their documents handed to the output, on the writer
+ * of the extraction, see {@link #newWriter()}, so that a slow archive stream never holds the shared client threads.
+ * The next chunk of a body is requested only once the documents of the previous one have been written, so a slow
+ * archive stream slows down the read from the socket instead of buffering the page in memory, and no thread is
+ * held while waiting for Opensearch.
+ * <p>
+ * The JDK HTTP client has its own connections: the requests of this client do not go through the pooled, gzip
+ * enabled transport of <code>openSearchRestTemplate</code>, nor through {@link OpenSearchRetryPolicy}.
+ * */
+@Slf4j
+@Component
+public class OpenSearchReactiveClient {
+
+	private static final int ERROR_BODY_MAX_LENGTH = 500;
+
+	private final ExecutorService executor;
+	private final ExecutorService writerPool;
+	private final HttpClient httpClient;
+	private final Duration readTimeout;
+
+	public OpenSearchReactiveClient(@Value("${external.opensearch.reactive.threads:4}") int threads,
+			@Value("${external.opensearch.reactive.writer-threads:4}") int writerThreads,
+			@Value("${external.opensearch.http.connect-timeout-millis:5000}") long connectTimeoutMillis,
+			@Value("${external.opensearch.http.read-timeout-millis:120000}") long readTimeoutMillis) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, "opensearch-reactive-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger writerNumber = new AtomicInteger();
+		this.writerPool = Executors.newFixedThreadPool(Math.max(1, writerThreads), runnable -> {
+			Thread thread = new Thread(runnable, "opensearch-writer-" + writerNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.httpClient = HttpClient.newBuilder()
+				.executor(executor)
+				.connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+				.build();
+		this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+	}
+
+	/**
+	 * Creates the writer of an extraction, running its tasks one at a time and in order on the writer threads shared
+	 * by all the extractions
+	 * @return the writer
+	 * */
+	public Executor newWriter() {
+		return new OpenSearchSerialExecutor(writerPool);
+	}
+
+	/**
+	 * Sends a search or scroll request and parses the response page while it arrives
+	 * @param method the HTTP method
+	 * @param url the request url
+	 * @param username the basic authentication username
+	 * @param password the basic authentication password
+	 * @param body the request body
+	 * @param handler the callback receiving every document of the page
+	 * @param writer the executor of the extraction parsing the page and invoking the handler, one chunk at a time
+	 * @return the page read, completed on the writer, completed exceptionally if the request fails or the handler
+	 * throws
+	 * */
+	public CompletableFuture<OpenSearchResponsePage> send(String method, String url, String username,
+			String password, byte[] body, DocumentHandler handler, Executor writer) {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+				.timeout(readTimeout)
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+				.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+				.header(HttpHeaders.AUTHORIZATION, basicAuthorization(username, password))
+				.method(method, HttpRequest.BodyPublishers.ofByteArray(body))
+				.build();
+		BodyHandler<OpenSearchResponsePage> bodyHandler = responseInfo -> {
+			if (responseInfo.statusCode() >= 400) {
+				return BodySubscribers.mapping(BodySubscribers.ofString(StandardCharsets.UTF_8), errorBody -> {
+					throw new RestClientException("OpenSearch responded " + responseInfo.statusCode() + ": "
+							+ StringUtils.abbreviate(errorBody, ERROR_BODY_MAX_LENGTH));
+				});
+			}
+			return new PageSubscriber(handler, writer);
+		};
+		return httpClient.sendAsync(request, bodyHandler).thenApply(HttpResponse::body);
+	}
+
+	/**
+	 * Sends a request discarding the response, errors are only logged
+	 * @param method the HTTP method
+	 * @param url the request url
+	 * @param username the basic authentication username
+	 * @param password the basic authentication password
+	 * @param body the request body
+	 * @return the completion of the request
+	 * */
+	public CompletableFuture<Void> sendAndDiscard(String method, String url, String username, String password,
+			byte[] body) {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+				.timeout(readTimeout)
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+				.header(HttpHeaders.AUTHORIZATION, basicAuthorization(username, password))
+				.method(method, HttpRequest.BodyPublishers.ofByteArray(body))
+				.build();
+		return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+				.handle((response, error) -> {
+					if (error != null) {
+						log.warn("Error sending OpenSearch {} request to {}", method, url, error);
+					}
+					return null;
+				});
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+		writerPool.shutdownNow();
+	}
+
+	private static String basicAuthorization(String username, String password) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Body subscriber parsing the page on the writer with a demand of one chunk at a time
+	 * */
+	private static class PageSubscriber implements BodySubscriber<OpenSearchResponsePage> {
+
+		private final CompletableFuture<OpenSearchResponsePage> page = new CompletableFuture<>();
+		private final DocumentHandler handler;
+		private final Executor writer;
+		private OpenSearchAsyncPageParser pageParser;
+		private Flow.Subscription subscription;
+
+		PageSubscriber(DocumentHandler handler, Executor writer) {
+			this.handler = handler;
+			this.writer = writer;
+		}
+
+		@Override
+		public CompletionStage<OpenSearchResponsePage> getBody() {
+			return page;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			try {
+				pageParser = new OpenSearchAsyncPageParser(handler);
+			} catch (IOException e) {
+				subscription.cancel();
+				page.completeExceptionally(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			if (page.isDone()) {
+				return;
+			}
+			int length = 0;
+			for (ByteBuffer buffer : buffers) {
+				length += buffer.remaining();
+			}
+			byte[] chunk = new byte[length];
+			int offset = 0;
+			for (ByteBuffer buffer : buffers) {
+				int remaining = buffer.remaining();
+				buffer.get(chunk, offset, remaining);
+				offset += remaining;
+			}
+			runOnWriter(() -> feed(chunk));
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			runOnWriter(() -> page.completeExceptionally(throwable));
+		}
+
+		@Override
+		public void onComplete() {
+			runOnWriter(this::finish);
+		}
+
+		private void feed(byte[] chunk) {
+			if (page.isDone()) {
+				return;
+			}
+			try {
+				pageParser.feed(chunk, 0, chunk.length);
+			} catch (IOException | RuntimeException e) {
+				subscription.cancel();
+				page.completeExceptionally(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		private void finish() {
+			if (page.isDone()) {
+				return;
+			}
+			try {
+				page.complete(pageParser.finish());
+			} catch (IOException | RuntimeException e) {
+				page.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * Runs a step of the parsing on the writer, after the chunks already handed to it
+		 * */
+		private void runOnWriter(Runnable step) {
+			try {
+				writer.execute(step);
+			} catch (RejectedExecutionException e) {
+				subscription.cancel();
+				page.completeExceptionally(e);
+			}
+		}
+	}
+}
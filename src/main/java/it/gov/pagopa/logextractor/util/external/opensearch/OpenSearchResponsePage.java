@@ -0,0 +1,22 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Class which represents the outcome of a single Opensearch response page read in streaming mode
+ * */
+@Getter
+@AllArgsConstructor
+public class OpenSearchResponsePage {
+
+	private String scrollId;
+	private String pitId;
+	private int documentCount;
+	private List<Object> lastSortValues;
+	private long documentBytes;
+	/** The time spent by the document handler, that is writing the documents of the page to the output */
+	private long outputNanos;
+}
@@ -0,0 +1,274 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+/**
+ * Streaming reader for Opensearch search, scroll and multi search responses. The response body is consumed
+ * token by token: every <code>_source</code> object is copied into a reusable buffer and handed to a {@link DocumentHandler}
+ * together with the hit <code>sort</code> values, while the <code>_scroll_id</code> or <code>pit_id</code> is captured
+ * in the same pass.
+ * The page is never materialized as a String or tree.
+ * Instances are not thread safe, use one parser per extraction.
+ * */
+public class OpenSearchResponseStreamParser {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final DocumentBuffer documentBuffer = new DocumentBuffer();
+	private List<Object> lastSortValues;
+	private long documentBytes;
+	private long outputNanos;
+
+	/**
+	 * Callback receiving every document found in the response page
+	 * */
+	@FunctionalInterface
+	public interface DocumentHandler {
+
+		/**
+		 * Handles a single document
+		 * @param document the buffer containing the UTF-8 encoded <code>_source</code> object
+		 * @param length the number of valid bytes in the buffer
+		 * @param sortValues the hit sort values, empty if the query is not sorted
+		 * @throws IOException in case of an IO error while consuming the document
+		 */
+		void handle(byte[] document, int length, List<Object> sortValues) throws IOException;
+	}
+
+	/**
+	 * Callback receiving every document found in the responses of a multi search
+	 * */
+	@FunctionalInterface
+	public interface MultiSearchDocumentHandler {
+
+		/**
+		 * Handles a single document
+		 * @param response the index of the response containing the document, in the order of the queries
+		 * @param document the buffer containing the UTF-8 encoded <code>_source</code> object
+		 * @param length the number of valid bytes in the buffer
+		 * @param sortValues the hit sort values, empty if the query is not sorted
+		 * @throws IOException in case of an IO error while consuming the document
+		 */
+		void handle(int response, byte[] document, int length, List<Object> sortValues) throws IOException;
+	}
+
+	/**
+	 * Reads an Opensearch response page from the input stream
+	 * @param responseBody the response body stream
+	 * @param handler the callback receiving every <code>_source</code> document of the page
+	 * @return an {@link OpenSearchResponsePage} with the scroll or point in time id, the number and size of the
+	 * documents read and the sort values of the last hit
+	 * @throws IOException in case of an IO error while reading the response or handling a document
+	 * */
+	public OpenSearchResponsePage parse(InputStream responseBody, DocumentHandler handler) throws IOException {
+		lastSortValues = Collections.emptyList();
+		documentBytes = 0;
+		outputNanos = 0;
+		if (responseBody == null) {
+			return new OpenSearchResponsePage(null, null, 0, lastSortValues, 0, 0);
+		}
+		try (JsonParser parser = JSON_FACTORY.createParser(responseBody);
+				JsonGenerator generator = JSON_FACTORY.createGenerator(documentBuffer, JsonEncoding.UTF8)) {
+			generator.setRootValueSeparator(null);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return new OpenSearchResponsePage(null, null, 0, lastSortValues, 0, 0);
+			}
+			return readResponse(parser, generator, handler);
+		}
+	}
+
+	/**
+	 * Reads an Opensearch multi search response from the input stream
+	 * @param responseBody the response body stream
+	 * @param handler the callback receiving every <code>_source</code> document of every response
+	 * @return an {@link OpenSearchResponsePage} for every response, in the order of the queries
+	 * @throws IOException in case of an IO error while reading the response or handling a document, or if one of
+	 * the queries failed
+	 * */
+	public List<OpenSearchResponsePage> parseMultiSearch(InputStream responseBody, MultiSearchDocumentHandler handler)
+			throws IOException {
+		List<OpenSearchResponsePage> pages = new ArrayList<>();
+		if (responseBody == null) {
+			return pages;
+		}
+		try (JsonParser parser = JSON_FACTORY.createParser(responseBody);
+				JsonGenerator generator = JSON_FACTORY.createGenerator(documentBuffer, JsonEncoding.UTF8)) {
+			generator.setRootValueSeparator(null);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return pages;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.getCurrentName();
+				JsonToken valueToken = parser.nextToken();
+				if (OpensearchConstants.OS_RESPONSE_RESPONSES_FIELD.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						int response = pages.size();
+						lastSortValues = Collections.emptyList();
+						documentBytes = 0;
+						outputNanos = 0;
+						pages.add(readResponse(parser, generator,
+								(document, length, sortValues) -> handler.handle(response, document, length, sortValues)));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		return pages;
+	}
+
+	private OpenSearchResponsePage readResponse(JsonParser parser, JsonGenerator generator, DocumentHandler handler)
+			throws IOException {
+		String scrollId = null;
+		String pitId = null;
+		int documentCount = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken valueToken = parser.nextToken();
+			if (OpensearchConstants.OS_RESPONSE_SCROLL_ID_FIELD.equals(fieldName)) {
+				scrollId = parser.getValueAsString();
+			} else if (OpensearchConstants.OS_PIT_ID_FIELD.equals(fieldName)) {
+				pitId = parser.getValueAsString();
+			} else if (OpensearchConstants.OS_RESPONSE_HITS_FIELD.equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+				documentCount += readHitsObject(parser, generator, handler);
+			} else if (OpensearchConstants.OS_RESPONSE_ERROR_FIELD.equals(fieldName)) {
+				String error = valueToken.isScalarValue() ? parser.getValueAsString() : null;
+				parser.skipChildren();
+				throw new IOException("OpenSearch query failed" + (error != null ? ": " + error : ""));
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return new OpenSearchResponsePage(scrollId, pitId, documentCount, lastSortValues, documentBytes, outputNanos);
+	}
+
+	private int readHitsObject(JsonParser parser, JsonGenerator generator, DocumentHandler handler) throws IOException {
+		int documentCount = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken valueToken = parser.nextToken();
+			if (OpensearchConstants.OS_RESPONSE_HITS_FIELD.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					if (readHit(parser, generator, handler)) {
+						documentCount++;
+					}
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return documentCount;
+	}
+
+	private boolean readHit(JsonParser parser, JsonGenerator generator, DocumentHandler handler) throws IOException {
+		boolean found = false;
+		List<Object> sortValues = Collections.emptyList();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken valueToken = parser.nextToken();
+			if (OpensearchConstants.OS_RESPONSE_SOURCE_FIELD.equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+				documentBuffer.reset();
+				copyStructure(parser, generator);
+				generator.flush();
+				found = true;
+			} else if (OpensearchConstants.OS_RESPONSE_SORT_FIELD.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+				sortValues = readSortValues(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		if (found) {
+			lastSortValues = sortValues;
+			documentBytes += documentBuffer.size();
+			long handleStart = System.nanoTime();
+			try {
+				handler.handle(documentBuffer.getBuffer(), documentBuffer.size(), sortValues);
+			} finally {
+				outputNanos += System.nanoTime() - handleStart;
+			}
+		}
+		return found;
+	}
+
+	private List<Object> readSortValues(JsonParser parser) throws IOException {
+		List<Object> sortValues = new ArrayList<>(2);
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+			if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+				sortValues.add(parser.getNumberValue());
+			} else if (token == JsonToken.VALUE_NULL) {
+				sortValues.add(null);
+			} else if (token.isScalarValue()) {
+				sortValues.add(parser.getText());
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return sortValues;
+	}
+
+	/**
+	 * Copies the structure starting at the current token, keeping numbers in their original textual form
+	 * */
+	private void copyStructure(JsonParser parser, JsonGenerator generator) throws IOException {
+		int depth = 0;
+		do {
+			JsonToken token = parser.currentToken();
+			switch (token) {
+			case START_OBJECT:
+				generator.writeStartObject();
+				depth++;
+				break;
+			case END_OBJECT:
+				generator.writeEndObject();
+				depth--;
+				break;
+			case START_ARRAY:
+				generator.writeStartArray();
+				depth++;
+				break;
+			case END_ARRAY:
+				generator.writeEndArray();
+				depth--;
+				break;
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				generator.writeNumber(parser.getText());
+				break;
+			case VALUE_STRING:
+				generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+				break;
+			default:
+				generator.copyCurrentEvent(parser);
+				break;
+			}
+		} while (depth > 0 && parser.nextToken() != null);
+	}
+
+	/**
+	 * Byte buffer giving access to its backing array, so that documents can be written out without copies
+	 * */
+	static class DocumentBuffer extends ByteArrayOutputStream {
+
+		DocumentBuffer() {
+			super(8192);
+		}
+
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
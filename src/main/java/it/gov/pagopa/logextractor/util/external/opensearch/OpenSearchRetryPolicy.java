@@ -0,0 +1,155 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries the Opensearch requests failing with a transient error, waiting an exponential backoff with full jitter
+ * between the attempts. Throttling (429), unavailable gateways and nodes (502, 503, 504) and IO errors such as
+ * socket timeouts are transient, every other error is fatal and thrown at once.
+ * <p>
+ * A request is retried only if doing so cannot write a document twice or skip one, according to its
+ * {@link Replay} mode and to the documents of the failed attempt already handed to the output by its
+ * {@link OpenSearchPageGuard}.
+ * <p>
+ * A scroll follow-up moves the scroll cursor, so it is retried only when Opensearch rejected it (429, 503) or
+ * never received it (connection refused, unknown host, no route). A socket timeout, a 502 or a 504 on a scroll
+ * page fails the extraction, since the cursor may already have moved past the page. Only the point in time
+ * extraction, whose pages are sorted search after requests, retries those errors. The reactive extraction of
+ * {@link OpenSearchReactiveClient} does not go through this policy and never retries.
+ * */
+@Slf4j
+public class OpenSearchRetryPolicy {
+
+	/**
+	 * Policy sending every request once
+	 * */
+	public static final OpenSearchRetryPolicy NO_RETRY = new OpenSearchRetryPolicy(1, 0, 0);
+
+	/**
+	 * What Opensearch returns when a request is sent again
+	 * */
+	public enum Replay {
+		/** The request moves a cursor, as a scroll: it is sent again only if Opensearch did not execute it */
+		NONE,
+		/** The request can be sent again, but its documents may come in a different order */
+		REQUEST,
+		/** The request returns the same page in the same order, as a sorted search after with a tiebreaker */
+		PAGE
+	}
+
+	/**
+	 * Waits between the attempts
+	 * */
+	@FunctionalInterface
+	interface Sleeper {
+		void sleep(long millis) throws InterruptedException;
+	}
+
+	private final int maxAttempts;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+	private final Sleeper sleeper;
+	private final LongUnaryOperator jitter;
+
+	/**
+	 * @param maxAttempts The maximum number of attempts of a request, 1 to disable the retries
+	 * @param initialBackoffMillis The backoff before the second attempt, doubled at every following attempt
+	 * @param maxBackoffMillis The maximum backoff
+	 * */
+	public OpenSearchRetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+		this(maxAttempts, initialBackoffMillis, maxBackoffMillis, Thread::sleep,
+				bound -> ThreadLocalRandom.current().nextLong(bound + 1));
+	}
+
+	OpenSearchRetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, Sleeper sleeper,
+			LongUnaryOperator jitter) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+		this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+		this.sleeper = sleeper;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sends a request, retrying it while it fails with a transient error
+	 * @param operation The name of the request, for the logs
+	 * @param replay What Opensearch returns when the request is sent again
+	 * @param guard The guard of the documents written while the response is read, null if the response is not
+	 * written to the output while it is read
+	 * @param request The request
+	 * @return The value returned by the request
+	 * */
+	public <T> T execute(String operation, Replay replay, OpenSearchPageGuard guard, Supplier<T> request) {
+		if (guard != null) {
+			guard.startPage();
+		}
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return request.get();
+			} catch (RuntimeException e) {
+				if (attempt >= maxAttempts || !isRetryable(e, replay, guard)) {
+					throw e;
+				}
+				long backoff = getBackoffMillis(attempt);
+				log.warn("OpenSearch {} failed on attempt {} of {}, retrying in {} ms: {}", operation, attempt,
+						maxAttempts, backoff, e.getMessage());
+				try {
+					sleeper.sleep(backoff);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+				if (guard != null) {
+					guard.restartPage();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param error The error of an attempt
+	 * @param replay What Opensearch returns when the request is sent again
+	 * @param guard The guard of the documents written by the attempt, if any
+	 * @return true if the request can be sent again
+	 * */
+	boolean isRetryable(RuntimeException error, Replay replay, OpenSearchPageGuard guard) {
+		boolean partiallyWritten = guard != null && guard.getDelivered() > 0;
+		if (partiallyWritten && replay != Replay.PAGE) {
+			return false;
+		}
+		if (error instanceof HttpStatusCodeException) {
+			HttpStatus status = HttpStatus.resolve(((HttpStatusCodeException) error).getRawStatusCode());
+			if (status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.SERVICE_UNAVAILABLE) {
+				return true;
+			}
+			return replay != Replay.NONE && (status == HttpStatus.BAD_GATEWAY || status == HttpStatus.GATEWAY_TIMEOUT);
+		}
+		if (error instanceof ResourceAccessException) {
+			Throwable cause = error.getCause();
+			boolean notSent = cause instanceof ConnectException || cause instanceof UnknownHostException
+					|| cause instanceof NoRouteToHostException;
+			return notSent || replay != Replay.NONE;
+		}
+		return false;
+	}
+
+	/**
+	 * @param attempt The number of the failed attempt, starting from 1
+	 * @return The wait before the next attempt, a random value up to the exponential backoff
+	 * */
+	long getBackoffMillis(int attempt) {
+		long backoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+		return jitter.applyAsLong(Math.min(maxBackoffMillis, backoff));
+	}
+}
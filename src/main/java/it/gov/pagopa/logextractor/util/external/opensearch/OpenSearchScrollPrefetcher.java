@@ -0,0 +1,132 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.web.client.ResponseExtractor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Double buffered scroll reader: a producer thread reads and parses the next scroll pages while the calling
+ * thread writes the current one, so that the Opensearch round trip overlaps with the output stream writes.
+ * At most <code>prefetchPages</code> parsed pages are kept in memory, besides the one being read. The page buffers
+ * start small, grow with the documents and are reused once written, so their size follows the real documents.
+ * */
+@Slf4j
+public class OpenSearchScrollPrefetcher {
+
+	private static final OpenSearchDocumentBuffer END_OF_SCROLL = new OpenSearchDocumentBuffer();
+
+	private final OpenSearchApiHandler handler;
+	private final OpenSearchContextLease lease;
+	private final int prefetchPages;
+
+	/**
+	 * Callback receiving every document of the prefetched pages, from the calling thread
+	 * */
+	@FunctionalInterface
+	public interface PageDocumentHandler {
+
+		/**
+		 * Handles a single document
+		 * @param page the buffer containing the UTF-8 encoded documents of the page
+		 * @param offset the offset of the document in the buffer
+		 * @param length the length of the document
+		 * @throws IOException in case of an IO error while consuming the document
+		 */
+		void handle(byte[] page, int offset, int length) throws IOException;
+	}
+
+	public OpenSearchScrollPrefetcher(OpenSearchApiHandler handler, OpenSearchContextLease lease, int prefetchPages) {
+		this.handler = handler;
+		this.lease = lease;
+		this.prefetchPages = Math.max(1, prefetchPages);
+	}
+
+	/**
+	 * Scrolls the results of the input query, handing the documents to the output in order
+	 * @param query the search query to be sent
+	 * @param output the callback receiving the documents
+	 * @param pageWritten the callback invoked after every page has been handed to the output
+	 * @return the number of documents handed to the output
+	 * @throws IOException in case of an IO error while handing a document to the output
+	 * */
+	public int extract(byte[] query, PageDocumentHandler output, Runnable pageWritten) throws IOException {
+		BlockingQueue<OpenSearchDocumentBuffer> queue = new ArrayBlockingQueue<>(prefetchPages);
+		BlockingQueue<OpenSearchDocumentBuffer> freePages = new ArrayBlockingQueue<>(prefetchPages + 1);
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.execute(() -> scroll(query, queue, freePages, failure));
+			int counter = 0;
+			OpenSearchDocumentBuffer page;
+			while ((page = take(queue)) != END_OF_SCROLL) {
+				counter += page.writeTo(output::handle);
+				page.clear();
+				freePages.offer(page);
+				pageWritten.run();
+			}
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+			return counter;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void scroll(byte[] query, BlockingQueue<OpenSearchDocumentBuffer> queue,
+			BlockingQueue<OpenSearchDocumentBuffer> freePages, AtomicReference<RuntimeException> failure) {
+		OpenSearchDocumentBuffer[] current = new OpenSearchDocumentBuffer[1];
+		OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+		ResponseExtractor<OpenSearchResponsePage> pageExtractor = response -> {
+			if (current[0] == null) {
+				OpenSearchDocumentBuffer free = freePages.poll();
+				current[0] = free != null ? free : new OpenSearchDocumentBuffer();
+			} else {
+				current[0].clear();
+			}
+			return parser.parse(response.getBody(), (document, length, sortValues) -> current[0].append(document, length));
+		};
+		try {
+			OpenSearchResponsePage page = handler.executeSearch(query, pageExtractor);
+			String scrollId = null;
+			while (page != null && page.getDocumentCount() > 0) {
+				lease.trackScroll(scrollId, page.getScrollId());
+				scrollId = page.getScrollId();
+				queue.put(current[0]);
+				current[0] = null;
+				if (page.getDocumentCount() < handler.getPageSize()) {
+					break;
+				}
+				page = handler.executeScroll(scrollId, pageExtractor);
+			}
+			lease.finishScroll(scrollId);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			log.error("Error prefetching OpenSearch scroll page", e);
+			failure.compareAndSet(null, e);
+		} finally {
+			try {
+				queue.put(END_OF_SCROLL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static OpenSearchDocumentBuffer take(BlockingQueue<OpenSearchDocumentBuffer> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the next OpenSearch page", e);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executor running the tasks of a single extraction one at a time and in order on a pool shared by all the
+ * extractions. No thread is held by the extraction between its tasks, so the pool bounds the threads writing to the
+ * archive streams whatever the number of running extractions
+ * */
+@Slf4j
+class OpenSearchSerialExecutor implements Executor {
+
+	private final Executor pool;
+	private final Queue<Runnable> tasks = new ArrayDeque<>();
+	private boolean running;
+
+	/**
+	 * @param pool the pool shared by the extractions
+	 * */
+	OpenSearchSerialExecutor(Executor pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (tasks) {
+			tasks.add(task);
+			if (running) {
+				return;
+			}
+			running = true;
+		}
+		try {
+			pool.execute(this::drain);
+		} catch (RejectedExecutionException e) {
+			synchronized (tasks) {
+				tasks.clear();
+				running = false;
+			}
+			throw e;
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			Runnable task;
+			synchronized (tasks) {
+				task = tasks.poll();
+				if (task == null) {
+					running = false;
+					return;
+				}
+			}
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				log.error("Error running an OpenSearch extraction task", e);
+			}
+		}
+	}
+}
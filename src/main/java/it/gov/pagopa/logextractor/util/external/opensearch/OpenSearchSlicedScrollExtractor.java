@@ -0,0 +1,293 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.web.client.ResponseExtractor;
+
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchDocumentBuffer.DocumentWriter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Parallel extraction engine based on the Opensearch sliced scroll. Every slice is scrolled by a thread of the shared
+ * slice executor and its pages are handed over through a bounded queue, the slices are then merged with a k-way merge
+ * on the first sort value (the timestamp) so that the documents are handed to the output in the same ascending order
+ * of a single scroll. Every document is handed to the output exactly once, from the calling thread. The pages are
+ * recycled once merged, so a slice reuses the same few buffers for the whole scroll. The scroll of a slice is cleared
+ * as soon as the slice is read, and its reserved room is given back.
+ * */
+@Slf4j
+public class OpenSearchSlicedScrollExtractor {
+
+	private static final int SLICE_QUEUE_PAGES = 2;
+	private static final SlicePage END_OF_SLICE = new SlicePage();
+	private static final Comparator<SliceCursor> CURSOR_ORDER = Comparator.comparingLong(SliceCursor::sortKey)
+			.thenComparingInt(cursor -> cursor.slice);
+
+	private final OpenSearchApiHandler handler;
+	private final OpenSearchContextLease lease;
+	private final AsyncTaskExecutor executor;
+	private final AtomicInteger remainingSlices = new AtomicInteger();
+
+	public OpenSearchSlicedScrollExtractor(OpenSearchApiHandler handler, OpenSearchContextLease lease,
+			AsyncTaskExecutor executor) {
+		this.handler = handler;
+		this.lease = lease;
+		this.executor = executor;
+	}
+
+	/**
+	 * Scrolls all the slices concurrently and merges them in ascending sort order
+	 * @param sliceQueries the queries to be sent, one for each slice
+	 * @param output the destination of the merged documents
+	 * @return the number of documents handed to the output
+	 * @throws IOException in case of an IO error while handing a document to the output, of a failed slice or if
+	 * the slice executor has no room for the slices
+	 * */
+	public int extract(List<byte[]> sliceQueries, DocumentWriter output) throws IOException {
+		int slices = sliceQueries.size();
+		List<SliceScroll> scrolls = new ArrayList<>(slices);
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		remainingSlices.set(slices);
+		try {
+			for (int slice = 0; slice < slices; slice++) {
+				SliceScroll scroll = new SliceScroll(sliceQueries.get(slice), failure);
+				scrolls.add(scroll);
+				executor.execute(scroll);
+			}
+			return merge(scrolls, failure, output);
+		} catch (TaskRejectedException e) {
+			throw new IOException("No OpenSearch slice thread available", e);
+		} finally {
+			for (SliceScroll scroll : scrolls) {
+				scroll.stop();
+			}
+			for (SliceScroll scroll : scrolls) {
+				scroll.awaitStopped();
+			}
+		}
+	}
+
+	private int merge(List<SliceScroll> scrolls, AtomicReference<RuntimeException> failure, DocumentWriter output)
+			throws IOException {
+		PriorityQueue<SliceCursor> heads = new PriorityQueue<>(scrolls.size(), CURSOR_ORDER);
+		for (int slice = 0; slice < scrolls.size(); slice++) {
+			SliceCursor cursor = new SliceCursor(slice);
+			if (nextPage(cursor, scrolls.get(slice), failure)) {
+				heads.add(cursor);
+			}
+		}
+		int counter = 0;
+		while (!heads.isEmpty()) {
+			SliceCursor current = heads.poll();
+			OpenSearchDocumentBuffer documents = current.page.documents;
+			output.write(documents.getBytes(), documents.getStart(current.document),
+					documents.getEnd(current.document) - documents.getStart(current.document));
+			counter++;
+			if (++current.document < documents.getDocumentCount()
+					|| nextPage(current, scrolls.get(current.slice), failure)) {
+				heads.add(current);
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Moves the cursor to the next page of its slice, giving the merged page back to the slice
+	 * @return false if the slice has no more pages
+	 * */
+	private static boolean nextPage(SliceCursor cursor, SliceScroll scroll, AtomicReference<RuntimeException> failure)
+			throws IOException {
+		if (cursor.page != null) {
+			scroll.recycle(cursor.page);
+			cursor.page = null;
+		}
+		SlicePage next;
+		try {
+			next = scroll.pages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while merging OpenSearch slices");
+		}
+		if (next == END_OF_SLICE) {
+			if (failure.get() != null) {
+				throw new IOException("Error scrolling OpenSearch slice", failure.get());
+			}
+			log.debug("OpenSearch slice {} completed", cursor.slice);
+			return false;
+		}
+		cursor.page = next;
+		cursor.document = 0;
+		return true;
+	}
+
+	/**
+	 * The scroll of a single slice, handing every page read to the merge. A stopped scroll is waited for before the
+	 * extraction returns, so that every scroll it opened is tracked by the lease when the lease is closed
+	 * */
+	private class SliceScroll implements Runnable {
+
+		private final byte[] query;
+		private final AtomicReference<RuntimeException> failure;
+		private final BlockingQueue<SlicePage> pages = new ArrayBlockingQueue<>(SLICE_QUEUE_PAGES);
+		private final BlockingQueue<SlicePage> freePages = new ArrayBlockingQueue<>(SLICE_QUEUE_PAGES + 2);
+		private SlicePage page;
+		private Thread thread;
+		private boolean stopped;
+
+		SliceScroll(byte[] query, AtomicReference<RuntimeException> failure) {
+			this.query = query;
+			this.failure = failure;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (stopped) {
+					return;
+				}
+				thread = Thread.currentThread();
+			}
+			try {
+				scroll();
+			} finally {
+				synchronized (this) {
+					thread = null;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Stops the scroll, interrupting it if it is running
+		 * */
+		synchronized void stop() {
+			stopped = true;
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+
+		/**
+		 * Waits for a stopped scroll to return
+		 * */
+		synchronized void awaitStopped() {
+			boolean interrupted = false;
+			while (thread != null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void scroll() {
+			OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+			OpenSearchPageGuard guard = new OpenSearchPageGuard((document, length, sortValues) -> page.add(document,
+					length, sortValues));
+			ResponseExtractor<OpenSearchResponsePage> pageExtractor = response -> parser.parse(response.getBody(), guard);
+			String scrollId = null;
+			try {
+				page = newPage();
+				OpenSearchResponsePage response = handler.executeSearch(query, pageExtractor, guard);
+				while (response != null && response.getDocumentCount() > 0) {
+					lease.trackScroll(scrollId, response.getScrollId());
+					scrollId = response.getScrollId();
+					publish();
+					if (response.getDocumentCount() < handler.getPageSize()) {
+						break;
+					}
+					response = handler.executeScroll(scrollId, pageExtractor, guard);
+				}
+				lease.finishScroll(scrollId);
+				lease.retainPermits(remainingSlices.decrementAndGet());
+			} catch (RuntimeException e) {
+				if (!Thread.currentThread().isInterrupted()) {
+					log.error("Error scrolling OpenSearch slice", e);
+					failure.compareAndSet(null, e);
+				}
+			} finally {
+				try {
+					pages.put(END_OF_SLICE);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private void publish() {
+			try {
+				pages.put(page);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UncheckedIOException(new InterruptedIOException("OpenSearch slice scroll interrupted"));
+			}
+			page = newPage();
+		}
+
+		private SlicePage newPage() {
+			SlicePage free = freePages.poll();
+			return free != null ? free : new SlicePage();
+		}
+
+		void recycle(SlicePage merged) {
+			merged.clear();
+			freePages.offer(merged);
+		}
+	}
+
+	/**
+	 * The documents of an Opensearch page of a slice, with the first sort value of each of them
+	 * */
+	private static class SlicePage {
+		private final OpenSearchDocumentBuffer documents = new OpenSearchDocumentBuffer();
+		private long[] sortKeys = new long[64];
+
+		void add(byte[] document, int length, List<Object> sortValues) {
+			int index = documents.getDocumentCount();
+			if (index == sortKeys.length) {
+				sortKeys = Arrays.copyOf(sortKeys, sortKeys.length * 2);
+			}
+			sortKeys[index] = !sortValues.isEmpty() && sortValues.get(0) instanceof Number
+					? ((Number) sortValues.get(0)).longValue() : Long.MIN_VALUE;
+			documents.append(document, length);
+		}
+
+		void clear() {
+			documents.clear();
+		}
+	}
+
+	/**
+	 * The position of the merge in a slice
+	 * */
+	private static class SliceCursor {
+		private final int slice;
+		private SlicePage page;
+		private int document;
+
+		SliceCursor(int slice) {
+			this.slice = slice;
+		}
+
+		long sortKey() {
+			return page.sortKeys[document];
+		}
+	}
+}
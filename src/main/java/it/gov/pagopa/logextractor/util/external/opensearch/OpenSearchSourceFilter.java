@@ -0,0 +1,16 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Class which contains the <code>_source</code> fields to be included in or excluded from the query results
+ * */
+@Getter
+@AllArgsConstructor
+public class OpenSearchSourceFilter {
+	private List<String> includes;
+	private List<String> excludes;
+}
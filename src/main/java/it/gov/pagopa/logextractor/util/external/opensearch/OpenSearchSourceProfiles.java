@@ -0,0 +1,75 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import it.gov.pagopa.logextractor.exception.CustomException;
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+import it.gov.pagopa.logextractor.util.constant.ResponseConstants;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Configured <code>_source</code> projection profiles. A profile is selected by name on the single request or,
+ * when the request does not select any, by the default configured for the extraction use case.
+ * The fields read by the deanonymization and by the SAML collection are always kept.
+ * */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "external.opensearch.source")
+public class OpenSearchSourceProfiles {
+
+	public static final String PERSON_USE_CASE = "person";
+	public static final String NOTIFICATION_USE_CASE = "notification";
+	public static final String TRACE_USE_CASE = "trace";
+	public static final String SESSION_USE_CASE = "session";
+
+	private static final List<String> REQUIRED_FIELDS = Arrays.asList(OpensearchConstants.OS_TIMESTAMP_FIELD,
+			OpensearchConstants.OS_UID_FIELD, OpensearchConstants.OS_CX_ID_FIELD, OpensearchConstants.OS_CX_TYPE_FIELD,
+			OpensearchConstants.OS_JTI_FIELD);
+
+	private Map<String, Profile> profiles = new HashMap<>();
+	private Map<String, String> useCases = new HashMap<>();
+
+	@Getter
+	@Setter
+	public static class Profile {
+		private List<String> includes = new ArrayList<>();
+		private List<String> excludes = new ArrayList<>();
+	}
+
+	/**
+	 * Resolves the source filter of an extraction
+	 * @param useCase the extraction use case
+	 * @param requestedProfile the profile selected on the request, if any
+	 * @return the source filter, null to read the whole <code>_source</code>
+	 * @throws CustomException if the requested profile is not configured
+	 * */
+	public OpenSearchSourceFilter resolve(String useCase, String requestedProfile) {
+		String profileName = StringUtils.isNotBlank(requestedProfile) ? requestedProfile : useCases.get(useCase);
+		if (StringUtils.isBlank(profileName)) {
+			return null;
+		}
+		Profile profile = profiles.get(profileName);
+		if (profile == null) {
+			throw new CustomException(ResponseConstants.UNKNOWN_SOURCE_PROFILE_MESSAGE + profileName, 400);
+		}
+		Set<String> includes = new LinkedHashSet<>(profile.getIncludes());
+		if (!includes.isEmpty()) {
+			includes.addAll(REQUIRED_FIELDS);
+		}
+		List<String> excludes = new ArrayList<>(profile.getExcludes());
+		excludes.removeAll(REQUIRED_FIELDS);
+		return new OpenSearchSourceFilter(new ArrayList<>(includes), excludes);
+	}
+}
@@ -0,0 +1,134 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+/**
+ * Summary of an extraction computed by Opensearch with a date histogram aggregation split by service and level,
+ * instead of reading the documents. The aggregation response is rewritten as a compact JSON object:
+ * <pre>
+ * {"from":..,"to":..,"interval":"1d","total":3,"buckets":[{"date":..,"count":3,"levels":{"ERROR":1,"INFO":2},
+ *   "services":[{"service":"pn-delivery","count":3,"levels":{"ERROR":1,"INFO":2}}],"otherServices":0}]}
+ * </pre>
+ * */
+public class OpenSearchSummary {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String INTERVAL_AGGREGATION = "per_interval";
+	private static final String SERVICE_AGGREGATION = "per_service";
+	private static final String LEVEL_AGGREGATION = "per_level";
+	private static final int MAX_LEVELS = 20;
+
+	private final String interval;
+	private final byte[] aggregations;
+
+	/**
+	 * @param serviceField The field holding the name of the service that wrote the log
+	 * @param levelField The field holding the log level
+	 * @param interval The calendar interval of the date histogram, e.g. 1h or 1d
+	 * @param maxServices The maximum number of services listed for every interval
+	 * */
+	public OpenSearchSummary(String serviceField, String levelField, String interval, int maxServices) {
+		this.interval = interval;
+		ObjectNode levels = MAPPER.createObjectNode();
+		levels.putObject("terms").put("field", levelField).put("size", MAX_LEVELS);
+		ObjectNode services = MAPPER.createObjectNode();
+		services.putObject("terms").put("field", serviceField).put("size", Math.max(1, maxServices));
+		services.putObject("aggs").set(LEVEL_AGGREGATION, levels);
+		ObjectNode histogram = MAPPER.createObjectNode();
+		histogram.putObject("date_histogram").put("field", OpensearchConstants.OS_TIMESTAMP_FIELD)
+				.put("calendar_interval", interval).put("min_doc_count", 1);
+		histogram.putObject("aggs").set(SERVICE_AGGREGATION, services);
+		ObjectNode root = MAPPER.createObjectNode();
+		root.set(INTERVAL_AGGREGATION, histogram);
+		try {
+			this.aggregations = MAPPER.writeValueAsBytes(root);
+		} catch (IOException e) {
+			throw new IllegalStateException("Invalid OpenSearch summary aggregation", e);
+		}
+	}
+
+	/**
+	 * @return the UTF-8 encoded <code>aggs</code> object of the summary query
+	 * */
+	public byte[] getAggregations() {
+		return aggregations.clone();
+	}
+
+	/**
+	 * Rewrites the response of the summary query as the compact summary
+	 * @param response The summary query response body
+	 * @param range The range of the extraction, if any
+	 * @param out The stream where to write the summary, it is not closed
+	 * @return The total number of documents matching the query
+	 * @throws IOException in case of an IO error while reading the response or writing the summary
+	 * */
+	public long write(InputStream response, OpenSearchRangeQueryData range, OutputStream out) throws IOException {
+		JsonNode root = MAPPER.readTree(response);
+		JsonNode total = root.path(OpensearchConstants.OS_RESPONSE_HITS_FIELD).path("total");
+		long totalCount = total.isObject() ? total.path("value").asLong() : total.asLong();
+		try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			if (range != null) {
+				generator.writeStringField("from", range.getFrom());
+				generator.writeStringField("to", range.getTo());
+			}
+			generator.writeStringField("interval", interval);
+			generator.writeNumberField("total", totalCount);
+			generator.writeArrayFieldStart("buckets");
+			for (JsonNode bucket : root.path("aggregations").path(INTERVAL_AGGREGATION).path("buckets")) {
+				writeIntervalBucket(bucket, generator);
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		return totalCount;
+	}
+
+	private static void writeIntervalBucket(JsonNode bucket, JsonGenerator generator) throws IOException {
+		JsonNode services = bucket.path(SERVICE_AGGREGATION);
+		Map<String, Long> intervalLevels = new TreeMap<>();
+		for (JsonNode service : services.path("buckets")) {
+			for (JsonNode level : service.path(LEVEL_AGGREGATION).path("buckets")) {
+				intervalLevels.merge(level.path("key").asText(), level.path("doc_count").asLong(), Long::sum);
+			}
+		}
+		generator.writeStartObject();
+		generator.writeStringField("date", bucket.path("key_as_string").asText(bucket.path("key").asText()));
+		generator.writeNumberField("count", bucket.path("doc_count").asLong());
+		generator.writeObjectFieldStart("levels");
+		for (Map.Entry<String, Long> level : intervalLevels.entrySet()) {
+			generator.writeNumberField(level.getKey(), level.getValue());
+		}
+		generator.writeEndObject();
+		generator.writeArrayFieldStart("services");
+		for (JsonNode service : services.path("buckets")) {
+			generator.writeStartObject();
+			generator.writeStringField("service", service.path("key").asText());
+			generator.writeNumberField("count", service.path("doc_count").asLong());
+			generator.writeObjectFieldStart("levels");
+			Iterator<JsonNode> levels = service.path(LEVEL_AGGREGATION).path("buckets").elements();
+			while (levels.hasNext()) {
+				JsonNode level = levels.next();
+				generator.writeNumberField(level.path("key").asText(), level.path("doc_count").asLong());
+			}
+			generator.writeEndObject();
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+		generator.writeNumberField("otherServices", services.path("sum_other_doc_count").asLong());
+		generator.writeEndObject();
+	}
+}
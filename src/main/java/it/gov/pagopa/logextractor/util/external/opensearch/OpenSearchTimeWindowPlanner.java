@@ -0,0 +1,101 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits the range of a query into consecutive time windows, so that every window holds at most a given number of
+ * documents. The density of every window is probed with a count request: windows denser than the limit are split
+ * in two halves until they fit or reach the minimum duration, empty windows are dropped.
+ * The windows partition the original range exactly: every window but the last one has an exclusive upper bound,
+ * the first one keeps the original lower bound and the last one the original inclusive upper bound.
+ * */
+@Slf4j
+public class OpenSearchTimeWindowPlanner {
+
+	private final long maxDocumentsPerWindow;
+	private final Duration minWindowDuration;
+
+	/**
+	 * A planned window with the number of documents it holds
+	 * */
+	@Getter
+	@AllArgsConstructor
+	public static class TimeWindow {
+		private final OpenSearchRangeQueryData range;
+		private final long documentCount;
+	}
+
+	public OpenSearchTimeWindowPlanner(long maxDocumentsPerWindow, Duration minWindowDuration) {
+		this.maxDocumentsPerWindow = Math.max(1, maxDocumentsPerWindow);
+		this.minWindowDuration = minWindowDuration;
+	}
+
+	/**
+	 * Plans the windows of the input range
+	 * @param range the range to be split
+	 * @param counter the function returning the number of documents in a range
+	 * @return the non empty windows in ascending order, or the whole range if its bounds cannot be parsed
+	 * */
+	public List<TimeWindow> plan(OpenSearchRangeQueryData range, ToLongFunction<OpenSearchRangeQueryData> counter) {
+		Instant from = parse(range.getFrom());
+		Instant to = parse(range.getTo());
+		if (from == null || to == null || !from.isBefore(to) || range.isToExclusive()) {
+			return Collections.singletonList(new TimeWindow(range, -1));
+		}
+		List<TimeWindow> windows = new ArrayList<>();
+		split(range.getRangeField(), range.getFrom(), from, range.getTo(), to, false, counter, windows);
+		return windows;
+	}
+
+	private void split(String field, String fromValue, Instant from, String toValue, Instant to, boolean toExclusive,
+			ToLongFunction<OpenSearchRangeQueryData> counter, List<TimeWindow> windows) {
+		OpenSearchRangeQueryData window = new OpenSearchRangeQueryData(field, fromValue, toValue, toExclusive);
+		long documentCount = counter.applyAsLong(window);
+		if (documentCount == 0) {
+			return;
+		}
+		Duration duration = Duration.between(from, to);
+		if (documentCount <= maxDocumentsPerWindow || duration.compareTo(minWindowDuration.multipliedBy(2)) < 0) {
+			windows.add(new TimeWindow(window, documentCount));
+			return;
+		}
+		Instant middle = from.plus(duration.dividedBy(2)).truncatedTo(ChronoUnit.SECONDS);
+		String middleValue = middle.toString();
+		log.debug("Splitting window {} - {} holding {} documents", fromValue, toValue, documentCount);
+		split(field, fromValue, from, middleValue, middle, true, counter, windows);
+		split(field, middleValue, middle, toValue, to, toExclusive, counter, windows);
+	}
+
+	/**
+	 * Parses a range bound, either a date or a date time with offset. A date is taken at the start of the day, so
+	 * that an inclusive date upper bound is never crossed by the windows
+	 * */
+	private static Instant parse(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+		} catch (DateTimeParseException e) {
+			try {
+				return OffsetDateTime.parse(value).toInstant();
+			} catch (DateTimeParseException ex) {
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.function.IntConsumer;
+
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchDocumentBuffer.DocumentWriter;
+
+/**
+ * Orders the documents of time windows extracted concurrently. The window at the head of the extraction writes its
+ * documents straight to the output, the later windows keep theirs in memory until they reach the head. The memory
+ * held by the later windows is bounded: a window that would exceed the bound waits until the head frees some, so the
+ * head window, which never waits, always makes progress
+ * */
+class OpenSearchWindowBacklog {
+
+	private final DocumentWriter out;
+	private final IntConsumer windowWritten;
+	private final long maxBytes;
+	private final OpenSearchDocumentBuffer[] buffers;
+	private final boolean[] finished;
+	private int head;
+	private long bufferedBytes;
+	private boolean aborted;
+	private int documentCount;
+
+	/**
+	 * @param windows The number of windows of the extraction
+	 * @param maxBytes The maximum number of bytes held by the windows waiting for the head
+	 * @param out The output of the extraction
+	 * @param windowWritten Notified, in window order, when all the documents of a window are written
+	 * */
+	OpenSearchWindowBacklog(int windows, long maxBytes, DocumentWriter out, IntConsumer windowWritten) {
+		this.out = out;
+		this.windowWritten = windowWritten;
+		this.maxBytes = maxBytes;
+		this.buffers = new OpenSearchDocumentBuffer[windows];
+		this.finished = new boolean[windows];
+	}
+
+	/**
+	 * Writes a document of a window, or keeps it in memory if the window is not at the head. Blocks while the memory
+	 * held by the windows waiting for the head is over the bound
+	 * @param window The index of the window
+	 * @param document The buffer holding the document
+	 * @param length The length of the document
+	 * @throws IOException in case of an IO error or if the extraction has been aborted
+	 * */
+	void write(int window, byte[] document, int length) throws IOException {
+		synchronized (this) {
+			while (window != head && !aborted && bufferedBytes + length > maxBytes) {
+				await();
+			}
+			checkAborted();
+			if (window != head) {
+				if (buffers[window] == null) {
+					buffers[window] = new OpenSearchDocumentBuffer();
+				}
+				buffers[window].append(document, length);
+				bufferedBytes += length;
+				return;
+			}
+		}
+		drain(window);
+		out.write(document, 0, length);
+		documentCount++;
+	}
+
+	/**
+	 * Marks a window as completely read. If the window is at the head, the windows following it that are already
+	 * completely read are written too
+	 * @param window The index of the window
+	 * @throws IOException in case of an IO error or if the extraction has been aborted
+	 * */
+	void finish(int window) throws IOException {
+		synchronized (this) {
+			checkAborted();
+			finished[window] = true;
+			if (window != head) {
+				return;
+			}
+		}
+		int next = window;
+		while (true) {
+			drain(next);
+			windowWritten.accept(next);
+			synchronized (this) {
+				head = next + 1;
+				notifyAll();
+				if (head == finished.length || !finished[head]) {
+					return;
+				}
+				next = head;
+			}
+		}
+	}
+
+	/**
+	 * Aborts the extraction, releasing the windows waiting for the head
+	 * */
+	synchronized void abort() {
+		aborted = true;
+		notifyAll();
+	}
+
+	/**
+	 * @return The number of documents written
+	 * */
+	synchronized int getDocumentCount() {
+		return documentCount;
+	}
+
+	private void drain(int window) throws IOException {
+		OpenSearchDocumentBuffer buffer;
+		synchronized (this) {
+			buffer = buffers[window];
+			buffers[window] = null;
+		}
+		if (buffer == null) {
+			return;
+		}
+		int written = buffer.writeTo(out);
+		synchronized (this) {
+			documentCount += written;
+			bufferedBytes -= buffer.size();
+			notifyAll();
+		}
+	}
+
+	private void await() throws InterruptedIOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an OpenSearch time window");
+		}
+	}
+
+	private void checkAborted() throws IOException {
+		if (aborted) {
+			throw new IOException("OpenSearch time window extraction aborted");
+		}
+	}
+}
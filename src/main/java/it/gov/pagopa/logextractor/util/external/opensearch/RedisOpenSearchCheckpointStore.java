@@ -0,0 +1,43 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link OpenSearchCheckpointStore} keeping the checkpoints in Redis, so that the progress of the extractions
+ * of every instance of the service can be inspected in a single place
+ * */
+@Component
+@ConditionalOnProperty(name = "external.opensearch.pit.checkpoint.store", havingValue = "redis")
+public class RedisOpenSearchCheckpointStore implements OpenSearchCheckpointStore {
+
+	private static final String KEY_PREFIX = "opensearch-checkpoint::";
+
+	@Autowired
+	@Qualifier("redisTemplate")
+	RedisTemplate<String, Object> redisTemplate;
+	@Value("${external.opensearch.pit.checkpoint.ttl-minutes:60}")
+	long ttlMinutes;
+
+	@Override
+	public OpenSearchCheckpoint load(String key) {
+		Object checkpoint = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+		return checkpoint instanceof OpenSearchCheckpoint ? (OpenSearchCheckpoint) checkpoint : null;
+	}
+
+	@Override
+	public void save(String key, OpenSearchCheckpoint checkpoint) {
+		redisTemplate.opsForValue().set(KEY_PREFIX + key, checkpoint, Duration.ofMinutes(ttlMinutes));
+	}
+
+	@Override
+	public void delete(String key) {
+		redisTemplate.delete(KEY_PREFIX + key);
+	}
+}
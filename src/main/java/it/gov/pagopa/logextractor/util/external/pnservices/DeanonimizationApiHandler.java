@@ -22,6 +22,8 @@ import it.gov.pagopa.logextractor.dto.response.SelfCarePaDataResponseDto;
 import it.gov.pagopa.logextractor.exception.LogExtractorException;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.GetBasicDataResponseDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.RecipientTypes;
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
+import it.gov.pagopa.logextractor.util.constant.CacheConstants;
 import it.gov.pagopa.logextractor.util.constant.ExternalServiceConstants;
 import it.gov.pagopa.logextractor.util.constant.ResponseConstants;
 import it.pagopa.pn.commons.utils.LogUtils;
@@ -50,6 +52,9 @@ public class DeanonimizationApiHandler {
 	@Value("${external.selfcare.getEncodedIpaCode.url}")
 	String selfCareEncodedIpaCodeURL;
 
+	@Autowired
+	ExtractionMetrics metrics = ExtractionMetrics.NOOP;
+
 	/**
 	 * Method that makes a request to Piattaforma Notifiche external service to
 	 * retrieve the unique identifier of a person, given the recipient type and tax
@@ -59,8 +64,13 @@ public class DeanonimizationApiHandler {
 	 * @return object of type {@link GetBasicDataResponseDto}, containing the unique identifier of a person
 	 * @throws LogExtractorException if the external service response is "null", null or blank
 	 */
-	@Cacheable(cacheNames="Cluster", cacheManager = "cacheManager10Hour")
+	@Cacheable(cacheNames = CacheConstants.INTERNAL_ID_BY_TAX_ID_CACHE, cacheManager = CacheConstants.CACHE_MANAGER,
+			key = "#p0.value + ':' + #p1")
 	public String getUniqueIdentifierForPerson(RecipientTypes recipientType, String taxId) throws LogExtractorException {
+		return timeLookup("uniqueIdentifier", () -> requestUniqueIdentifierForPerson(recipientType, taxId));
+	}
+
+	private String requestUniqueIdentifierForPerson(RecipientTypes recipientType, String taxId) throws LogExtractorException {
 		log.info("Calling getUniqueIdentifierForPerson for {}", LogUtils.maskTaxId(taxId));
 		String url = String.format(getUniqueIdURL, recipientType.getValue());
 		HttpEntity<String> request =  new HttpEntity<>(taxId);
@@ -85,8 +95,12 @@ public class DeanonimizationApiHandler {
 	 * @return object of type {@link GetBasicDataResponseDto}, containing the tax code of a person
 	 * @throws LogExtractorException if the external service response is "null", null, blank or has 0 length
 	 */
-	@Cacheable(cacheNames="Cluster", cacheManager = "cacheManager10Hour")
+	@Cacheable(cacheNames = CacheConstants.TAX_ID_BY_INTERNAL_ID_CACHE, cacheManager = CacheConstants.CACHE_MANAGER)
 	public GetBasicDataResponseDto getTaxCodeForPerson(String personId) throws LogExtractorException {
+		return timeLookup("taxCode", () -> requestTaxCodeForPerson(personId));
+	}
+
+	private GetBasicDataResponseDto requestTaxCodeForPerson(String personId) throws LogExtractorException {
 		log.info("Calling getTaxCodeForPerson for {}", personId);
 		HttpHeaders headers = new HttpHeaders();
 		headers.set(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
@@ -125,8 +139,12 @@ public class DeanonimizationApiHandler {
 	 * @return The list of notifications' general data
 	 * @throws LogExtractorException if the external service response is "null", null, blank or has 0 length
 	 * */
-	@Cacheable(cacheNames="Cluster", cacheManager = "cacheManager10Hour")
+	@Cacheable(cacheNames = CacheConstants.PUBLIC_AUTHORITY_ID_BY_NAME_CACHE, cacheManager = CacheConstants.CACHE_MANAGER)
 	public String getPublicAuthorityId(String publicAuthorityName) throws LogExtractorException {
+		return timeLookup("publicAuthorityId", () -> requestPublicAuthorityId(publicAuthorityName));
+	}
+
+	private String requestPublicAuthorityId(String publicAuthorityName) throws LogExtractorException {
 		log.info("Calling getPublicAuthorityId for {}", publicAuthorityName);
 		HttpHeaders headers = new HttpHeaders();
 		headers.set(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
@@ -163,8 +181,12 @@ public class DeanonimizationApiHandler {
 	 * @return The public authority name
 	 * @throws LogExtractorException if the external service response is "null", null or blank
 	 * */
-	@Cacheable(cacheNames="Cluster", cacheManager = "cacheManager10Hour")
+	@Cacheable(cacheNames = CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE, cacheManager = CacheConstants.CACHE_MANAGER)
 	public String getPublicAuthorityName(String publicAuthorityId) throws LogExtractorException {
+		return timeLookup("publicAuthorityName", () -> requestPublicAuthorityName(publicAuthorityId));
+	}
+
+	private String requestPublicAuthorityName(String publicAuthorityId) throws LogExtractorException {
 		log.info("Calling getPublicAuthorityName for {}", publicAuthorityId);
 		String url = String.format(getPublicAuthorityNameURL, publicAuthorityId);
 		SelfCarePaDataResponseDto response = client.getForEntity(url, SelfCarePaDataResponseDto.class).getBody();		
@@ -174,4 +196,27 @@ public class DeanonimizationApiHandler {
 		return response.getName();
 	}
 
+	/**
+	 * Calls a de-anonymization service, recording the duration of the call
+	 * @param lookup the name of the looked up value
+	 * @param call the call to the service
+	 * @return the value returned by the service
+	 * @throws LogExtractorException if the service does not return the value
+	 * */
+	private <T> T timeLookup(String lookup, Lookup<T> call) throws LogExtractorException {
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			T value = call.get();
+			success = true;
+			return value;
+		} finally {
+			metrics.recordLookup(lookup, success, System.nanoTime() - start);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Lookup<T> {
+		T get() throws LogExtractorException;
+	}
 }
@@ -0,0 +1,41 @@
+package it.gov.pagopa.logextractor.util.external.pnservices;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the distinct <code>cx_id</code>s of the PF and PG documents held back by a
+ * {@link DeanonimizingOutputStream}, so that they can be de-anonymized in a single batch before the documents are
+ * rewritten
+ * */
+class DeanonimizationIdCollector {
+
+	private final Set<String> ids = new HashSet<>();
+
+	/**
+	 * Adds the <code>cx_id</code> of a document, if it is de-anonymized
+	 * @param cxType the <code>cx_type</code> of the document, null if missing
+	 * @param cxId the <code>cx_id</code> of the document, null if missing
+	 * */
+	void add(String cxType, String cxId) {
+		if (cxId != null && isDeanonimized(cxType)) {
+			ids.add(cxId);
+		}
+	}
+
+	/**
+	 * @return the distinct <code>cx_id</code>s collected
+	 * */
+	Set<String> getIds() {
+		return ids;
+	}
+
+	/**
+	 * @param cxType the <code>cx_type</code> of a document
+	 * @return true if the <code>cx_id</code> of the document is de-anonymized, that is for persons (PF) and
+	 * companies (PG)
+	 * */
+	private static boolean isDeanonimized(String cxType) {
+		return "PF".equals(cxType) || "PG".equals(cxType);
+	}
+}
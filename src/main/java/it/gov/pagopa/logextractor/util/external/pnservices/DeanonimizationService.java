@@ -1,26 +1,31 @@
 package it.gov.pagopa.logextractor.util.external.pnservices;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import it.gov.pagopa.logextractor.exception.LogExtractorException;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.GetBasicDataResponseDto;
 import it.gov.pagopa.logextractor.pn_logextractor_be.model.RecipientTypes;
-import it.gov.pagopa.logextractor.util.JsonUtilities;
+import it.gov.pagopa.logextractor.util.JsonFieldRewriter;
 import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,96 +33,165 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class DeanonimizationService {
 
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final JsonFieldRewriter FIELD_REWRITER = new JsonFieldRewriter(new HashSet<>(Arrays.asList(
+			OpensearchConstants.OS_CX_ID_FIELD, OpensearchConstants.OS_CX_TYPE_FIELD, OpensearchConstants.OS_UID_FIELD)));
+
 	@Autowired
 	DeanonimizationApiHandler apiHandler;
+
+	@Value("${deanonimization.prefetch.enabled:true}")
+	boolean prefetchEnabled = true;
+
+	@Autowired
+	@Qualifier("deanonimizationExecutor")
+	AsyncTaskExecutor lookupExecutor;
+
+	@Value("${deanonimization.streaming.lookahead-documents:1000}")
+	int lookaheadDocuments = 1000;
 	
-	/** 
-	 * Returns the value associated with the specified key.
-	 * @param recipientType the entity's recipient type
-	 * @param anonymizedDocuments the document list containing the content to write in the output
-	 *                               file (.txt, .csv) contained in the output zip archive
-	 * @return A list representing the de-anonymized documents 
+	/**
+	 * Opens a stream de-anonymizing the documents written to it, one per line, while they are extracted. The
+	 * documents are held back until the lookahead is full, then the distinct <code>cx_id</code>s not resolved yet
+	 * are resolved in a single batch and the documents are rewritten to the output stream, so that no temporary
+	 * file is needed. Closing the stream writes the documents held back, leaving the output stream open
+	 * @param out the stream where to write the de-anonymized documents
+	 * @return the stream where to write the anonymized documents
+	 */
+	public OutputStream openDeanonimizingStream(OutputStream out) {
+		return new DeanonimizingOutputStream(this, out, lookaheadDocuments);
+	}
+
+	/**
+	 * De-anonymizes a document, the <code>cx_id</code> of PF and PG documents and the <code>uid</code> of PF
+	 * documents are replaced by the tax code
+	 * @param document the anonymized document
+	 * @param taxCodes the tax codes already resolved by <code>cx_id</code>, the ones resolved by this call are added
+	 * @param keyValues the replacements of the previous document, updated with the ones of this document
+	 * @return the de-anonymized document
 	 * @throws LogExtractorException if the external service response is "null", null or blank
-	 * @throws JsonProcessingException 
+	 * @throws IOException if the document is not a valid JSON object
 	 */
-	public void deanonimizeDocuments(File anonymizedDocuments, RecipientTypes recipientType, OutputStream out) throws LogExtractorException, JsonProcessingException {
-		ObjectMapper mapper = new ObjectMapper();
-		JsonUtilities jsonUtils = new JsonUtilities();
-		Map<String, String> keyValues = new HashMap<>();
-		BufferedReader br = null;
-		BufferedWriter wr = null;
-		FileReader fr = null;
-		try {
-			fr = new FileReader(anonymizedDocuments);
-			br = new BufferedReader(fr);
-			wr = new BufferedWriter(new OutputStreamWriter(out));
+	String deanonimizeDocument(String document, Map<String, String> taxCodes, Map<String, String> keyValues)
+			throws LogExtractorException, IOException {
+		JsonFieldRewriter.Document fields = FIELD_REWRITER.read(document);
+		String cxId = fields.getValue(OpensearchConstants.OS_CX_ID_FIELD);
+		String cxTypeValue = fields.getValue(OpensearchConstants.OS_CX_TYPE_FIELD);
+
+		String cxType = cxTypeValue==null ? "" : cxTypeValue;
+//		log.info("deanonimize doc with uid: {} and cxId: {}", uid, cxId);
+
+		/**
+		 * Sunto riunione del 7/6
+		  	se cx_type è PF cx_id e uid sono praticamente la stessa cosa (deanonimizzi uno e usi il valore in due punti)
+			se cx_type è PA
+			- cx_id: ignorare
+			- uid: ignorare
 			
-			String currentDocument;
-			while ((currentDocument = br.readLine()) != null) {
-					JsonNode root = mapper.readTree(currentDocument);
-					JsonNode uid = root.get(OpensearchConstants.OS_UID_FIELD);
-					JsonNode cxId = root.get(OpensearchConstants.OS_CX_ID_FIELD);
-					JsonNode cxTypeNode = root.get(OpensearchConstants.OS_CX_TYPE_FIELD);
-	
-					String cxType = cxTypeNode==null ? "" : cxTypeNode.asText();
-//					log.info("deanonimize doc with uid: {} and cxId: {}", uid, cxId);
+			se cx_type è PG
+			- cx_id: deanonimizzare
+			- uid: ignorare
+		 */
+//		if (uid != null && !uid.asText().startsWith("APIKEY-")) {
+//			GetBasicDataResponseDto taxCodeDto = apiHandler.getTaxCodeForPerson(
+//					recipientType.toString() + "-" + uid.asText());
+//			keyValues.put(OpensearchConstants.OS_UID_FIELD, taxCodeDto.getData());
+//		}
+//		if (cxId != null) {
+//			String deanonimizedIdentifier = null;
+//			if (cxId.asText().startsWith("PF-") || cxId.asText().startsWith("PG-")) {
+//				deanonimizedIdentifier = apiHandler.getTaxCodeForPerson(cxId.asText()).getData();
+//			} else if (cxId.asText().startsWith("PA-")) {
+//				deanonimizedIdentifier = apiHandler.getPublicAuthorityName(cxId.asText());
+//			}
+//			keyValues.put(OpensearchConstants.OS_CX_ID_FIELD, deanonimizedIdentifier);
+//		}
+		
+		if (cxId != null) {
+			if (("PF".equals(cxType) || "PG".equals(cxType))) {
+				String deanonimizedIdentifier = taxCodes.get(cxId);
+				if (deanonimizedIdentifier == null) {
+					deanonimizedIdentifier = apiHandler.getTaxCodeForPerson(cxId).getData();
+					taxCodes.put(cxId, deanonimizedIdentifier);
+				}
+				keyValues.put(OpensearchConstants.OS_CX_ID_FIELD, deanonimizedIdentifier);
+				if ("PF".equals(cxType)) {
+					keyValues.put(OpensearchConstants.OS_UID_FIELD, deanonimizedIdentifier);
+				}
+			}else {
+				log.warn("Deanonimization skipped for cx_id: {}", cxId);
+			}
+		}else {
+			log.warn("nothing to deanonimize");
+		}
+		return fields.rewrite(keyValues);
+	}
 
-					/**
-					 * Sunto riunione del 7/6
-					  	se cx_type è PF cx_id e uid sono praticamente la stessa cosa (deanonimizzi uno e usi il valore in due punti)
-						se cx_type è PA
-						- cx_id: ignorare
-						- uid: ignorare
-						
-						se cx_type è PG
-						- cx_id: deanonimizzare
-						- uid: ignorare
-					 */
-//					if (uid != null && !uid.asText().startsWith("APIKEY-")) {
-//						GetBasicDataResponseDto taxCodeDto = apiHandler.getTaxCodeForPerson(
-//								recipientType.toString() + "-" + uid.asText());
-//						keyValues.put(OpensearchConstants.OS_UID_FIELD, taxCodeDto.getData());
-//					}
-//					if (cxId != null) {
-//						String deanonimizedIdentifier = null;
-//						if (cxId.asText().startsWith("PF-") || cxId.asText().startsWith("PG-")) {
-//							deanonimizedIdentifier = apiHandler.getTaxCodeForPerson(cxId.asText()).getData();
-//						} else if (cxId.asText().startsWith("PA-")) {
-//							deanonimizedIdentifier = apiHandler.getPublicAuthorityName(cxId.asText());
-//						}
-//						keyValues.put(OpensearchConstants.OS_CX_ID_FIELD, deanonimizedIdentifier);
-//					}
-					
-					if (cxId != null) {
-						if (("PF".equals(cxType) || "PG".equals(cxType))) {
-							String deanonimizedIdentifier = apiHandler.getTaxCodeForPerson(cxId.asText()).getData();
-							keyValues.put(OpensearchConstants.OS_CX_ID_FIELD, deanonimizedIdentifier);
-							if ("PF".equals(cxType)) {
-								keyValues.put(OpensearchConstants.OS_UID_FIELD, deanonimizedIdentifier);
-							}
-						}else {
-							log.warn("Deanonimization skipped for cx_id: {}", cxId);
-						}
-					}else {
-						log.warn("nothing to deanonimize");
-					}
-					wr.write(jsonUtils.replaceValues(currentDocument, keyValues));
-					wr.newLine();
-					wr.flush();
-					currentDocument=null;
+	/**
+	 * Adds the <code>cx_id</code> of a document to a collector, reading only the top level fields of the document
+	 * @param document the anonymized document
+	 * @param idCollector the collector
+	 * @throws IOException if the document is not valid JSON
+	 */
+	static void collectId(String document, DeanonimizationIdCollector idCollector) throws IOException {
+		String cxId = null;
+		String cxType = null;
+		try (JsonParser parser = JSON_FACTORY.createParser(document)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return;
 			}
-		} catch (Exception e) {
-			log.error("IR-"+e.getMessage());
-			log.error("Error reading {}", anonymizedDocuments.getName(), e);
-		} finally {
-			if (br!=null) {
-				IOUtils.closeQuietly(br);
+			while (parser.nextToken() == JsonToken.FIELD_NAME && (cxId == null || cxType == null)) {
+				String fieldName = parser.getCurrentName();
+				JsonToken valueToken = parser.nextToken();
+				if (valueToken.isScalarValue() && OpensearchConstants.OS_CX_ID_FIELD.equals(fieldName)) {
+					cxId = parser.getValueAsString();
+				} else if (valueToken.isScalarValue() && OpensearchConstants.OS_CX_TYPE_FIELD.equals(fieldName)) {
+					cxType = parser.getValueAsString();
+				} else {
+					parser.skipChildren();
+				}
 			}
-			if (fr != null) {
-				IOUtils.closeQuietly(fr);
+		}
+		idCollector.add(cxType, cxId);
+	}
+
+	/**
+	 * Resolves the tax codes of the input <code>cx_id</code>s concurrently, on the executor shared by all the
+	 * extractions. A <code>cx_id</code> that cannot be
+	 * resolved is left out of the result, so that its documents call the service again and fail as they did
+	 * before the batch
+	 * @param cxIds the distinct <code>cx_id</code>s
+	 * @return the tax code of every resolved <code>cx_id</code>
+	 */
+	Map<String, String> resolveTaxCodes(Collection<String> cxIds) {
+		Map<String, String> taxCodes = new ConcurrentHashMap<>();
+		if (cxIds.isEmpty()) {
+			return taxCodes;
+		}
+		long start = System.currentTimeMillis();
+		List<Future<?>> lookups = new ArrayList<>(cxIds.size());
+		try {
+			for (String cxId : cxIds) {
+				lookups.add(lookupExecutor.submit(() -> {
+					try {
+						taxCodes.put(cxId, apiHandler.getTaxCodeForPerson(cxId).getData());
+					} catch (LogExtractorException | RuntimeException e) {
+						log.warn("Cannot deanonimize cx_id {}: {}", cxId, e.getMessage());
+					}
+				}));
+			}
+			for (Future<?> lookup : lookups) {
+				lookup.get();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lookups.forEach(lookup -> lookup.cancel(true));
+		} catch (ExecutionException e) {
+			log.warn("Error deanonimizing the cx_ids", e.getCause());
 		}
-		
+		log.info("Resolved {} of {} distinct cx_ids in {} ms", taxCodes.size(), cxIds.size(),
+				System.currentTimeMillis() - start);
+		return taxCodes;
 	}
 	
 	public String getUniqueIdentifierForPerson(RecipientTypes recipientType, String taxId) throws LogExtractorException {
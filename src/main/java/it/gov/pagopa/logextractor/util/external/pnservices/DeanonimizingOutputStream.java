@@ -0,0 +1,132 @@
+package it.gov.pagopa.logextractor.util.external.pnservices;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.gov.pagopa.logextractor.exception.LogExtractorException;
+
+/**
+ * Stream de-anonymizing the documents written to it, one per line, between the Opensearch extraction and the
+ * archive entry. Up to a lookahead of documents is held back, so that the <code>cx_id</code>s of the window are
+ * resolved in a single batch before the documents are rewritten. A <code>cx_id</code> resolved by a previous
+ * window is not resolved again.
+ * <p>
+ * Like a compressing stream, {@link #flush()} does not release the documents held back: they are written when
+ * the lookahead is full and when the stream is closed. Closing the stream does not close the output stream.
+ * */
+class DeanonimizingOutputStream extends OutputStream {
+
+	private final DeanonimizationService service;
+	private final OutputStream out;
+	private final int lookahead;
+	private final ByteArrayOutputStream document = new ByteArrayOutputStream(1024);
+	private final List<String> pending;
+	private final Map<String, String> taxCodes = new HashMap<>();
+	private final Map<String, String> keyValues = new HashMap<>();
+	private DeanonimizationIdCollector windowIds = new DeanonimizationIdCollector();
+	private boolean closed;
+
+	/**
+	 * @param service the service resolving the <code>cx_id</code>s and rewriting the documents
+	 * @param out the stream where to write the de-anonymized documents
+	 * @param lookahead the maximum number of documents held back
+	 * */
+	DeanonimizingOutputStream(DeanonimizationService service, OutputStream out, int lookahead) {
+		this.service = service;
+		this.out = out;
+		this.lookahead = Math.max(1, lookahead);
+		this.pending = new ArrayList<>(Math.min(this.lookahead, 1024));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (b == '\n') {
+			endDocument();
+		} else {
+			document.write(b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		int end = off + len;
+		int start = off;
+		for (int i = off; i < end; i++) {
+			if (b[i] == '\n') {
+				document.write(b, start, i - start);
+				endDocument();
+				start = i + 1;
+			}
+		}
+		document.write(b, start, end - start);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (document.size() > 0) {
+			endDocument();
+		}
+		drain();
+		out.flush();
+	}
+
+	private void endDocument() throws IOException {
+		String line = document.toString(StandardCharsets.UTF_8);
+		document.reset();
+		if (line.isEmpty()) {
+			return;
+		}
+		pending.add(line);
+		if (service.prefetchEnabled) {
+			DeanonimizationService.collectId(line, windowIds);
+		}
+		if (pending.size() >= lookahead) {
+			drain();
+		}
+	}
+
+	/**
+	 * Resolves the <code>cx_id</code>s of the documents held back and writes them to the output stream
+	 * */
+	private void drain() throws IOException {
+		Set<String> unresolved = new HashSet<>(windowIds.getIds());
+		unresolved.removeAll(taxCodes.keySet());
+		windowIds = new DeanonimizationIdCollector();
+		taxCodes.putAll(service.resolveTaxCodes(unresolved));
+		try {
+			for (String line : pending) {
+				out.write(service.deanonimizeDocument(line, taxCodes, keyValues).getBytes(StandardCharsets.UTF_8));
+				out.write('\n');
+			}
+		} catch (LogExtractorException e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			pending.clear();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+}
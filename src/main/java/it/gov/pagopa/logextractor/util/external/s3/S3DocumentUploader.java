@@ -25,6 +25,7 @@ import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 
 import it.gov.pagopa.logextractor.config.S3ClientBuilder;
 import it.gov.pagopa.logextractor.exception.CustomException;
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
 import it.gov.pagopa.logextractor.util.FileUtilities;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -37,6 +38,8 @@ public class S3DocumentUploader {
 	private final S3ClientBuilder s3ClientBuilder;
 	
 	private final FileUtilities fileutils;
+
+	private final ExtractionMetrics metrics;
 	
 //	@Async
 //	public void upload(PutObjectRequest por) {
@@ -52,7 +55,7 @@ public class S3DocumentUploader {
 //        }
 //	}
 	
-	@Async
+	@Async("uploadExecutor")
 	public void uploadV2(InputStream is, String bucketName, String key) {
 		final AmazonS3 s3Client = s3ClientBuilder.amazonS3Client();
 		final int BUFFER_SIZE = 1024*1024*5;//5MB size minima (https://docs.aws.amazon.com/AmazonS3/latest/userguide/qfacts.html)
@@ -103,7 +106,9 @@ public class S3DocumentUploader {
 							.withPartNumber(partNumber)
 							.withInputStream(bais)
 							.withPartSize(partSize);
+					long partStart = System.nanoTime();
 					UploadPartResult uploadResult = s3Client.uploadPart(uploadRequest);
+					metrics.recordS3Part(partSize, System.nanoTime() - partStart);
 					partETags.add(uploadResult.getPartETag());
 	
 					bais.close();
@@ -0,0 +1,84 @@
+package it.gov.pagopa.logextractor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import it.gov.pagopa.logextractor.config.ExtractionExecutorConfiguration;
+import it.gov.pagopa.logextractor.config.ExtractionLaneTaskExecutor;
+import it.gov.pagopa.logextractor.enums.ExtractionLane;
+
+class ExtractionLaneTaskExecutorTest {
+
+	private ThreadPoolTaskExecutor interactiveExecutor;
+	private ThreadPoolTaskExecutor bulkExecutor;
+	private ExtractionLaneTaskExecutor executor;
+
+	@BeforeEach
+	void setUp() {
+		ExtractionExecutorConfiguration configuration = new ExtractionExecutorConfiguration();
+		interactiveExecutor = configuration.interactiveExtractionExecutor(2);
+		bulkExecutor = configuration.bulkExtractionExecutor(1, 1);
+		interactiveExecutor.initialize();
+		bulkExecutor.initialize();
+		executor = configuration.taskExecutor(interactiveExecutor, bulkExecutor);
+	}
+
+	@AfterEach
+	void tearDown() {
+		interactiveExecutor.shutdown();
+		bulkExecutor.shutdown();
+	}
+
+	@Test
+	@DisplayName("Tasks run on the lane selected by the caller")
+	void testSubmit_whenLaneSelected_runsOnLaneExecutor() throws Exception {
+		Future<String> bulk = ExtractionLaneTaskExecutor.runIn(ExtractionLane.BULK,
+				() -> executor.submit(() -> Thread.currentThread().getName()));
+		Future<String> interactive = executor.submit(() -> Thread.currentThread().getName());
+
+		Assertions.assertTrue(bulk.get().startsWith("bulk-extraction-"));
+		Assertions.assertTrue(interactive.get().startsWith("extraction-"));
+	}
+
+	@Test
+	@DisplayName("A full bulk lane rejects new tasks without affecting the interactive lane")
+	void testSubmit_whenBulkLaneFull_throwsTaskRejectedException() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ExtractionLaneTaskExecutor.runIn(ExtractionLane.BULK, () -> {
+			executor.execute(() -> await(release));
+			executor.execute(() -> await(release));
+			return null;
+		});
+
+		Assertions.assertThrows(TaskRejectedException.class, () -> ExtractionLaneTaskExecutor.runIn(ExtractionLane.BULK,
+				() -> executor.submit(() -> await(release))));
+		Assertions.assertEquals("done", executor.submit(() -> "done").get());
+		release.countDown();
+	}
+
+	@Test
+	@DisplayName("The uploads have a thread for every extraction thread of both lanes")
+	void testUploadExecutor_whenLanesFull_hasThreadForEveryExtraction() {
+		ThreadPoolTaskExecutor uploadExecutor = new ExtractionExecutorConfiguration().uploadExecutor(2, 1);
+
+		Assertions.assertEquals(3, uploadExecutor.getCorePoolSize());
+		Assertions.assertEquals(3, uploadExecutor.getMaxPoolSize());
+		Assertions.assertEquals("upload-", uploadExecutor.getThreadNamePrefix());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
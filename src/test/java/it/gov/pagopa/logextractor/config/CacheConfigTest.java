@@ -0,0 +1,55 @@
+package it.gov.pagopa.logextractor.config;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.GetBasicDataResponseDto;
+import it.gov.pagopa.logextractor.util.constant.CacheConstants;
+
+class CacheConfigTest {
+
+	@Test
+	@DisplayName("Every de-anonymization lookup has its own region, time to live and key prefix")
+	void testRegionConfigurations_whenBuilt_returnsRegionPerLookup() {
+		Map<String, RedisCacheConfiguration> regions = CacheConfig.regionConfigurations(Duration.ofHours(10),
+				Duration.ofHours(24));
+
+		Assertions.assertEquals(4, regions.size());
+		Assertions.assertEquals(Duration.ofHours(10), regions.get(CacheConstants.TAX_ID_BY_INTERNAL_ID_CACHE).getTtl());
+		Assertions.assertEquals(Duration.ofHours(10), regions.get(CacheConstants.INTERNAL_ID_BY_TAX_ID_CACHE).getTtl());
+		Assertions.assertEquals(Duration.ofHours(24),
+				regions.get(CacheConstants.PUBLIC_AUTHORITY_ID_BY_NAME_CACHE).getTtl());
+		Assertions.assertEquals(Duration.ofHours(24),
+				regions.get(CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE).getTtl());
+		Assertions.assertEquals("pn-logextractor:publicAuthorityNameById:",
+				regions.get(CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE)
+						.getKeyPrefixFor(CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE));
+	}
+
+	@Test
+	@DisplayName("The values of the regions are stored in a compact form and read back unchanged")
+	void testRegionConfigurations_whenValueWritten_readsSameValue() {
+		Map<String, RedisCacheConfiguration> regions = CacheConfig.regionConfigurations(Duration.ofHours(10),
+				Duration.ofHours(24));
+		GetBasicDataResponseDto taxCode = new GetBasicDataResponseDto().data("RSSMRA80A01H501U").message("Success");
+
+		ByteBuffer taxCodeBytes = regions.get(CacheConstants.TAX_ID_BY_INTERNAL_ID_CACHE).getValueSerializationPair()
+				.write(taxCode);
+		ByteBuffer nameBytes = regions.get(CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE).getValueSerializationPair()
+				.write("Comune di Milano");
+
+		Assertions.assertTrue(taxCodeBytes.remaining() < new JdkSerializationRedisSerializer().serialize(taxCode).length / 2);
+		Assertions.assertEquals(taxCode, regions.get(CacheConstants.TAX_ID_BY_INTERNAL_ID_CACHE)
+				.getValueSerializationPair().read(taxCodeBytes));
+		Assertions.assertEquals("Comune di Milano".length(), nameBytes.remaining());
+		Assertions.assertEquals("Comune di Milano", regions.get(CacheConstants.PUBLIC_AUTHORITY_NAME_BY_ID_CACHE)
+				.getValueSerializationPair().read(nameBytes));
+	}
+}
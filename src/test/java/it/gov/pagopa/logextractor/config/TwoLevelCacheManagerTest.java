@@ -0,0 +1,77 @@
+package it.gov.pagopa.logextractor.config;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TwoLevelCacheManagerTest {
+
+	private final AtomicLong clock = new AtomicLong();
+	private final ConcurrentMapCacheManager remote = new ConcurrentMapCacheManager();
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(remote, 32, Duration.ofSeconds(60),
+			registry, clock::get, Runnable::run);
+
+	private double gets(String level, String result) {
+		return registry.get("logextractor.cache.gets").tag("level", level).tag("result", result).functionCounter().count();
+	}
+
+	@Test
+	@DisplayName("A key read again is served by the local level until its time to live expires")
+	void testGet_whenKeyReadAgain_returnsLocalValueUntilExpired() {
+		Cache cache = cacheManager.getCache("Cluster");
+		cache.put("PF-1", "TAXCODE1");
+		remote.getCache("Cluster").put("PF-1", "TAXCODE2");
+
+		Assertions.assertEquals("TAXCODE1", cache.get("PF-1").get());
+		clock.addAndGet(Duration.ofSeconds(60).toNanos());
+		Assertions.assertEquals("TAXCODE2", cache.get("PF-1").get());
+		Assertions.assertEquals("TAXCODE2", cache.get("PF-1", String.class));
+		Assertions.assertNull(cache.get("PF-2"));
+
+		Assertions.assertEquals(2, gets("local", "hit"));
+		Assertions.assertEquals(2, gets("local", "miss"));
+		Assertions.assertEquals(1, gets("remote", "hit"));
+		Assertions.assertEquals(1, gets("remote", "miss"));
+	}
+
+	@Test
+	@DisplayName("The local level keeps at most its maximum number of entries")
+	void testPut_whenLocalLevelFull_evictsEntries() {
+		Cache cache = cacheManager.getCache("Cluster");
+		for (int key = 0; key < 1000; key++) {
+			cache.put("PF-" + key, "TAXCODE" + key);
+		}
+
+		Assertions.assertTrue(registry.get("logextractor.cache.local.size").gauge().value() <= 32);
+		Assertions.assertEquals("TAXCODE0", cache.get("PF-0").get());
+		Assertions.assertEquals(1, gets("remote", "hit"));
+	}
+
+	@Test
+	@DisplayName("An eviction or a clear applies to both levels")
+	void testEvict_whenKeyEvicted_removesKeyFromBothLevels() {
+		Cache cache = cacheManager.getCache("Cluster");
+		cache.put("PF-1", "TAXCODE1");
+		cache.put("PF-2", "TAXCODE2");
+
+		cache.evict("PF-1");
+
+		Assertions.assertNull(cache.get("PF-1"));
+		Assertions.assertNull(remote.getCache("Cluster").get("PF-1"));
+		Assertions.assertEquals("TAXCODE2", cache.get("PF-2").get());
+
+		cache.clear();
+
+		Assertions.assertNull(cache.get("PF-2"));
+		Assertions.assertEquals(0, registry.get("logextractor.cache.local.size").gauge().value());
+		Assertions.assertEquals(0, gets("remote", "hit"));
+	}
+}
@@ -0,0 +1,69 @@
+package it.gov.pagopa.logextractor.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Microbenchmark of the de-anonymization of a document, run with <code>mvn test -Pbenchmark</code>.
+ * It compares the single streaming pass of {@link JsonFieldRewriter} with the tree parse followed by the
+ * {@link JsonUtilities} replacement previously used to read the <code>cx_id</code> and rewrite the document
+ * */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class JsonFieldRewriterBenchmarkTest {
+
+	private static final String DOCUMENT = "{\"@timestamp\":\"2023-01-01T10:15:30.123Z\",\"level\":\"INFO\","
+			+ "\"logger_name\":\"it.pagopa.pn.delivery.rest.PnSentNotificationsController\",\"thread_name\":\"reactor-http-epoll-3\","
+			+ "\"message\":\"Invoked operation: getSentNotificationV21 with request id 6c2d7f1e-7a6b-4e0b-9c0e-3d1f6a9b2c4d and "
+			+ "a longer payload \\\"quoted\\\" to look like a real application log line\",\"trace_id\":\"Root=1-63b15a2a-1a2b3c4d5e6f7a8b9c0d1e2f\","
+			+ "\"cx_type\":\"PF\",\"cx_id\":\"PF-2dfc9690-a648-4462-986d-769d90752e6f\",\"uid\":\"PF-2dfc9690-a648-4462-986d-769d90752e6f\","
+			+ "\"aud_type\":\"AUD_NT_VIEW_RCP\",\"iun\":\"ABCD-EFGH-IJKL-202301-M-1\",\"jti\":\"1a2b3c4d\",\"status\":200}";
+	private static final String TAX_CODE = "RSSMRA80A01H501U";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final JsonUtilities jsonUtilities = new JsonUtilities();
+	private final JsonFieldRewriter rewriter = new JsonFieldRewriter(new HashSet<>(Arrays.asList("cx_id", "cx_type", "uid")));
+
+	@Test
+	@DisplayName("Streaming field rewrite versus tree parse and JsonUtilities replacement of a document")
+	void benchmarkDeanonimizeDocument() throws Exception {
+		Assertions.assertEquals(mapper.readTree(rewriteTree()), mapper.readTree(rewriteStreaming()));
+
+		Map<String, Double> results = new Microbenchmark("Document de-anonymization")
+				.rounds(5, 10, 20_000)
+				.add("streaming rewrite", this::rewriteStreaming)
+				.add("tree and JsonUtilities", this::rewriteTree)
+				.run();
+		Assertions.assertEquals(2, results.size());
+	}
+
+	private String rewriteStreaming() throws IOException {
+		JsonFieldRewriter.Document document = rewriter.read(DOCUMENT);
+		Map<String, String> keyValues = new HashMap<>();
+		if ("PF".equals(document.getValue("cx_type")) && document.getValue("cx_id") != null) {
+			keyValues.put("cx_id", TAX_CODE);
+			keyValues.put("uid", TAX_CODE);
+		}
+		return document.rewrite(keyValues);
+	}
+
+	private String rewriteTree() throws IOException {
+		JsonNode root = mapper.readTree(DOCUMENT);
+		Map<String, String> keyValues = new HashMap<>();
+		if ("PF".equals(root.get("cx_type").asText()) && root.get("cx_id") != null) {
+			keyValues.put("cx_id", TAX_CODE);
+			keyValues.put("uid", TAX_CODE);
+		}
+		return jsonUtilities.replaceValues(DOCUMENT, keyValues);
+	}
+}
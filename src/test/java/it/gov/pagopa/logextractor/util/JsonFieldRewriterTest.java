@@ -0,0 +1,91 @@
+package it.gov.pagopa.logextractor.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonFieldRewriterTest {
+
+	private final JsonFieldRewriter rewriter = new JsonFieldRewriter(
+			new HashSet<>(Arrays.asList("cx_id", "cx_type", "uid", "n", "flag", "nested")));
+
+	@Test
+	@DisplayName("Only the values of the top level fields to replace change, the rest is copied byte for byte")
+	void testRewrite_whenProvidedReplacements_replacesOnlyTargetedValues() throws IOException {
+		String document = "{ \"n\" : 1.50e3 ,\"message\":\"caff\\u00e8 \\\"x\\\"\",\"cx_id\" : \"PF-1\","
+				+ "\"nested\":{\"cx_id\":\"PF-2\"},\"flag\":true,\"uid\":\"PF-1\" , \"list\":[1, 2]}";
+		Map<String, String> replacements = new HashMap<>();
+		replacements.put("cx_id", "RSSMRA80A01H501U");
+		replacements.put("uid", "a\"b\\c\n");
+		replacements.put("n", "one");
+		replacements.put("nested", "x");
+		replacements.put("flag", null);
+		replacements.put("missing", "ignored");
+
+		String rewritten = rewriter.read(document).rewrite(replacements);
+
+		Assertions.assertEquals("{ \"n\" : \"one\" ,\"message\":\"caff\\u00e8 \\\"x\\\"\",\"cx_id\" : \"RSSMRA80A01H501U\","
+				+ "\"nested\":\"x\",\"uid\":\"a\\\"b\\\\c\\n\" , \"list\":[1, 2]}", rewritten);
+		Assertions.assertEquals("a\"b\\c\n", new ObjectMapper().readTree(rewritten).get("uid").asText());
+	}
+
+	@Test
+	@DisplayName("A null replacement removes the field with its comma, as JsonUtilities does")
+	void testRewrite_whenProvidedNullReplacements_removesFields() throws IOException {
+		Map<String, String> replacements = new HashMap<>();
+		replacements.put("cx_id", null);
+		replacements.put("uid", null);
+
+		Assertions.assertEquals("{\"n\":1  }", rewriter.read("{\"n\":1 , \"uid\" : \"PF-1\" }").rewrite(replacements));
+		Assertions.assertEquals("{ \"n\":1}", rewriter.read("{\"cx_id\":\"PF-1\", \"n\":1}").rewrite(replacements));
+		Assertions.assertEquals("{}", rewriter.read("{\"cx_id\":\"PF-1\",\"uid\":\"PF-1\"}").rewrite(replacements));
+
+		String document = "{\"cx_type\":\"PF\",\"cx_id\":\"PF-1\",\"message\":\"m\",\"uid\":\"PF-1\"}";
+		ObjectMapper mapper = new ObjectMapper();
+		Assertions.assertEquals(mapper.readTree(new JsonUtilities().replaceValues(document, replacements)),
+				mapper.readTree(rewriter.read(document).rewrite(replacements)));
+	}
+
+	@Test
+	@DisplayName("The scalar values of the fields are read, the nested ones are ignored")
+	void testRead_whenProvidedDocument_returnsTopLevelScalarValues() throws IOException {
+		JsonFieldRewriter.Document document = rewriter.read(
+				"{\"nested\":{\"cx_type\":\"PA\"},\"cx_type\":\"PF\",\"n\":42,\"uid\":null}");
+
+		Assertions.assertEquals("PF", document.getValue("cx_type"));
+		Assertions.assertEquals("42", document.getValue("n"));
+		Assertions.assertNull(document.getValue("uid"));
+		Assertions.assertNull(document.getValue("nested"));
+		Assertions.assertNull(document.getValue("cx_id"));
+	}
+
+	@Test
+	@DisplayName("The rewritten document has the same content as the one rewritten by JsonUtilities")
+	void testReplaceValues_whenComparedWithJsonUtilities_returnsSameContent() throws IOException {
+		String document = "{\"@timestamp\":\"2023-01-01T00:00:00Z\",\"cx_type\":\"PF\",\"cx_id\":\"PF-1\","
+				+ "\"uid\":\"PF-1\",\"message\":\"caffè €\"}";
+		Map<String, String> replacements = new HashMap<>();
+		replacements.put("cx_id", "RSSMRA80A01H501U");
+		replacements.put("uid", "RSSMRA80A01H501U");
+
+		ObjectMapper mapper = new ObjectMapper();
+		JsonNode expected = mapper.readTree(new JsonUtilities().replaceValues(document, replacements));
+		Assertions.assertEquals(expected, mapper.readTree(JsonFieldRewriter.replaceValues(document, replacements)));
+	}
+
+	@Test
+	@DisplayName("A document which is not a JSON object is rejected")
+	void testRead_whenProvidedInvalidDocument_throwsIOException() {
+		Assertions.assertThrows(IOException.class, () -> rewriter.read("[1,2]"));
+		Assertions.assertThrows(IOException.class, () -> rewriter.read("{\"cx_id\":\"PF-1\""));
+	}
+}
@@ -0,0 +1,119 @@
+package it.gov.pagopa.logextractor.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal harness for the microbenchmarks of the test tree, run with <code>mvn test -Pbenchmark</code>.
+ * Like JMH, the operations are first run for some warmup rounds, whose timings are discarded, and then for some
+ * measurement rounds, each one reporting its own time per operation. The operations being compared are run in turn
+ * within every round, so that a change of the machine load affects all of them, and their results are consumed so
+ * that the JIT cannot remove them.
+ * */
+public class Microbenchmark {
+
+	/**
+	 * Operation being measured
+	 * */
+	@FunctionalInterface
+	public interface Operation {
+
+		/**
+		 * @return the result of the operation, consumed by the harness
+		 * @throws Exception in case of an error, failing the benchmark
+		 */
+		Object run() throws Exception;
+	}
+
+	private final String name;
+	private final Map<String, Operation> operations = new LinkedHashMap<>();
+	private int warmupRounds = 5;
+	private int measurementRounds = 10;
+	private int iterations = 10_000;
+	private volatile long sink;
+
+	/**
+	 * @param name the name of the benchmark, printed with its results
+	 * */
+	public Microbenchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @param warmupRounds the number of rounds run before measuring
+	 * @param measurementRounds the number of rounds measured
+	 * @param iterations the number of times every operation is run in a round
+	 * @return this benchmark
+	 * */
+	public Microbenchmark rounds(int warmupRounds, int measurementRounds, int iterations) {
+		this.warmupRounds = warmupRounds;
+		this.measurementRounds = Math.max(1, measurementRounds);
+		this.iterations = Math.max(1, iterations);
+		return this;
+	}
+
+	/**
+	 * @param label the label of the operation in the results
+	 * @param operation the operation to be measured
+	 * @return this benchmark
+	 * */
+	public Microbenchmark add(String label, Operation operation) {
+		operations.put(label, operation);
+		return this;
+	}
+
+	/**
+	 * Runs the benchmark and prints the average time per operation of every operation, with its standard deviation
+	 * @return the average time per operation in nanoseconds, by label
+	 * @throws Exception if an operation fails
+	 * */
+	public Map<String, Double> run() throws Exception {
+		for (int round = 0; round < warmupRounds; round++) {
+			for (Operation operation : operations.values()) {
+				measure(operation);
+			}
+		}
+		Map<String, List<Double>> samples = new LinkedHashMap<>();
+		for (int round = 0; round < measurementRounds; round++) {
+			for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+				samples.computeIfAbsent(operation.getKey(), label -> new ArrayList<>()).add(measure(operation.getValue()));
+			}
+		}
+		Map<String, Double> averages = new LinkedHashMap<>();
+		System.out.printf("%s, %d rounds of %d operations (%d)%n", name, measurementRounds, iterations, sink);
+		for (Map.Entry<String, List<Double>> sample : samples.entrySet()) {
+			double average = sample.getValue().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+			double variance = sample.getValue().stream().mapToDouble(value -> (value - average) * (value - average))
+					.average().orElse(0);
+			averages.put(sample.getKey(), average);
+			System.out.printf("  %-40s %12.1f +/- %.1f ns/op%n", sample.getKey(), average, Math.sqrt(variance));
+		}
+		return averages;
+	}
+
+	private double measure(Operation operation) throws Exception {
+		long consumed = 0;
+		long start = System.nanoTime();
+		for (int iteration = 0; iteration < iterations; iteration++) {
+			consumed += consume(operation.run());
+		}
+		double nanosPerOperation = (double) (System.nanoTime() - start) / iterations;
+		sink += consumed;
+		return nanosPerOperation;
+	}
+
+	private static long consume(Object result) {
+		if (result instanceof byte[]) {
+			return ((byte[]) result).length;
+		}
+		if (result instanceof CharSequence) {
+			return ((CharSequence) result).length();
+		}
+		if (result instanceof Number) {
+			return ((Number) result).longValue();
+		}
+		return System.identityHashCode(result);
+	}
+}
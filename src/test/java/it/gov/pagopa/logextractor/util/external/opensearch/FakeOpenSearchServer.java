@@ -0,0 +1,351 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+/**
+ * Embeddable stand-in for the Opensearch endpoints used by {@link OpenSearchApiHandler}, serving a
+ * {@link SyntheticOpenSearchCorpus} on a local port, so that the real handler can be driven offline by tests and
+ * benchmarks at any scale. It implements:
+ * <ul>
+ * <li><code>/{index}/_search?scroll=</code>, with <code>slice</code>, and <code>/_search/scroll</code>, GET, POST
+ * and DELETE</li>
+ * <li><code>/{index}/_search/point_in_time</code>, <code>/_search</code> with <code>pit</code> and
+ * <code>search_after</code>, and <code>DELETE /_search/point_in_time</code></li>
+ * <li><code>/{index}/_search</code> with <code>search_after</code> and <code>/{index}/_msearch</code></li>
+ * <li><code>/{index}/_count</code></li>
+ * </ul>
+ * Every document matches the match clauses of the queries, only the <code>@timestamp</code> range is applied.
+ * Slices split the documents by position and every hit has the sort values <code>[@timestamp, _id]</code>.
+ * The next requests can be made to fail with a given status to exercise the retries.
+ * */
+class FakeOpenSearchServer implements AutoCloseable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final int DEFAULT_SIZE = 10;
+
+	private final SyntheticOpenSearchCorpus corpus;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, Cursor> scrolls = new ConcurrentHashMap<>();
+	private final Set<String> pits = ConcurrentHashMap.newKeySet();
+	private final AtomicLong contextIds = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong documentsServed = new AtomicLong();
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile int failureStatus;
+
+	/**
+	 * @param corpus The corpus to serve
+	 * @param threads The number of threads serving the requests
+	 * @throws IOException if the server cannot be bound to a local port
+	 * */
+	FakeOpenSearchServer(SyntheticOpenSearchCorpus corpus, int threads) throws IOException {
+		this.corpus = corpus;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * @return the search url of the input index, as configured in external.opensearch.search.url
+	 * */
+	String getSearchUrl(String index) {
+		return getBaseUrl() + "/" + index + OpensearchConstants.OS_SEARCH_PATH;
+	}
+
+	/**
+	 * @return the scroll url, as configured in external.opensearch.search.followup.url
+	 * */
+	String getScrollUrl() {
+		return getBaseUrl() + OpensearchConstants.OS_SEARCH_PATH + OpensearchConstants.OS_SCROLL_PATH;
+	}
+
+	String getBaseUrl() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Makes the next requests fail with the input status
+	 * @param count The number of requests to fail
+	 * @param status The HTTP status of the failures
+	 * */
+	void failNextRequests(int count, int status) {
+		failureStatus = status;
+		failures.set(count);
+	}
+
+	long getRequestCount() {
+		return requests.get();
+	}
+
+	long getDocumentsServed() {
+		return documentsServed.get();
+	}
+
+	int getOpenScrolls() {
+		return scrolls.size();
+	}
+
+	int getOpenPits() {
+		return pits.size();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try (HttpExchange closing = exchange) {
+			String path = exchange.getRequestURI().getPath();
+			String method = exchange.getRequestMethod();
+			byte[] body = exchange.getRequestBody().readAllBytes();
+			JsonNode request = body.length == 0 ? MissingNode.getInstance() : MAPPER.readTree(body);
+			if (failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+				sendError(exchange, failureStatus, "injected_failure");
+			} else if (path.endsWith(OpensearchConstants.OS_SEARCH_PATH + OpensearchConstants.OS_SCROLL_PATH)) {
+				handleScroll(exchange, method, request);
+			} else if (path.endsWith(OpensearchConstants.OS_SEARCH_PATH + OpensearchConstants.OS_POINT_IN_TIME_PATH)) {
+				handlePointInTime(exchange, method, request);
+			} else if (path.endsWith(OpensearchConstants.OS_MULTI_SEARCH_PATH)) {
+				handleMultiSearch(exchange, body);
+			} else if (path.endsWith(OpensearchConstants.OS_COUNT_PATH)) {
+				Cursor cursor = new Cursor(request, 0);
+				sendJson(exchange, "{\"count\":" + cursor.countMatching() + "}");
+			} else if (path.endsWith(OpensearchConstants.OS_SEARCH_PATH)) {
+				handleSearch(exchange, request);
+			} else {
+				sendError(exchange, 404, "no_handler_found_exception");
+			}
+		} catch (RuntimeException e) {
+			sendError(exchange, 400, "parsing_exception");
+		}
+	}
+
+	private void handleSearch(HttpExchange exchange, JsonNode request) throws IOException {
+		int size = request.path("size").asInt(DEFAULT_SIZE);
+		JsonNode pit = request.path("pit");
+		if (pit.isObject()) {
+			String pitId = pit.path("id").asText();
+			if (!pits.contains(pitId)) {
+				sendError(exchange, 404, "search_context_missing_exception");
+				return;
+			}
+			Cursor cursor = new Cursor(request, 0);
+			cursor.searchAfter(request.path("search_after"));
+			sendPage(exchange, cursor, size, "\"pit_id\":" + MAPPER.writeValueAsString(pitId) + ",");
+			return;
+		}
+		Cursor cursor = new Cursor(request, size);
+		cursor.searchAfter(request.path("search_after"));
+		String scrollId = null;
+		if (exchange.getRequestURI().getRawQuery() != null
+				&& exchange.getRequestURI().getRawQuery().contains(OpensearchConstants.OS_SCROLL_PARAMETER + "=")) {
+			scrollId = "scroll-" + contextIds.incrementAndGet();
+			scrolls.put(scrollId, cursor);
+		}
+		sendPage(exchange, cursor, size, scrollId == null ? ""
+				: "\"" + OpensearchConstants.OS_RESPONSE_SCROLL_ID_FIELD + "\":\"" + scrollId + "\",");
+	}
+
+	private void handleScroll(HttpExchange exchange, String method, JsonNode request) throws IOException {
+		if ("DELETE".equals(method)) {
+			int freed = 0;
+			for (JsonNode scrollId : request.path(OpensearchConstants.OS_SCROLL_ID_FIELD)) {
+				freed += scrolls.remove(scrollId.asText()) != null ? 1 : 0;
+			}
+			sendJson(exchange, "{\"succeeded\":true,\"num_freed\":" + freed + "}");
+			return;
+		}
+		String scrollId = request.path(OpensearchConstants.OS_SCROLL_ID_FIELD).asText();
+		Cursor cursor = scrolls.get(scrollId);
+		if (cursor == null) {
+			sendError(exchange, 404, "search_context_missing_exception");
+			return;
+		}
+		synchronized (cursor) {
+			sendPage(exchange, cursor, cursor.pageSize,
+					"\"" + OpensearchConstants.OS_RESPONSE_SCROLL_ID_FIELD + "\":\"" + scrollId + "\",");
+		}
+	}
+
+	private void handlePointInTime(HttpExchange exchange, String method, JsonNode request) throws IOException {
+		if ("DELETE".equals(method)) {
+			for (JsonNode pitId : request.path(OpensearchConstants.OS_PIT_ID_FIELD)) {
+				pits.remove(pitId.asText());
+			}
+			sendJson(exchange, "{\"pits\":[]}");
+			return;
+		}
+		String pitId = "pit-" + contextIds.incrementAndGet();
+		pits.add(pitId);
+		sendJson(exchange, "{\"" + OpensearchConstants.OS_PIT_ID_FIELD + "\":\"" + pitId + "\",\"creation_time\":"
+				+ System.currentTimeMillis() + "}");
+	}
+
+	private void handleMultiSearch(HttpExchange exchange, byte[] body) throws IOException {
+		String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, 0);
+		try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 65536)) {
+			out.write("{\"took\":1,\"responses\":[".getBytes(StandardCharsets.UTF_8));
+			for (int line = 1; line < lines.length; line += 2) {
+				JsonNode request = MAPPER.readTree(lines[line]);
+				int size = request.path("size").asInt(DEFAULT_SIZE);
+				Cursor cursor = new Cursor(request, size);
+				cursor.searchAfter(request.path("search_after"));
+				out.write(line > 1 ? ',' : ' ');
+				writePage(out, cursor, size, "\"status\":200,");
+			}
+			out.write("]}".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private void sendPage(HttpExchange exchange, Cursor cursor, int size, String context) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, 0);
+		try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 65536)) {
+			writePage(out, cursor, size, context);
+		}
+	}
+
+	private void writePage(OutputStream out, Cursor cursor, int size, String context) throws IOException {
+		out.write(("{" + context + "\"took\":1,\"timed_out\":false,\"hits\":{\"total\":{\"value\":"
+				+ cursor.countMatching() + ",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[")
+				.getBytes(StandardCharsets.UTF_8));
+		int written = 0;
+		int document;
+		while (written < size && (document = cursor.next()) >= 0) {
+			String id = SyntheticOpenSearchCorpus.id(document);
+			out.write(((written > 0 ? "," : "") + "{\"_index\":\"synthetic\",\"_id\":\"" + id
+					+ "\",\"_score\":null,\"_source\":").getBytes(StandardCharsets.UTF_8));
+			corpus.writeSource(document, out);
+			out.write((",\"sort\":[" + corpus.timestamp(document) + ",\"" + id + "\"]}")
+					.getBytes(StandardCharsets.UTF_8));
+			written++;
+		}
+		out.write("]}}".getBytes(StandardCharsets.UTF_8));
+		documentsServed.addAndGet(written);
+	}
+
+	private static void sendJson(HttpExchange exchange, String json) throws IOException {
+		send(exchange, 200, json);
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String type) throws IOException {
+		send(exchange, status, "{\"error\":{\"type\":\"" + type + "\"},\"status\":" + status + "}");
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] response = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, response.length);
+		exchange.getResponseBody().write(response);
+	}
+
+	/**
+	 * Position in the documents matching a query, within its range and slice
+	 * */
+	private class Cursor {
+		private final int from;
+		private final int to;
+		private final int sliceId;
+		private final int sliceMax;
+		private final int pageSize;
+		private int next;
+
+		Cursor(JsonNode request, int pageSize) {
+			JsonNode range = findRange(request.path("query"));
+			this.from = range.has("gte") ? corpus.firstAtOrAfter(parseTime(range.get("gte").asText(), false)) : 0;
+			if (range.has("lt")) {
+				this.to = corpus.firstAtOrAfter(parseTime(range.get("lt").asText(), false));
+			} else if (range.has("lte")) {
+				this.to = corpus.firstAtOrAfter(parseTime(range.get("lte").asText(), true) + 1);
+			} else {
+				this.to = corpus.size();
+			}
+			this.sliceId = request.path("slice").path("id").asInt(0);
+			this.sliceMax = Math.max(1, request.path("slice").path("max").asInt(1));
+			this.pageSize = pageSize;
+			this.next = from;
+		}
+
+		void searchAfter(JsonNode sortValues) {
+			if (sortValues.size() > 1) {
+				next = Math.max(from, Integer.parseInt(sortValues.get(1).asText()) + 1);
+			} else if (sortValues.size() == 1) {
+				next = Math.max(from, corpus.firstAtOrAfter(sortValues.get(0).asLong() + 1));
+			}
+		}
+
+		int next() {
+			while (next < to && next % sliceMax != sliceId) {
+				next++;
+			}
+			return next < to ? next++ : -1;
+		}
+
+		long countMatching() {
+			int total = Math.max(0, to - from);
+			int matching = total / sliceMax;
+			for (int document = from + matching * sliceMax; document < to; document++) {
+				matching += document % sliceMax == sliceId ? 1 : 0;
+			}
+			return matching;
+		}
+
+		private JsonNode findRange(JsonNode node) {
+			JsonNode range = node.path("range").path(OpensearchConstants.OS_TIMESTAMP_FIELD);
+			if (range.isObject()) {
+				return range;
+			}
+			for (JsonNode child : node) {
+				JsonNode found = findRange(child);
+				if (!found.isMissingNode()) {
+					return found;
+				}
+			}
+			return MissingNode.getInstance();
+		}
+
+		/**
+		 * Parses a range bound, rounding a date up to the end of the day when <code>roundUp</code> is set, as
+		 * Opensearch does for <code>lte</code>
+		 * */
+		private long parseTime(String value, boolean roundUp) {
+			if (value.length() == 10) {
+				LocalDate date = LocalDate.parse(value);
+				return roundUp ? date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() - 1
+						: date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+			}
+			return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.gov.pagopa.logextractor.config.BeanConfiguration;
+import it.gov.pagopa.logextractor.config.ExtractionExecutorConfiguration;
+import it.gov.pagopa.logextractor.util.ExtractionMetrics;
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+class OpenSearchApiHandlerTest {
+
+	private static final LocalDate DAY = LocalDate.parse("2023-03-01");
+	private static FakeOpenSearchServer server;
+	private static RestTemplate client;
+	private static ThreadPoolTaskExecutor sliceExecutor;
+
+	@BeforeAll
+	static void startServer() throws IOException {
+		server = new FakeOpenSearchServer(new SyntheticOpenSearchCorpus(42, 25000, 300,
+				Instant.parse("2023-02-28T20:00:00Z"), Duration.ofSeconds(1)), 8);
+		client = new BeanConfiguration().openSearchRestTemplate(20, 20, 5000, 30000, true);
+		sliceExecutor = new ExtractionExecutorConfiguration().openSearchSliceExecutor(1, 0, 3);
+		sliceExecutor.initialize();
+	}
+
+	@AfterAll
+	static void stopServer() {
+		sliceExecutor.shutdown();
+		server.close();
+	}
+
+	@Test
+	@DisplayName("The streamed scroll extracts every document of the range once, retrying a throttled search")
+	void testGetAnonymizedLogsByTraceId_whenScrolled_returnsDocumentsOfRange() {
+		OpenSearchApiHandler handler = newHandler();
+		handler.setStreamingEnabled(true);
+		handler.setRetryPolicy(new OpenSearchRetryPolicy(3, 1, 1));
+		server.failNextRequests(1, 429);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		int documents = handler.getAnonymizedLogsByTraceId("Root=1-test", DAY, DAY, out);
+
+		Assertions.assertEquals(10600, documents);
+		String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		Assertions.assertEquals(10600, lines.length);
+		Assertions.assertTrue(lines[0].startsWith("{\"@timestamp\":\"2023-03-01T00:00:00Z\""));
+		Assertions.assertTrue(lines[10599].startsWith("{\"@timestamp\":\"2023-03-01T02:56:39Z\""));
+		Assertions.assertEquals(0, server.getOpenScrolls());
+	}
+
+	@Test
+	@DisplayName("Sliced scroll, time windows, point in time and prefetch write the same output of the plain scroll")
+	void testGetAnonymizedLogsByTraceId_whenPaginationModesChange_returnsSameOutput() {
+		LocalDate from = DAY.minusDays(1);
+		OpenSearchApiHandler scroll = newHandler();
+		scroll.setStreamingEnabled(true);
+		OpenSearchApiHandler sliced = newHandler();
+		sliced.setScrollSlices(3);
+		sliced.setSliceExecutor(sliceExecutor);
+		OpenSearchApiHandler windows = newHandler();
+		windows.setStreamingEnabled(true);
+		windows.setTimeWindowsEnabled(true);
+		windows.setTimeWindowMaxDocuments(4000);
+		windows.setTimeWindowMinMinutes(10);
+		OpenSearchApiHandler boundedWindows = newHandler();
+		boundedWindows.setStreamingEnabled(true);
+		boundedWindows.setTimeWindowsEnabled(true);
+		boundedWindows.setTimeWindowMaxDocuments(4000);
+		boundedWindows.setTimeWindowMinMinutes(10);
+		boundedWindows.setTimeWindowBufferBytes(1);
+		OpenSearchApiHandler pit = newHandler();
+		pit.setPitEnabled(true);
+		OpenSearchApiHandler prefetch = newHandler();
+		prefetch.setPrefetchPages(2);
+
+		String expected = extract(scroll, from);
+		Assertions.assertEquals(25000, expected.split("\n").length);
+		Assertions.assertEquals(expected, extract(sliced, from));
+		Assertions.assertEquals(expected, extract(windows, from));
+		Assertions.assertEquals(expected, extract(boundedWindows, from));
+		Assertions.assertEquals(expected, extract(pit, from));
+		Assertions.assertEquals(expected, extract(prefetch, from));
+		Assertions.assertEquals(0, server.getOpenPits());
+	}
+
+	@Test
+	@DisplayName("A failed slice ends the sliced scroll extraction with -1")
+	void testGetAnonymizedLogsByTraceId_whenSliceFails_returnsMinusOne() {
+		OpenSearchApiHandler sliced = newHandler();
+		sliced.setScrollSlices(3);
+		sliced.setSliceExecutor(sliceExecutor);
+		server.failNextRequests(1, 500);
+
+		Assertions.assertEquals(-1, sliced.getAnonymizedLogsByTraceId("Root=1-test", DAY, DAY, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	@DisplayName("The stages of a streamed extraction are recorded in the metrics")
+	void testGetAnonymizedLogsByTraceId_whenMetered_recordsStages() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		OpenSearchApiHandler handler = newHandler();
+		handler.setStreamingEnabled(true);
+		handler.setMetrics(new ExtractionMetrics(registry));
+		handler.setJobType(OpenSearchSourceProfiles.TRACE_USE_CASE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		handler.getAnonymizedLogsByTraceId("Root=1-test", DAY, DAY, out);
+
+		Assertions.assertEquals(1, registry.get("logextractor.opensearch.query.build").timer().count());
+		Assertions.assertEquals(2, registry.get("logextractor.opensearch.page.fetch").timer().count());
+		Assertions.assertEquals(2, registry.get("logextractor.opensearch.page.parse").timer().count());
+		Assertions.assertEquals(10600, registry.get("logextractor.opensearch.page.documents").summary().totalAmount());
+		Assertions.assertEquals(10600, registry.get("logextractor.extraction.documents")
+				.tag("type", OpenSearchSourceProfiles.TRACE_USE_CASE).counter().count());
+		Assertions.assertEquals(out.size(), registry.get("logextractor.extraction.bytes").counter().count());
+		Assertions.assertTrue(registry.get("logextractor.archive.entry.write").timer().totalTime(TimeUnit.NANOSECONDS) > 0);
+	}
+
+	@Test
+	@DisplayName("The identifiers are written in order, whether their first pages fit in memory or are read again")
+	void testGetAnonymizedLogsByIdentifiers_whenFirstPagesDoNotFit_returnsSameOutput() {
+		OpenSearchApiHandler scroll = newHandler();
+		scroll.setStreamingEnabled(true);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		scroll.getAnonymizedLogsByTraceId("Root=1-test", DAY, DAY, expected);
+		OpenSearchApiHandler buffered = newHandler();
+		OpenSearchApiHandler unbuffered = newHandler();
+		unbuffered.setMultiSearchBufferBytes(1);
+
+		for (OpenSearchApiHandler handler : Arrays.asList(buffered, unbuffered)) {
+			Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+			int documents = handler.getAnonymizedLogsByIdentifiers(OpensearchConstants.OS_TRACE_ID_FIELD,
+					Arrays.asList("Root=1-a", "Root=1-b"), DAY, DAY, new OpenSearchIdentifierOutput() {
+						@Override
+						public OutputStream open(String identifier) {
+							Assertions.assertTrue(outputs.values().stream().allMatch(out -> out.size() > 0));
+							return outputs.computeIfAbsent(identifier, key -> new ByteArrayOutputStream());
+						}
+
+						@Override
+						public void close(String identifier, int documentCount) {
+							Assertions.assertEquals(10600, documentCount);
+						}
+					});
+
+			Assertions.assertEquals(21200, documents);
+			Assertions.assertEquals(Arrays.asList("Root=1-a", "Root=1-b"), new ArrayList<>(outputs.keySet()));
+			for (ByteArrayOutputStream out : outputs.values()) {
+				Assertions.assertEquals(expected.toString(StandardCharsets.UTF_8), out.toString(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("The reactive scroll writes the same output of the streamed scroll, never on the client threads")
+	void testGetAnonymizedLogsAsync_whenReactive_writesOnTheExtractionWriter() throws Exception {
+		OpenSearchApiHandler scroll = newHandler();
+		scroll.setStreamingEnabled(true);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		scroll.getAnonymizedLogsByTraceId("Root=1-test", DAY, DAY, expected);
+		OpenSearchReactiveClient reactiveClient = new OpenSearchReactiveClient(2, 2, 5000, 30000);
+		OpenSearchApiHandler reactive = newHandler();
+		reactive.setReactiveClient(reactiveClient);
+		Set<String> writerThreads = Collections.synchronizedSet(new HashSet<>());
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				writerThreads.add(Thread.currentThread().getName());
+				super.write(b, off, len);
+			}
+		};
+
+		try {
+			int documents = reactive.getAnonymizedLogsAsync(OpensearchConstants.OS_TRACE_ID_FIELD, "Root=1-test", DAY,
+					DAY, out).get(30, TimeUnit.SECONDS);
+
+			Assertions.assertEquals(10600, documents);
+			Assertions.assertEquals(expected.toString(StandardCharsets.UTF_8), out.toString(StandardCharsets.UTF_8));
+			Assertions.assertFalse(writerThreads.isEmpty());
+			Assertions.assertTrue(writerThreads.stream().allMatch(name -> name.startsWith("opensearch-writer-")));
+		} finally {
+			reactiveClient.shutdown();
+		}
+	}
+
+	@Test
+	@DisplayName("The point in time extraction does not use the reactive scroll and runs on the calling thread")
+	void testGetAnonymizedLogsAsync_whenPitEnabled_extractsOnCallingThread() throws Exception {
+		OpenSearchReactiveClient reactiveClient = new OpenSearchReactiveClient(1, 1, 5000, 30000);
+		OpenSearchApiHandler pit = newHandler();
+		pit.setPitEnabled(true);
+		pit.setReactiveClient(reactiveClient);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try {
+			CompletableFuture<Integer> documents = pit.getAnonymizedLogsAsync(OpensearchConstants.OS_TRACE_ID_FIELD,
+					"Root=1-test", DAY, DAY, out);
+
+			Assertions.assertTrue(documents.isDone());
+			Assertions.assertEquals(10600, documents.get());
+		} finally {
+			reactiveClient.shutdown();
+		}
+	}
+
+	private static String extract(OpenSearchApiHandler handler, LocalDate from) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assertions.assertEquals(25000, handler.getAnonymizedLogsByTraceId("Root=1-test", from, DAY, out));
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private static OpenSearchApiHandler newHandler() {
+		return new OpenSearchApiHandler(client, server.getSearchUrl("pn-logs"), server.getScrollUrl(),
+				"user", "password", new ArrayList<>());
+	}
+}
@@ -0,0 +1,62 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchAsyncPageParserTest {
+
+	private static final String RESPONSE = "{\"_scroll_id\":\"scroll-1\",\"took\":3,\"_shards\":{\"total\":1},"
+			+ "\"hits\":{\"total\":{\"value\":3},\"max_score\":null,\"hits\":["
+			+ "{\"_index\":\"pn-logs\",\"_id\":\"1\",\"_source\":{\"@timestamp\":\"2023-01-10T12:10:15.300Z\",\"uid\":\"abc\",\"n\":1.50,\"tags\":[\"a\",{\"b\":null}]},\"sort\":[1,\"x\"]},"
+			+ "{\"_index\":\"pn-logs\",\"_id\":\"2\",\"sort\":[2]},"
+			+ "{\"_index\":\"pn-logs\",\"_id\":\"3\",\"_source\":{\"message\":\"caff\\u00e8 \\\"quoted\\\" è\"},\"sort\":[3,\"z\"]}]}}";
+
+	@Test
+	@DisplayName("A response pushed in small chunks yields the same documents of the blocking parser")
+	void testFeed_whenProvidedChunkedResponse_returnsSameDocumentsOfStreamParser() throws IOException {
+		byte[] response = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		List<String> expected = new ArrayList<>();
+		OpenSearchResponsePage expectedPage = new OpenSearchResponseStreamParser().parse(new ByteArrayInputStream(response),
+				(document, length, sortValues) -> expected.add(new String(document, 0, length, StandardCharsets.UTF_8)));
+		List<String> documents = new ArrayList<>();
+		OpenSearchAsyncPageParser parser = new OpenSearchAsyncPageParser(
+				(document, length, sortValues) -> documents.add(new String(document, 0, length, StandardCharsets.UTF_8)));
+
+		byte[] chunk = new byte[3];
+		for (int offset = 0; offset < response.length; offset += chunk.length) {
+			int length = Math.min(chunk.length, response.length - offset);
+			System.arraycopy(response, offset, chunk, 0, length);
+			parser.feed(chunk, 0, length);
+		}
+		OpenSearchResponsePage page = parser.finish();
+
+		Assertions.assertEquals(expected, documents);
+		Assertions.assertEquals("scroll-1", page.getScrollId());
+		Assertions.assertEquals(expectedPage.getDocumentCount(), page.getDocumentCount());
+		Assertions.assertEquals(3L, ((Number) page.getLastSortValues().get(0)).longValue());
+		Assertions.assertEquals("z", page.getLastSortValues().get(1));
+	}
+
+	@Test
+	@DisplayName("An error response or a truncated body fails the page")
+	void testFinish_whenProvidedErrorOrTruncatedResponse_throwsException() throws IOException {
+		byte[] error = "{\"error\":{\"type\":\"search_phase_execution_exception\"},\"status\":400}".getBytes(StandardCharsets.UTF_8);
+		OpenSearchAsyncPageParser errorParser = new OpenSearchAsyncPageParser((document, length, sortValues) -> {});
+		Assertions.assertThrows(IOException.class, () -> {
+			errorParser.feed(error, 0, error.length);
+			errorParser.finish();
+		});
+
+		byte[] truncated = RESPONSE.substring(0, 80).getBytes(StandardCharsets.UTF_8);
+		OpenSearchAsyncPageParser truncatedParser = new OpenSearchAsyncPageParser((document, length, sortValues) -> {});
+		truncatedParser.feed(truncated, 0, truncated.length);
+		Assertions.assertThrows(IOException.class, truncatedParser::finish);
+	}
+}
@@ -0,0 +1,80 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.gov.pagopa.logextractor.exception.CustomException;
+
+class OpenSearchContextManagerTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private OpenSearchContextManager manager(int maxConcurrentContexts) {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("meterRegistry", meterRegistry);
+		return new OpenSearchContextManager(maxConcurrentContexts, 0, beanFactory.getBeanProvider(MeterRegistry.class));
+	}
+
+	@Test
+	@DisplayName("Closing the lease clears the scrolls and the point in time still open")
+	void testClose_whenContextsTracked_clearsContextsAndUpdatesGauge() {
+		OpenSearchContextManager manager = manager(5);
+		OpenSearchApiHandler handler = Mockito.mock(OpenSearchApiHandler.class);
+		OpenSearchContextLease lease = manager.acquire(2, handler);
+		lease.trackScroll(null, "scroll-1");
+		lease.trackScroll("scroll-1", "scroll-2");
+		lease.trackScroll(null, "scroll-3");
+		lease.trackPit(null, "pit-1");
+
+		Assertions.assertEquals(3, meterRegistry.get(OpenSearchContextManager.OPEN_CONTEXTS_METRIC).gauge().value());
+		lease.close();
+		lease.close();
+
+		Mockito.verify(handler).clearScrolls(Arrays.asList("scroll-2", "scroll-3"));
+		Mockito.verify(handler).closePit("pit-1");
+		Assertions.assertEquals(0, manager.getOpenContexts());
+	}
+
+	@Test
+	@DisplayName("No lease is granted while the cap is reached")
+	void testAcquire_whenCapReached_throwsCustomException() {
+		OpenSearchContextManager manager = manager(2);
+		OpenSearchApiHandler handler = Mockito.mock(OpenSearchApiHandler.class);
+		OpenSearchContextLease lease = manager.acquire(2, handler);
+
+		CustomException exception = Assertions.assertThrows(CustomException.class, () -> manager.acquire(1, handler));
+		Assertions.assertEquals(503, exception.getCode());
+		lease.close();
+		Assertions.assertDoesNotThrow(() -> manager.acquire(1, handler).close());
+	}
+
+	@Test
+	@DisplayName("A finished scroll is cleared at once and the room no longer needed is given back")
+	void testFinishScroll_whenSliceEnds_clearsScrollAndReleasesRoom() {
+		OpenSearchContextManager manager = manager(3);
+		OpenSearchApiHandler handler = Mockito.mock(OpenSearchApiHandler.class);
+		OpenSearchContextLease lease = manager.acquire(3, handler);
+		lease.trackScroll(null, "scroll-1");
+		lease.trackScroll(null, "scroll-2");
+
+		lease.finishScroll("scroll-1");
+		lease.retainPermits(1);
+
+		Mockito.verify(handler).clearScrolls(Collections.singletonList("scroll-1"));
+		Assertions.assertEquals(1, manager.getOpenContexts());
+		OpenSearchContextLease other = Assertions.assertDoesNotThrow(() -> manager.acquire(2, handler));
+		lease.close();
+		Mockito.verify(handler).clearScrolls(Collections.singletonList("scroll-2"));
+		Assertions.assertEquals(0, manager.getOpenContexts());
+		other.close();
+		Assertions.assertDoesNotThrow(() -> manager.acquire(3, handler).close());
+	}
+}
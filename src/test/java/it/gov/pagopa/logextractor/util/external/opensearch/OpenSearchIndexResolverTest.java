@@ -0,0 +1,54 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchIndexResolverTest {
+
+	private static final String SEARCH_URL = "https://opensearch.local:9200/pn-logs*/_search";
+	private static final Clock CLOCK = Clock.fixed(Instant.parse("2023-03-10T10:00:00Z"), ZoneOffset.UTC);
+
+	@Test
+	@DisplayName("A range is resolved to the existing daily indexes it overlaps, with the margin days")
+	void testResolve_whenProvidedDailyPattern_returnsExistingIndexes() {
+		AtomicInteger listings = new AtomicInteger();
+		Function<String, List<String>> lister = expression -> {
+			listings.incrementAndGet();
+			Assertions.assertEquals("pn-logs-*", expression);
+			return Arrays.asList("pn-logs-2023.03.01", "pn-logs-2023.03.02", "pn-logs-2023.03.03", "pn-logs-2023.03.05");
+		};
+		OpenSearchIndexResolver resolver = new OpenSearchIndexResolver("pn-logs-{yyyy.MM.dd}", 300, 60, 1, CLOCK);
+
+		String url = resolver.resolve(SEARCH_URL, new OpenSearchRangeQueryData("@timestamp", "2023-03-02", "2023-03-03"), lister);
+		Assertions.assertEquals(
+				"https://opensearch.local:9200/pn-logs-2023.03.01,pn-logs-2023.03.02,pn-logs-2023.03.03/_search", url);
+		resolver.resolve(SEARCH_URL, new OpenSearchRangeQueryData("@timestamp", "2023-03-05", "2023-03-05"), lister);
+		Assertions.assertEquals(1, listings.get());
+	}
+
+	@Test
+	@DisplayName("The configured search url is kept when the indexes cannot be resolved")
+	void testResolve_whenIndexesNotResolved_returnsConfiguredUrl() {
+		Function<String, List<String>> lister = expression -> Arrays.asList("pn-logs-2023.03");
+		OpenSearchIndexResolver monthly = new OpenSearchIndexResolver("pn-logs-{yyyy.MM}", 300, 2, 0, CLOCK);
+		OpenSearchIndexResolver unconfigured = new OpenSearchIndexResolver("", 300, 60, 0, CLOCK);
+
+		Assertions.assertEquals("https://opensearch.local:9200/pn-logs-2023.03/_search", monthly.resolve(SEARCH_URL,
+				new OpenSearchRangeQueryData("@timestamp", "2023-03-01", "2023-03-31"), lister));
+		Assertions.assertEquals(SEARCH_URL, monthly.resolve(SEARCH_URL,
+				new OpenSearchRangeQueryData("@timestamp", "2023-01-01", "2023-03-31"), lister));
+		Assertions.assertEquals(SEARCH_URL, monthly.resolve(SEARCH_URL,
+				new OpenSearchRangeQueryData("@timestamp", "2022-12-01", "2022-12-31"), lister));
+		Assertions.assertEquals(SEARCH_URL, unconfigured.resolve(SEARCH_URL,
+				new OpenSearchRangeQueryData("@timestamp", "2023-03-01", "2023-03-31"), lister));
+	}
+}
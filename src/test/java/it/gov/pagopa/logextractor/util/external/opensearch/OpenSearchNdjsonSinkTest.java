@@ -0,0 +1,44 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchNdjsonSinkTest {
+
+	@Test
+	@DisplayName("Documents are written one per line through the buffer and counted")
+	void testWriteLine_whenProvidedDocuments_writesLinesAndCounts() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		String large = "{\"message\":\"" + "x".repeat(3000) + "\"}";
+		try (OpenSearchNdjsonSink sink = new OpenSearchNdjsonSink(out, 1024)) {
+			byte[] first = "--{\"uid\":\"abc\"}--".getBytes(StandardCharsets.UTF_8);
+			sink.writeLine(first, 2, first.length - 4);
+			byte[] second = large.getBytes(StandardCharsets.UTF_8);
+			sink.writeLine(second, 0, second.length);
+			Assertions.assertEquals(2, sink.getLineCount());
+			Assertions.assertEquals(first.length - 4 + second.length + 2, sink.getByteCount());
+		}
+		Assertions.assertEquals("{\"uid\":\"abc\"}\n" + large + "\n", out.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	@DisplayName("Text documents are encoded in UTF-8 like String.getBytes")
+	void testEncode_whenProvidedText_returnsUtf8Bytes() {
+		OpenSearchNdjsonSink sink = new OpenSearchNdjsonSink(new ByteArrayOutputStream(), 1024);
+		String[] documents = { "{\"message\":\"caffè €\"}", "{\"emoji\":\"😀\"}", "{\"lone\":\"\uD83D\"}",
+				"é".repeat(2000) };
+		for (String document : documents) {
+			byte[] expected = document.getBytes(StandardCharsets.UTF_8);
+			int length = sink.encode(document);
+			Assertions.assertEquals(expected.length, length);
+			for (int i = 0; i < length; i++) {
+				Assertions.assertEquals(expected[i], sink.getEncoded()[i]);
+			}
+		}
+	}
+}
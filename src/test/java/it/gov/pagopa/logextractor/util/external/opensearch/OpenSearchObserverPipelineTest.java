@@ -0,0 +1,92 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchObserverPipelineTest {
+
+	@Test
+	@DisplayName("Observers receive the requested fields once per batch, in extraction order")
+	void testAccept_whenDocumentsAccepted_notifiesBatchesOfObservedFields() {
+		RecordingObserver observer = new RecordingObserver("uid", "@timestamp");
+		try (OpenSearchObserverPipeline pipeline = new OpenSearchObserverPipeline(Collections.singletonList(observer), 2, 1)) {
+			for (int document = 1; document <= 5; document++) {
+				byte[] data = ("{\"uid\":\"u" + document + "\",\"nested\":{\"uid\":\"x\"},\"n\":" + document + "}")
+						.getBytes(StandardCharsets.UTF_8);
+				pipeline.accept(data, 0, data.length);
+			}
+		}
+
+		Assertions.assertEquals(Arrays.asList(1, 3, 5), observer.firstDocumentNumbers);
+		Assertions.assertEquals(5, observer.documents.size());
+		Assertions.assertEquals("u1", observer.documents.get(0).get("uid"));
+		Assertions.assertEquals("u5", observer.documents.get(4).get("uid"));
+		Assertions.assertFalse(observer.documents.get(0).containsKey("@timestamp"));
+		Assertions.assertFalse(observer.documents.get(0).containsKey("n"));
+	}
+
+	@Test
+	@DisplayName("The fields are read when the document is accepted, so that the caller can reuse its buffer")
+	void testAccept_whenBufferReused_notifiesFieldsOfEveryDocument() {
+		RecordingObserver observer = new RecordingObserver("uid");
+		byte[] buffer = new byte[64];
+		try (OpenSearchObserverPipeline pipeline = new OpenSearchObserverPipeline(Collections.singletonList(observer), 10, 1)) {
+			for (int document = 1; document <= 3; document++) {
+				byte[] data = ("{\"uid\":\"u" + document + "\"}").getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(data, 0, buffer, 0, data.length);
+				pipeline.accept(buffer, 0, data.length);
+			}
+		}
+
+		Assertions.assertEquals(Arrays.asList("u1", "u2", "u3"), Arrays.asList(observer.documents.get(0).get("uid"),
+				observer.documents.get(1).get("uid"), observer.documents.get(2).get("uid")));
+	}
+
+	@Test
+	@DisplayName("An observer failure is rethrown to the extracting thread")
+	void testClose_whenObserverFails_throwsObserverException() {
+		OpenSearchApiObserver failing = new RecordingObserver("uid") {
+			@Override
+			public void notify(List<Map<String, String>> documents, int firstDocumentNumber) {
+				throw new IllegalArgumentException("observer failure");
+			}
+		};
+		OpenSearchObserverPipeline pipeline = new OpenSearchObserverPipeline(Collections.singletonList(failing), 10, 1);
+		byte[] data = "{\"uid\":\"u1\"}".getBytes(StandardCharsets.UTF_8);
+		pipeline.accept(data, 0, data.length);
+
+		IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, pipeline::close);
+		Assertions.assertEquals("observer failure", e.getMessage());
+	}
+
+	private static class RecordingObserver implements OpenSearchApiObserver {
+		private final Set<String> fields;
+		private final List<Map<String, String>> documents = new ArrayList<>();
+		private final List<Integer> firstDocumentNumbers = new ArrayList<>();
+
+		RecordingObserver(String... fields) {
+			this.fields = new HashSet<>(Arrays.asList(fields));
+		}
+
+		@Override
+		public Set<String> getObservedFields() {
+			return fields;
+		}
+
+		@Override
+		public void notify(List<Map<String, String>> documents, int firstDocumentNumber) {
+			this.documents.addAll(documents);
+			firstDocumentNumbers.add(firstDocumentNumber);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchPageSizerTest {
+
+	@Test
+	@DisplayName("Page size is the maximum until a page has been measured")
+	void testNextPageSize_whenNoPageRecorded_returnsMaxPageSize() {
+		OpenSearchPageSizer sizer = new OpenSearchPageSizer(500, 10000, 16_000_000L, 5000);
+
+		Assertions.assertEquals(10000, sizer.nextPageSize());
+	}
+
+	@Test
+	@DisplayName("Large documents shrink the page size down to the byte target")
+	void testNextPageSize_whenLargeDocumentsRecorded_returnsByteBoundedPageSize() {
+		OpenSearchPageSizer sizer = new OpenSearchPageSizer(500, 10000, 16_000_000L, 5000);
+		sizer.record(1000, 8_000_000L, 100_000_000L);
+
+		Assertions.assertEquals(2000, sizer.nextPageSize());
+	}
+
+	@Test
+	@DisplayName("Slow pages shrink the page size down to the latency budget, never below the minimum")
+	void testNextPageSize_whenSlowPagesRecorded_returnsLatencyBoundedPageSize() {
+		OpenSearchPageSizer sizer = new OpenSearchPageSizer(500, 10000, 16_000_000L, 5000);
+		sizer.record(1000, 1_000_000L, 2_000_000_000L);
+		Assertions.assertEquals(2500, sizer.nextPageSize());
+
+		sizer.record(100, 100_000L, 10_000_000_000L);
+		Assertions.assertEquals(500, sizer.nextPageSize());
+	}
+
+	@Test
+	@DisplayName("Every use case sizes its pages with its own measures")
+	void testGetPageSizer_whenDifferentUseCases_returnsSeparateSizers() {
+		OpenSearchApiHandlerFactory factory = new OpenSearchApiHandlerFactory();
+		factory.adaptivePageSizeEnabled = true;
+		factory.minPageSize = 500;
+		factory.maxPageSize = 10000;
+		factory.targetPageBytes = 16_000_000L;
+		factory.pageLatencyBudgetMillis = 5000;
+		factory.getPageSizer("person").record(1000, 8_000_000L, 100_000_000L);
+
+		Assertions.assertSame(factory.getPageSizer("person"), factory.getPageSizer("person"));
+		Assertions.assertEquals(2000, factory.getPageSizer("person").nextPageSize());
+		Assertions.assertEquals(10000, factory.getPageSizer("session").nextPageSize());
+	}
+
+	@Test
+	@DisplayName("No page sizer is used when the adaptive page size is disabled")
+	void testGetPageSizer_whenAdaptivePageSizeDisabled_returnsNull() {
+		Assertions.assertNull(new OpenSearchApiHandlerFactory().getPageSizer("person"));
+	}
+}
@@ -0,0 +1,92 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.gov.pagopa.logextractor.util.SortOrders;
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+class OpenSearchQueryConstructorTest {
+
+	private final OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor();
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private List<OpenSearchQuerydata> queryData() {
+		return Collections.singletonList(queryConstructor.prepareQueryData(
+				Collections.singletonMap(OpensearchConstants.OS_IUN_FIELD, "ABCD-1234"),
+				new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, "2023-01-01", "2023-01-31"),
+				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC)));
+	}
+
+	@Test
+	@DisplayName("Point in time query with tiebreaker sort and search_after")
+	void testCreateBooleanPitSearchQuery_whenSearchAfterProvided_returnsPitQuery() throws IOException {
+		byte[] query = queryConstructor.createBooleanPitSearchQuery(queryData(), "pit-1", "10m",
+				Arrays.asList(1672531200000L, "doc-9"), "_id");
+
+		JsonNode json = mapper.readTree(query);
+		Assertions.assertEquals("pit-1", json.path("pit").path("id").asText());
+		Assertions.assertEquals("10m", json.path("pit").path("keep_alive").asText());
+		Assertions.assertEquals(2, json.path("sort").size());
+		Assertions.assertEquals("ASC", json.path("sort").path(1).path("_id").path("order").asText());
+		Assertions.assertEquals(1672531200000L, json.path("search_after").path(0).asLong());
+		Assertions.assertEquals("doc-9", json.path("search_after").path(1).asText());
+	}
+
+	@Test
+	@DisplayName("First point in time page has no search_after")
+	void testCreateBooleanPitSearchQuery_whenNoSearchAfter_omitsSearchAfter() throws IOException {
+		byte[] query = queryConstructor.createBooleanPitSearchQuery(queryData(), "pit-1", "10m", null, null);
+
+		JsonNode json = mapper.readTree(query);
+		Assertions.assertFalse(json.has("search_after"));
+		Assertions.assertEquals(1, json.path("sort").size());
+		Assertions.assertEquals(queryConstructor.createBooleanMultiSearchQuery(queryData()).length,
+				query.length - ",\"pit\":{\"id\":\"pit-1\",\"keep_alive\":\"10m\"}".length());
+	}
+
+	@Test
+	@DisplayName("Search queries carry the _source projection, count queries do not")
+	void testCreateBooleanMultiSearchQuery_whenSourceFilterProvided_returnsProjectedQuery() throws IOException {
+		OpenSearchQueryConstructor projectingConstructor = new OpenSearchQueryConstructor(
+				new OpenSearchSourceFilter(Arrays.asList("uid", "message"), Collections.singletonList("stack_trace")));
+
+		JsonNode json = mapper.readTree(projectingConstructor.createBooleanMultiSearchQuery(queryData()));
+		Assertions.assertEquals("message", json.path("_source").path("includes").path(1).asText());
+		Assertions.assertEquals("stack_trace", json.path("_source").path("excludes").path(0).asText());
+		Assertions.assertFalse(mapper.readTree(projectingConstructor.createBooleanCountQuery(queryData().get(0))).has("_source"));
+	}
+
+	@Test
+	@DisplayName("Match values are escaped and the query is a single line ready to be sent")
+	void testCreateBooleanMultiSearchQuery_whenValueNeedsEscaping_returnsValidSingleLineQuery() throws IOException {
+		OpenSearchQuerydata data = queryConstructor.prepareQueryData(
+				Collections.singletonMap(OpensearchConstants.OS_TRACE_ID_FIELD, "Root=1-\"x\"\\y\u00e8"),
+				new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, "2023-01-01", "2023-01-31", true),
+				new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC));
+		queryConstructor.setPageSize(500);
+
+		byte[] query = queryConstructor.createBooleanMultiSearchQuery(Collections.singletonList(data));
+		String queryLine = new String(query, StandardCharsets.UTF_8);
+		JsonNode json = mapper.readTree(query);
+		Assertions.assertEquals(queryLine.length() - 1, queryLine.indexOf('\n'));
+		Assertions.assertEquals("Root=1-\"x\"\\y\u00e8", json.path("query").path("bool").path("filter").path(0)
+				.path("match").path(OpensearchConstants.OS_TRACE_ID_FIELD).asText());
+		Assertions.assertEquals("2023-01-31", json.path("query").path("bool").path("filter").path(1).path("range")
+				.path(OpensearchConstants.OS_TIMESTAMP_FIELD).path("lt").asText());
+		Assertions.assertEquals(500, json.path("size").asInt());
+		Assertions.assertEquals("{\"query\":{\"bool\":{\"filter\":[{\"match\":{\"" + OpensearchConstants.OS_TRACE_ID_FIELD
+				+ "\":\"Root=1-\\\"x\\\"\\\\y\u00e8\"}},{\"range\":{\"@timestamp\":{\"gte\":\"2023-01-01\",\"lt\":\"2023-01-31\"}}}]}}}",
+				new String(queryConstructor.createBooleanCountQuery(data), StandardCharsets.UTF_8));
+	}
+}
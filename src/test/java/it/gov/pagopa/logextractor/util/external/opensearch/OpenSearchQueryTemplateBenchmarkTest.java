@@ -0,0 +1,163 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.RegExUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import it.gov.pagopa.logextractor.util.Microbenchmark;
+import it.gov.pagopa.logextractor.util.SortOrders;
+import it.gov.pagopa.logextractor.util.constant.LoggingConstants;
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+/**
+ * Microbenchmark of the query rendering, run with <code>mvn test -Pbenchmark</code>.
+ * It compares the queries rendered from the precompiled templates with the ones built by the string concatenation
+ * of the previous {@link OpenSearchQueryConstructor}, including the encoding of the request body and, for the
+ * initial query, the log line of the handler
+ * */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OpenSearchQueryTemplateBenchmarkTest {
+
+	private final OpenSearchSourceFilter sourceFilter = new OpenSearchSourceFilter(
+			Arrays.asList("@timestamp", "uid", "message", "cx_type", "jti"), null);
+	private final OpenSearchQueryConstructor queryConstructor = new OpenSearchQueryConstructor(sourceFilter);
+	private final PreviousQueryConstructor previousQueryConstructor = new PreviousQueryConstructor(sourceFilter);
+	private final List<OpenSearchQuerydata> queryData = Collections.singletonList(queryConstructor.prepareQueryData(
+			Collections.singletonMap(OpensearchConstants.OS_UID_FIELD, "2dfc9690-a648-4462-986d-769d90752e6f"),
+			new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD, "2023-01-01", "2023-03-31"),
+			new OpenSearchSortFilter(OpensearchConstants.OS_TIMESTAMP_FIELD, SortOrders.ASC)));
+	private final List<Object> searchAfter = Arrays.asList(1672531200000L, "doc-9");
+
+	@Test
+	@DisplayName("Template rendering versus string concatenation of the queries")
+	void benchmarkQueries() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		Assertions.assertEquals(mapper.readTree(previousPitQuery()), mapper.readTree(templatePitQuery()));
+		Assertions.assertEquals(mapper.readTree(previousQueryConstructor.createBooleanMultiSearchQuery(queryData)),
+				mapper.readTree(queryConstructor.createBooleanMultiSearchQuery(queryData)));
+
+		Map<String, Double> results = new Microbenchmark("OpenSearch query rendering")
+				.rounds(5, 10, 100_000)
+				.add("point in time page, template", this::templatePitQuery)
+				.add("point in time page, concatenation", this::previousPitQuery)
+				.add("initial query and log, template", this::templateInitialQuery)
+				.add("initial query and log, concatenation", this::previousInitialQuery)
+				.run();
+		Assertions.assertEquals(4, results.size());
+	}
+
+	private byte[] templatePitQuery() throws JsonProcessingException {
+		return queryConstructor.createBooleanPitSearchQuery(queryData, "pit-1", "10m", searchAfter, "_id");
+	}
+
+	private byte[] previousPitQuery() throws JsonProcessingException {
+		return previousQueryConstructor.createBooleanPitSearchQuery(queryData, "pit-1", "10m", searchAfter, "_id")
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private int templateInitialQuery() {
+		byte[] query = queryConstructor.createBooleanMultiSearchQuery(queryData);
+		String queryLine = new String(query, 0, query.length - 1, StandardCharsets.UTF_8);
+		return query.length + queryLine.length();
+	}
+
+	private int previousInitialQuery() {
+		String query = previousQueryConstructor.createBooleanMultiSearchQuery(queryData);
+		String logLine = LoggingConstants.QUERY_EXECUTION + RegExUtils.removeAll(query, "\n");
+		return query.getBytes(StandardCharsets.UTF_8).length + logLine.length();
+	}
+
+	/**
+	 * The query builders of {@link OpenSearchQueryConstructor} before the templates, as they were. Only the
+	 * <code>_source</code> clause, built once per extraction, is serialized with Jackson instead of org.json
+	 * */
+	private static class PreviousQueryConstructor {
+
+		private static final ObjectMapper MAPPER = new ObjectMapper();
+
+		private final String sourceClause;
+		private final int pageSize = OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+
+		PreviousQueryConstructor(OpenSearchSourceFilter sourceFilter) {
+			ObjectNode source = MAPPER.createObjectNode();
+			if (null != sourceFilter.getIncludes() && !sourceFilter.getIncludes().isEmpty()) {
+				sourceFilter.getIncludes().forEach(source.putArray("includes")::add);
+			}
+			if (null != sourceFilter.getExcludes() && !sourceFilter.getExcludes().isEmpty()) {
+				sourceFilter.getExcludes().forEach(source.putArray("excludes")::add);
+			}
+			sourceClause = source.size() == 0 ? null : ",\"_source\":" + source;
+		}
+
+		String createBooleanMultiSearchQuery(List<OpenSearchQuerydata> queryData) {
+			return createBooleanMultiSearchQuery(queryData, null, null);
+		}
+
+		String createBooleanPitSearchQuery(List<OpenSearchQuerydata> queryData, String pitId, String keepAlive,
+				List<Object> searchAfter, String tiebreakerField) throws JsonProcessingException {
+			String tiebreakerSort = StringUtils.isBlank(tiebreakerField) ? null
+					: ",{\"" + tiebreakerField + "\": {\"order\":\"" + SortOrders.ASC + "\"}}";
+			StringBuilder clauses = new StringBuilder(",\"pit\":{\"id\":")
+					.append(MAPPER.writeValueAsString(pitId))
+					.append(",\"keep_alive\":\"").append(keepAlive).append("\"}");
+			if (null != searchAfter && !searchAfter.isEmpty()) {
+				clauses.append(",\"search_after\":").append(MAPPER.writeValueAsString(searchAfter));
+			}
+			return createBooleanMultiSearchQuery(queryData, tiebreakerSort, clauses.toString());
+		}
+
+		private String createBooleanMultiSearchQuery(List<OpenSearchQuerydata> queryData, String additionalSortClauses,
+				String additionalClauses) {
+			StringBuilder queryBuilder = new StringBuilder();
+			if(null != queryData && !queryData.isEmpty()) {
+				for(OpenSearchQuerydata currentQueryData : queryData) {
+					appendBooleanQuery(queryBuilder, currentQueryData);
+					if(null != currentQueryData.getSortFilter()) {
+						queryBuilder.append(",\"sort\":[{\""+currentQueryData.getSortFilter().getSortField()+"\": "
+								+ "{\"order\":\""+currentQueryData.getSortFilter().getSortOrder().toString()+"\"}}"
+								+ StringUtils.defaultString(additionalSortClauses) + "]\n");
+					}
+					if (null != additionalClauses) {
+						queryBuilder.append(additionalClauses);
+					}
+					if (null != sourceClause) {
+						queryBuilder.append(sourceClause);
+					}
+					queryBuilder.append(",\"size\":" + pageSize + "}\n");
+				}
+			}
+			return queryBuilder.toString();
+		}
+
+		private void appendBooleanQuery(StringBuilder queryBuilder, OpenSearchQuerydata currentQueryData) {
+			StringBuilder paramsBuilder = new StringBuilder();
+			for (OpenSearchQueryFilter filterTemp : currentQueryData.getMatchFields()) {
+				paramsBuilder.append("{\"match\":{"+ "\""+filterTemp.getKey()+"\":"+ "\""
+						+filterTemp.getValue()+"\"}},");
+			}
+			if(null != currentQueryData.getRangeData()) {
+				paramsBuilder.append("{\"range\":{\""+currentQueryData.getRangeData().getRangeField()+"\":{\"gte\":\""
+						+currentQueryData.getRangeData().getFrom()+"\",\""
+						+(currentQueryData.getRangeData().isToExclusive() ? "lt" : "lte")+"\":\""
+						+currentQueryData.getRangeData().getTo()+"\"}}}");
+			}
+			else{
+				paramsBuilder.deleteCharAt(paramsBuilder.length()-1);
+			}
+			queryBuilder.append("{\"query\":{\"bool\":{\"filter\":["+paramsBuilder+"]}}");
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchResponseStreamParserTest {
+
+	private static final String RESPONSE = "{\"_scroll_id\":\"scroll-1\",\"took\":3,\"_shards\":{\"total\":1},"
+			+ "\"hits\":{\"total\":{\"value\":3},\"max_score\":null,\"hits\":["
+			+ "{\"_index\":\"pn-logs\",\"_id\":\"1\",\"_source\":{\"@timestamp\":\"2023-01-10T12:10:15.300Z\",\"uid\":\"abc\",\"n\":1.50,\"tags\":[\"a\",{\"b\":null}]},\"sort\":[1]},"
+			+ "{\"_index\":\"pn-logs\",\"_id\":\"2\",\"sort\":[2]},"
+			+ "{\"_index\":\"pn-logs\",\"_id\":\"3\",\"_source\":{\"message\":\"caff\\u00e8 \\\"quoted\\\"\"}}]}}";
+
+	@Test
+	@DisplayName("Stream every _source document and capture the scroll id")
+	void testParse_whenProvidedResponsePage_returnsDocumentsAndScrollId() throws IOException {
+		List<String> documents = new ArrayList<>();
+		OpenSearchResponsePage page = new OpenSearchResponseStreamParser().parse(
+				new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)),
+				(document, length, sortValues) -> documents.add(new String(document, 0, length, StandardCharsets.UTF_8)));
+
+		Assertions.assertEquals("scroll-1", page.getScrollId());
+		Assertions.assertEquals(2, page.getDocumentCount());
+		Assertions.assertEquals("{\"@timestamp\":\"2023-01-10T12:10:15.300Z\",\"uid\":\"abc\",\"n\":1.50,\"tags\":[\"a\",{\"b\":null}]}",
+				documents.get(0));
+		Assertions.assertEquals("{\"message\":\"caffè \\\"quoted\\\"\"}", documents.get(1));
+	}
+
+	@Test
+	@DisplayName("The time spent by the document handler is reported apart from the parse")
+	void testParse_whenHandlerIsSlow_returnsOutputTime() throws IOException {
+		OpenSearchResponsePage page = new OpenSearchResponseStreamParser().parse(
+				new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)),
+				(document, length, sortValues) -> {
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+
+		Assertions.assertTrue(page.getOutputNanos() >= 10_000_000L);
+	}
+
+	@Test
+	@DisplayName("Empty scroll page returns no documents")
+	void testParse_whenProvidedEmptyPage_returnsNoDocuments() throws IOException {
+		String response = "{\"_scroll_id\":\"test\",\"hits\" : {\"hits\" : []}}";
+		OpenSearchResponsePage page = new OpenSearchResponseStreamParser().parse(
+				new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)),
+				(document, length, sortValues) -> Assertions.fail("No document expected"));
+
+		Assertions.assertEquals("test", page.getScrollId());
+		Assertions.assertEquals(0, page.getDocumentCount());
+	}
+
+	@Test
+	@DisplayName("Route the documents of a multi search to their response")
+	void testParseMultiSearch_whenProvidedResponses_returnsOnePagePerQuery() throws IOException {
+		String response = "{\"took\":5,\"responses\":["
+				+ "{\"hits\":{\"hits\":[{\"_source\":{\"id\":\"a1\"},\"sort\":[10,\"x\"]},{\"_source\":{\"id\":\"a2\"},\"sort\":[11,\"y\"]}]},\"status\":200},"
+				+ "{\"hits\":{\"hits\":[]},\"status\":200},"
+				+ "{\"hits\":{\"hits\":[{\"_source\":{\"id\":\"c1\"},\"sort\":[12,\"z\"]}]},\"status\":200}]}";
+		List<String> documents = new ArrayList<>();
+		List<OpenSearchResponsePage> pages = new OpenSearchResponseStreamParser().parseMultiSearch(
+				new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)),
+				(index, document, length, sortValues) -> documents.add(index + ":"
+						+ new String(document, 0, length, StandardCharsets.UTF_8)));
+
+		Assertions.assertEquals(3, pages.size());
+		Assertions.assertEquals(2, pages.get(0).getDocumentCount());
+		Assertions.assertEquals(Arrays.asList(11, "y"), pages.get(0).getLastSortValues());
+		Assertions.assertEquals(0, pages.get(1).getDocumentCount());
+		Assertions.assertTrue(pages.get(1).getLastSortValues().isEmpty());
+		Assertions.assertEquals(1, pages.get(2).getDocumentCount());
+		Assertions.assertEquals(Arrays.asList("0:{\"id\":\"a1\"}", "0:{\"id\":\"a2\"}", "2:{\"id\":\"c1\"}"), documents);
+	}
+
+	@Test
+	@DisplayName("A failed query of a multi search fails the whole response")
+	void testParseMultiSearch_whenProvidedFailedResponse_throwsIOException() {
+		String response = "{\"responses\":[{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}]}";
+		OpenSearchResponseStreamParser parser = new OpenSearchResponseStreamParser();
+
+		Assertions.assertThrows(IOException.class, () -> parser.parseMultiSearch(
+				new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)),
+				(index, document, length, sortValues) -> Assertions.fail("No document expected")));
+	}
+}
@@ -0,0 +1,88 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchRetryPolicy.Replay;
+
+class OpenSearchRetryPolicyTest {
+
+	private final List<Long> sleeps = new ArrayList<>();
+	private final OpenSearchRetryPolicy policy = new OpenSearchRetryPolicy(3, 100, 150, sleeps::add, bound -> bound);
+
+	@Test
+	@DisplayName("Transient errors are retried with an exponential capped backoff, fatal errors are thrown at once")
+	void testExecute_whenTransientOrFatalError_retriesOnlyTransient() {
+		AtomicInteger attempts = new AtomicInteger();
+		String result = policy.execute("search", Replay.REQUEST, null, () -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+			}
+			return "ok";
+		});
+		Assertions.assertEquals("ok", result);
+		Assertions.assertEquals(Arrays.asList(100L, 150L), sleeps);
+
+		attempts.set(0);
+		Assertions.assertThrows(HttpClientErrorException.class, () -> policy.execute("search", Replay.REQUEST, null, () -> {
+			attempts.incrementAndGet();
+			throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+		}));
+		Assertions.assertEquals(1, attempts.get());
+	}
+
+	@Test
+	@DisplayName("A scroll is sent again only if OpenSearch did not execute it")
+	void testIsRetryable_whenScrollFails_retriesOnlyRequestsNotExecuted() {
+		Assertions.assertTrue(policy.isRetryable(new ResourceAccessException("refused", new ConnectException()),
+				Replay.NONE, null));
+		Assertions.assertTrue(policy.isRetryable(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS),
+				Replay.NONE, null));
+		Assertions.assertFalse(policy.isRetryable(new ResourceAccessException("timeout", new SocketTimeoutException()),
+				Replay.NONE, null));
+		Assertions.assertFalse(policy.isRetryable(new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT),
+				Replay.NONE, null));
+		Assertions.assertTrue(policy.isRetryable(new ResourceAccessException("timeout", new SocketTimeoutException()),
+				Replay.REQUEST, null));
+	}
+
+	@Test
+	@DisplayName("A page read again after a partial write hands over only the documents not written yet")
+	void testExecute_whenPageFailsAfterPartialWrite_writesEveryDocumentOnce() throws IOException {
+		List<String> written = new ArrayList<>();
+		OpenSearchPageGuard guard = new OpenSearchPageGuard((document, length, sortValues) ->
+				written.add(new String(document, 0, length, StandardCharsets.UTF_8)));
+		List<String> page = Arrays.asList("a", "b", "c", "d");
+		AtomicInteger attempts = new AtomicInteger();
+
+		int documents = policy.execute("search after", Replay.PAGE, guard, () -> {
+			int attempt = attempts.incrementAndGet();
+			for (int index = 0; index < page.size(); index++) {
+				if (attempt < 3 && index == attempt) {
+					throw new ResourceAccessException("Connection reset");
+				}
+				guard.handle(page.get(index).getBytes(StandardCharsets.UTF_8), 1, Collections.emptyList());
+			}
+			return page.size();
+		});
+
+		Assertions.assertEquals(4, documents);
+		Assertions.assertEquals(page, written);
+		Assertions.assertFalse(policy.isRetryable(new ResourceAccessException("Connection reset"), Replay.REQUEST, guard));
+	}
+}
@@ -0,0 +1,72 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResponseExtractor;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+
+class OpenSearchScrollPrefetcherTest {
+
+	private static final byte[] QUERY = "{}\n".getBytes(StandardCharsets.UTF_8);
+
+	private static MockClientHttpResponse page(String scrollId, int from, int documents) {
+		StringBuilder body = new StringBuilder("{\"_scroll_id\":\"").append(scrollId).append("\",\"hits\":{\"hits\":[");
+		for (int i = from; i < from + documents; i++) {
+			body.append(i == from ? "" : ",").append("{\"_source\":{\"n\":").append(i).append("}}");
+		}
+		body.append("]}}");
+		return new MockClientHttpResponse(body.toString().getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+	}
+
+	@Test
+	@DisplayName("Prefetched pages are handed to the output in scroll order")
+	void testExtract_whenMultiplePages_returnsDocumentsInOrder() throws IOException {
+		int pageSize = OpensearchConstants.OS_QUERY_RESULT_PAGE_SIZE;
+		OpenSearchApiHandler handler = Mockito.mock(OpenSearchApiHandler.class);
+		Mockito.when(handler.executeSearch(ArgumentMatchers.any(byte[].class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+				.thenAnswer(invocation -> invocation.<ResponseExtractor<?>>getArgument(1).extractData(page("s1", 0, pageSize)));
+		Mockito.when(handler.executeScroll(ArgumentMatchers.eq("s1"), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+				.thenAnswer(invocation -> invocation.<ResponseExtractor<?>>getArgument(1).extractData(page("s2", pageSize, 3)));
+		OpenSearchContextLease lease = new OpenSearchContextLease(null, 0, handler);
+		List<String> documents = new ArrayList<>();
+		int[] flushes = new int[1];
+
+		int counter = new OpenSearchScrollPrefetcher(handler, lease, 2).extract(QUERY,
+				(page, offset, length) -> documents.add(new String(page, offset, length, StandardCharsets.UTF_8)),
+				() -> flushes[0]++);
+		lease.close();
+
+		Assertions.assertEquals(pageSize + 3, counter);
+		Assertions.assertEquals(pageSize + 3, documents.size());
+		Assertions.assertEquals("{\"n\":0}", documents.get(0));
+		Assertions.assertEquals("{\"n\":" + (pageSize + 2) + "}", documents.get(pageSize + 2));
+		Assertions.assertEquals(2, flushes[0]);
+		Mockito.verify(handler).clearScrolls(Collections.singletonList("s2"));
+	}
+
+	@Test
+	@DisplayName("A failed page request is rethrown to the caller")
+	void testExtract_whenScrollFails_throwsException() {
+		OpenSearchApiHandler handler = Mockito.mock(OpenSearchApiHandler.class);
+		Mockito.when(handler.executeSearch(ArgumentMatchers.any(byte[].class), ArgumentMatchers.<ResponseExtractor<Object>>any()))
+				.thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+		OpenSearchScrollPrefetcher prefetcher = new OpenSearchScrollPrefetcher(handler,
+				new OpenSearchContextLease(null, 0, handler), 1);
+
+		Assertions.assertThrows(HttpServerErrorException.class,
+				() -> prefetcher.extract(QUERY, (page, offset, length) -> Assertions.fail("No document expected"), () -> {}));
+	}
+}
@@ -0,0 +1,75 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchSerialExecutorTest {
+
+	@Test
+	@DisplayName("The tasks of every extraction run in order and one at a time on the shared pool")
+	void testExecute_whenExtractionsShareThePool_runsTasksInOrder() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		int extractions = 10;
+		int tasks = 1000;
+		List<List<Integer>> executed = new ArrayList<>();
+		AtomicInteger overlaps = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(extractions * tasks);
+		try {
+			for (int extraction = 0; extraction < extractions; extraction++) {
+				List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+				executed.add(order);
+				OpenSearchSerialExecutor writer = new OpenSearchSerialExecutor(pool);
+				AtomicInteger running = new AtomicInteger();
+				for (int task = 0; task < tasks; task++) {
+					int number = task;
+					writer.execute(() -> {
+						if (running.incrementAndGet() > 1) {
+							overlaps.incrementAndGet();
+						}
+						order.add(number);
+						running.decrementAndGet();
+						done.countDown();
+					});
+				}
+			}
+
+			Assertions.assertTrue(done.await(30, TimeUnit.SECONDS));
+			Assertions.assertEquals(0, overlaps.get());
+			for (List<Integer> order : executed) {
+				for (int task = 0; task < tasks; task++) {
+					Assertions.assertEquals(task, order.get(task));
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("A failing task does not stop the following ones")
+	void testExecute_whenTaskFails_runsFollowingTasks() throws InterruptedException {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		CountDownLatch done = new CountDownLatch(1);
+		try {
+			OpenSearchSerialExecutor writer = new OpenSearchSerialExecutor(pool);
+			writer.execute(() -> {
+				throw new IllegalStateException("failed");
+			});
+			writer.execute(done::countDown);
+
+			Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class OpenSearchSummaryTest {
+
+	private static final String RESPONSE = "{\"took\":4,\"hits\":{\"total\":{\"value\":7,\"relation\":\"eq\"},\"hits\":[]},"
+			+ "\"aggregations\":{\"per_interval\":{\"buckets\":[{\"key_as_string\":\"2023-03-01T00:00:00.000Z\",\"key\":1677628800000,\"doc_count\":7,"
+			+ "\"per_service\":{\"sum_other_doc_count\":1,\"buckets\":["
+			+ "{\"key\":\"pn-delivery\",\"doc_count\":4,\"per_level\":{\"buckets\":[{\"key\":\"INFO\",\"doc_count\":3},{\"key\":\"ERROR\",\"doc_count\":1}]}},"
+			+ "{\"key\":\"pn-mandate\",\"doc_count\":2,\"per_level\":{\"buckets\":[{\"key\":\"ERROR\",\"doc_count\":2}]}}]}}]}}}";
+
+	@Test
+	@DisplayName("The aggregation response is rewritten as a compact summary by interval, service and level")
+	void testWrite_whenProvidedAggregationResponse_writesSummary() throws IOException {
+		OpenSearchSummary summary = new OpenSearchSummary("service", "level", "1d", 10);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long total = summary.write(new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)),
+				new OpenSearchRangeQueryData("@timestamp", "2023-03-01", "2023-03-02"), out);
+
+		Assertions.assertEquals(7, total);
+		JsonNode written = new ObjectMapper().readTree(out.toByteArray());
+		Assertions.assertEquals("2023-03-01", written.path("from").asText());
+		JsonNode bucket = written.path("buckets").get(0);
+		Assertions.assertEquals("2023-03-01T00:00:00.000Z", bucket.path("date").asText());
+		Assertions.assertEquals(3, bucket.path("levels").path("ERROR").asLong());
+		Assertions.assertEquals(3, bucket.path("levels").path("INFO").asLong());
+		Assertions.assertEquals("pn-mandate", bucket.path("services").get(1).path("service").asText());
+		Assertions.assertEquals(1, bucket.path("otherServices").asLong());
+		Assertions.assertEquals("service", new ObjectMapper().readTree(summary.getAggregations())
+				.path("per_interval").path("aggs").path("per_service").path("terms").path("field").asText());
+	}
+}
@@ -0,0 +1,61 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.gov.pagopa.logextractor.util.constant.OpensearchConstants;
+import it.gov.pagopa.logextractor.util.external.opensearch.OpenSearchTimeWindowPlanner.TimeWindow;
+
+class OpenSearchTimeWindowPlannerTest {
+
+	/**
+	 * One document per hour in January, none afterwards
+	 * */
+	private static long count(OpenSearchRangeQueryData range) {
+		Instant from = range.getFrom().length() == 10 ? Instant.parse(range.getFrom() + "T00:00:00Z") : Instant.parse(range.getFrom());
+		Instant to = range.getTo().length() == 10 ? Instant.parse(range.getTo() + "T00:00:00Z") : Instant.parse(range.getTo());
+		Instant endOfJanuary = Instant.parse("2023-02-01T00:00:00Z");
+		if (!from.isBefore(endOfJanuary)) {
+			return 0;
+		}
+		return Duration.between(from, to.isBefore(endOfJanuary) ? to : endOfJanuary).toHours();
+	}
+
+	@Test
+	@DisplayName("Dense ranges are split into contiguous windows and empty windows are dropped")
+	void testPlan_whenRangeIsDense_returnsContiguousWindows() {
+		OpenSearchRangeQueryData range = new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD,
+				"2023-01-01", "2023-04-01");
+		List<TimeWindow> windows = new OpenSearchTimeWindowPlanner(200, Duration.ofHours(1))
+				.plan(range, OpenSearchTimeWindowPlannerTest::count);
+
+		Assertions.assertTrue(windows.size() > 1);
+		Assertions.assertEquals("2023-01-01", windows.get(0).getRange().getFrom());
+		for (int i = 0; i < windows.size(); i++) {
+			Assertions.assertTrue(windows.get(i).getDocumentCount() <= 200);
+			Assertions.assertTrue(windows.get(i).getRange().isToExclusive());
+			if (i > 0) {
+				Assertions.assertEquals(windows.get(i - 1).getRange().getTo(), windows.get(i).getRange().getFrom());
+			}
+		}
+		Assertions.assertEquals(31 * 24, windows.stream().mapToLong(TimeWindow::getDocumentCount).sum());
+	}
+
+	@Test
+	@DisplayName("Sparse ranges are kept in a single window with the original bounds")
+	void testPlan_whenRangeIsSparse_returnsOriginalRange() {
+		OpenSearchRangeQueryData range = new OpenSearchRangeQueryData(OpensearchConstants.OS_TIMESTAMP_FIELD,
+				"2023-01-01", "2023-01-02");
+		List<TimeWindow> windows = new OpenSearchTimeWindowPlanner(200, Duration.ofHours(1))
+				.plan(range, OpenSearchTimeWindowPlannerTest::count);
+
+		Assertions.assertEquals(1, windows.size());
+		Assertions.assertEquals("2023-01-02", windows.get(0).getRange().getTo());
+		Assertions.assertFalse(windows.get(0).getRange().isToExclusive());
+	}
+}
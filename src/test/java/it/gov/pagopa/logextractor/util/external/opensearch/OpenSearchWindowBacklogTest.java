@@ -0,0 +1,75 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OpenSearchWindowBacklogTest {
+
+	@Test
+	@DisplayName("Windows written concurrently reach the output in window order")
+	void testWrite_whenWindowsConcurrent_writesInWindowOrder() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<Integer> written = new ArrayList<>();
+		OpenSearchWindowBacklog backlog = new OpenSearchWindowBacklog(4, 16, out::write, written::add);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Void>> windows = new ArrayList<>();
+		try {
+			for (int window = 3; window >= 0; window--) {
+				int index = window;
+				windows.add(executor.submit(() -> {
+					for (int document = 0; document < 100; document++) {
+						byte[] line = (index + ":" + document + "\n").getBytes(StandardCharsets.UTF_8);
+						backlog.write(index, line, line.length);
+					}
+					backlog.finish(index);
+					return null;
+				}));
+			}
+			for (Future<Void> window : windows) {
+				window.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		StringBuilder expected = new StringBuilder();
+		for (int window = 0; window < 4; window++) {
+			for (int document = 0; document < 100; document++) {
+				expected.append(window).append(':').append(document).append('\n');
+			}
+		}
+		Assertions.assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+		Assertions.assertEquals(400, backlog.getDocumentCount());
+		Assertions.assertEquals(List.of(0, 1, 2, 3), written);
+	}
+
+	@Test
+	@DisplayName("An aborted extraction releases the windows waiting for the head")
+	void testWrite_whenAborted_throwsIOException() throws Exception {
+		OpenSearchWindowBacklog backlog = new OpenSearchWindowBacklog(2, 1, (buffer, offset, length) -> {}, window -> {});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Void> waiting = executor.submit(() -> {
+				backlog.write(1, new byte[2], 2);
+				return null;
+			});
+			backlog.abort();
+
+			Exception e = Assertions.assertThrows(Exception.class, () -> waiting.get(10, TimeUnit.SECONDS));
+			Assertions.assertTrue(e.getCause() instanceof IOException);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
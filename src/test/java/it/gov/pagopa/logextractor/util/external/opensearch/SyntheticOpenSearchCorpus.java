@@ -0,0 +1,105 @@
+package it.gov.pagopa.logextractor.util.external.opensearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Synthetic log corpus served by {@link FakeOpenSearchServer}. Documents are never stored: document <code>i</code>
+ * is generated on demand from the seed and its position, so the same seed always yields the same corpus and
+ * millions of documents cost no memory. Documents are sorted by <code>@timestamp</code>, one every
+ * <code>step</code> from <code>start</code>, and padded with a message to about <code>documentSize</code> bytes.
+ * */
+class SyntheticOpenSearchCorpus {
+
+	private static final String[] SERVICES = { "pn-delivery", "pn-delivery-push", "pn-mandate", "pn-user-attributes",
+			"pn-external-registries" };
+	private static final String[] LEVELS = { "INFO", "INFO", "INFO", "WARN", "ERROR", "DEBUG" };
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final int ID_DIGITS = 10;
+
+	private final long seed;
+	private final int documentCount;
+	private final int documentSize;
+	private final long startMillis;
+	private final long stepMillis;
+
+	SyntheticOpenSearchCorpus(long seed, int documentCount, int documentSize, Instant start, Duration step) {
+		this.seed = seed;
+		this.documentCount = documentCount;
+		this.documentSize = documentSize;
+		this.startMillis = start.toEpochMilli();
+		this.stepMillis = Math.max(1, step.toMillis());
+	}
+
+	int size() {
+		return documentCount;
+	}
+
+	long timestamp(int document) {
+		return startMillis + document * stepMillis;
+	}
+
+	/**
+	 * @return the position of the first document with a timestamp not before the input one
+	 * */
+	int firstAtOrAfter(long timestampMillis) {
+		if (timestampMillis <= startMillis) {
+			return 0;
+		}
+		long position = (timestampMillis - startMillis + stepMillis - 1) / stepMillis;
+		return (int) Math.min(documentCount, position);
+	}
+
+	/**
+	 * @return the <code>_id</code> of a document, zero padded so that the ids sort as the documents
+	 * */
+	static String id(int document) {
+		char[] id = new char[ID_DIGITS];
+		Arrays.fill(id, '0');
+		String digits = Integer.toString(document);
+		digits.getChars(0, digits.length(), id, ID_DIGITS - digits.length());
+		return new String(id);
+	}
+
+	/**
+	 * Writes the <code>_source</code> object of a document
+	 * */
+	void writeSource(int document, OutputStream out) throws IOException {
+		long hash = mix(seed ^ (document * 0x9E3779B97F4A7C15L));
+		StringBuilder source = new StringBuilder(documentSize + 64);
+		source.append("{\"@timestamp\":\"").append(Instant.ofEpochMilli(timestamp(document)))
+				.append("\",\"uid\":\"PF-").append(Long.toHexString(hash & 0xFFFFF))
+				.append("\",\"root_trace_id\":\"Root=1-");
+		appendHex(source, mix(hash), 24);
+		source.append("\",\"jti\":\"");
+		appendHex(source, mix(hash + 1), 16);
+		source.append("\",\"aws\":{\"cloudwatch\":{\"log_group\":\"")
+				.append(SERVICES[(int) Long.remainderUnsigned(hash, SERVICES.length)])
+				.append("\"}},\"level\":\"").append(LEVELS[(int) Long.remainderUnsigned(hash >>> 8, LEVELS.length)])
+				.append("\",\"message\":\"");
+		long padding = mix(hash + 2);
+		while (source.length() < documentSize - 2) {
+			source.append(HEX[(int) (padding & 0xF)]);
+			padding = padding >>> 4 | padding << 60;
+		}
+		source.append("\"}");
+		out.write(source.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void appendHex(StringBuilder builder, long value, int digits) {
+		for (int digit = 0; digit < digits; digit++) {
+			builder.append(HEX[(int) ((value >>> ((digit % 16) * 4)) & 0xF)]);
+		}
+	}
+
+	private static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,123 @@
+package it.gov.pagopa.logextractor.util.external.pnservices;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.gov.pagopa.logextractor.exception.LogExtractorException;
+import it.gov.pagopa.logextractor.pn_logextractor_be.model.GetBasicDataResponseDto;
+
+class DeanonimizationServiceTest {
+
+	private static final int DOCUMENTS = 3000;
+	private static final int IDS = 3;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static DeanonimizationService newService() throws LogExtractorException {
+		DeanonimizationService service = new DeanonimizationService();
+		service.lookupExecutor = new SimpleAsyncTaskExecutor();
+		service.apiHandler = Mockito.mock(DeanonimizationApiHandler.class);
+		Mockito.when(service.apiHandler.getTaxCodeForPerson(ArgumentMatchers.anyString())).thenAnswer(invocation -> {
+			GetBasicDataResponseDto taxCode = new GetBasicDataResponseDto();
+			taxCode.setData("TAX-" + invocation.getArgument(0));
+			return taxCode;
+		});
+		return service;
+	}
+
+	private static byte[] documents() {
+		StringBuilder documents = new StringBuilder();
+		for (int document = 0; document < DOCUMENTS; document++) {
+			documents.append(MAPPER.createObjectNode().put("n", document).put("cx_type", "PF")
+					.put("cx_id", "PF-" + document % IDS).put("uid", "PF-" + document % IDS)).append('\n');
+		}
+		return documents.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void assertDeanonimized(ByteArrayOutputStream out) throws IOException {
+		String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		Assertions.assertEquals(DOCUMENTS, lines.length);
+		for (int document = 0; document < DOCUMENTS; document++) {
+			JsonNode line = MAPPER.readTree(lines[document]);
+			Assertions.assertEquals(document, line.get("n").asInt());
+			Assertions.assertEquals("TAX-PF-" + document % IDS, line.get("cx_id").asText());
+			Assertions.assertEquals("TAX-PF-" + document % IDS, line.get("uid").asText());
+		}
+	}
+
+	@Test
+	@DisplayName("The distinct ids of the documents held back are resolved once each, in a single batch")
+	void testOpenDeanonimizingStream_whenDocumentsHeldBack_resolvesDistinctIdsOnce() throws Exception {
+		DeanonimizationService service = newService();
+		service.lookaheadDocuments = DOCUMENTS + 1;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (OutputStream in = service.openDeanonimizingStream(out)) {
+			in.write(documents());
+			Assertions.assertEquals(0, out.size());
+		}
+
+		assertDeanonimized(out);
+		Mockito.verify(service.apiHandler, Mockito.times(IDS)).getTaxCodeForPerson(ArgumentMatchers.anyString());
+	}
+
+	@Test
+	@DisplayName("Without the batch the ids are resolved on demand, once each, and the PA ones are never resolved")
+	void testOpenDeanonimizingStream_whenPrefetchDisabled_resolvesIdsOnDemandOnce() throws Exception {
+		DeanonimizationService service = newService();
+		service.prefetchEnabled = false;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (OutputStream in = service.openDeanonimizingStream(out)) {
+			in.write(documents());
+		}
+		OutputStream publicAuthority = service.openDeanonimizingStream(new ByteArrayOutputStream());
+		publicAuthority.write("{\"cx_type\":\"PA\",\"cx_id\":\"PA-1\"}\n".getBytes(StandardCharsets.UTF_8));
+		publicAuthority.close();
+
+		assertDeanonimized(out);
+		Mockito.verify(service.apiHandler, Mockito.times(IDS)).getTaxCodeForPerson(ArgumentMatchers.anyString());
+		Mockito.verify(service.apiHandler, Mockito.never()).getTaxCodeForPerson("PA-1");
+	}
+
+	@Test
+	@DisplayName("The documents written in chunks are deanonimized in flight, each id resolved once across windows")
+	void testOpenDeanonimizingStream_whenWrittenInChunks_resolvesEachIdOnce() throws Exception {
+		DeanonimizationService service = newService();
+		service.lookaheadDocuments = 100;
+		byte[] documents = documents();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (OutputStream in = service.openDeanonimizingStream(out)) {
+			for (int offset = 0; offset < documents.length; offset += 7) {
+				in.write(documents, offset, Math.min(7, documents.length - offset));
+			}
+			Assertions.assertTrue(out.size() > 0);
+		}
+
+		assertDeanonimized(out);
+		Mockito.verify(service.apiHandler, Mockito.times(IDS)).getTaxCodeForPerson(ArgumentMatchers.anyString());
+	}
+
+	@Test
+	@DisplayName("A failed lookup surfaces as an IOException when the held back documents are written")
+	void testOpenDeanonimizingStream_whenLookupFails_throwsIOException() throws Exception {
+		DeanonimizationService service = newService();
+		Mockito.when(service.apiHandler.getTaxCodeForPerson("PF-1")).thenThrow(new LogExtractorException("not found"));
+		OutputStream in = service.openDeanonimizingStream(new ByteArrayOutputStream());
+		in.write("{\"cx_type\":\"PF\",\"cx_id\":\"PF-1\"}\n".getBytes(StandardCharsets.UTF_8));
+
+		Assertions.assertThrows(IOException.class, in::close);
+	}
+}